@@ -15,16 +15,20 @@
  */
 package org.stjs.generator;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
-
-import edu.umd.cs.findbugs.annotations.SuppressWarnings;
+import com.google.common.collect.Multimap;
 
 /**
  * This class is used to arrange the list of all dependencies coming from the root classes, such that classes depend on
@@ -113,86 +117,156 @@ public class DependencyCollection {
 		this.roots = ImmutableList.of(root);
 	}
 
-	private int compareDeps(int withIndex, List<ClassWithJavascript> deps, Comparator<ClassWithJavascript> comparator) {
-		for (int j = 0; j < deps.size(); ++j) {
-			if (withIndex != j) {
-				int cmp = comparator.compare(deps.get(withIndex), deps.get(j));
-				if (cmp > 0) {
-					return cmp;
-				}
-			}
-		}
-		return -1;
-	}
-
+	/**
+	 * The classes are arranged such that a class comes after the classes it extends (i.e. the classes that
+	 * {@link #DEPENDENCY_COMPARATOR} puts before it). The order is the one obtained by scanning repeatedly the list of
+	 * the dependencies and taking out, at each step, the classes that do not extend any of the remaining ones. Instead
+	 * of comparing each pair of classes, the "extends" edges are extracted once for each class and the scan where each
+	 * class is taken out is computed from the ones of the classes it extends.
+	 */
 	public List<ClassWithJavascript> orderAllDependencies(ClassLoader classLoader) {
 		List<ClassWithJavascript> deps = new ArrayList<ClassWithJavascript>();
 		Set<ClassWithJavascript> visited = new HashSet<ClassWithJavascript>();
 		for (ClassWithJavascript root : roots) {
-			visit(visited, new LinkedHashSet<ClassWithJavascript>(), deps, root);
-		}
-
-		Comparator<ClassWithJavascript> comparator = new ClassWithJavascriptComparator(classLoader);
-		List<ClassWithJavascript> orderedDeps = new ArrayList<ClassWithJavascript>();
-		while (!deps.isEmpty()) {
-			// add to orderedDeps only the classes that have no "extends" dependency to any of the other from the
-			// remaining list.
-			// i.e. the result of the comparison is <= 0
-			for (int i = 0; i < deps.size(); ++i) {
-				if (compareDeps(i, deps, comparator) <= 0) {
-					orderedDeps.add(deps.remove(i));
-					i--;
+			visit(visited, deps, root);
+		}
+
+		int count = deps.size();
+		Class<?>[] classes = new Class<?>[count];
+		// the position in the list of the classes declaring each type, i.e. the class itself and its inner classes
+		Multimap<Class<?>, Integer> positionsByType = ArrayListMultimap.create();
+		for (int i = 0; i < count; ++i) {
+			try {
+				classes[i] = classLoader.loadClass(deps.get(i).getClassName());
+			}
+			catch (ClassNotFoundException e) {
+				throw new STJSRuntimeException(e);
+			}
+			positionsByType.put(classes[i], i);
+			for (Class<?> child : classes[i].getDeclaredClasses()) {
+				positionsByType.put(child, i);
+			}
+		}
+
+		// for each class, the classes of the list that it extends and the ones extending it
+		List<Set<Integer>> extended = new ArrayList<Set<Integer>>(count);
+		List<List<Integer>> extending = new ArrayList<List<Integer>>(count);
+		for (int i = 0; i < count; ++i) {
+			extending.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < count; ++i) {
+			Set<Integer> extendedByClass = new LinkedHashSet<Integer>();
+			for (Class<?> superType : getSuperTypesOfTypeAndChildTypes(classes[i])) {
+				for (Integer j : positionsByType.get(superType)) {
+					if (j != i && !classes[j].equals(classes[i]) && extendedByClass.add(j)) {
+						extending.get(j).add(i);
+					}
+				}
+			}
+			extended.add(extendedByClass);
+		}
+
+		// the scan where each class is taken out: a class is taken out in the same scan as the classes it extends
+		// only if it comes after them in the list
+		int[] scans = new int[count];
+		int[] remaining = new int[count];
+		List<Integer> ready = new ArrayList<Integer>();
+		for (int i = 0; i < count; ++i) {
+			remaining[i] = extended.get(i).size();
+			if (remaining[i] == 0) {
+				ready.add(i);
+			}
+		}
+		int processed = 0;
+		while (!ready.isEmpty()) {
+			int i = ready.remove(ready.size() - 1);
+			processed++;
+			for (int j : extending.get(i)) {
+				scans[j] = Math.max(scans[j], i < j ? scans[i] : scans[i] + 1);
+				if (--remaining[j] == 0) {
+					ready.add(j);
+				}
+			}
+		}
+		if (processed != count) {
+			List<String> cycle = new ArrayList<String>();
+			for (int i = 0; i < count; ++i) {
+				if (remaining[i] > 0) {
+					cycle.add(classes[i].getName());
 				}
 			}
+			throw new IllegalArgumentException("Cannot decide the dependency order between the types:" + cycle);
 		}
 
+		List<List<ClassWithJavascript>> classesByScan = new ArrayList<List<ClassWithJavascript>>();
+		for (int i = 0; i < count; ++i) {
+			while (classesByScan.size() <= scans[i]) {
+				classesByScan.add(new ArrayList<ClassWithJavascript>());
+			}
+			classesByScan.get(scans[i]).add(deps.get(i));
+		}
+		List<ClassWithJavascript> orderedDeps = new ArrayList<ClassWithJavascript>(count);
+		for (List<ClassWithJavascript> scan : classesByScan) {
+			orderedDeps.addAll(scan);
+		}
 		return orderedDeps;
 	}
 
 	/**
-	 * use topological sort to find the order of processing cells
+	 * @return all the types the given type or any of its child types (at any level) can be assigned to
 	 */
-	private void visit(Set<ClassWithJavascript> visited, Set<ClassWithJavascript> path, List<ClassWithJavascript> deps,
-			ClassWithJavascript cj) {
-		if (path.contains(cj)) {
-			// cyclic dependency here
-			return;
-		}
-		if (!visited.contains(cj)) {
-			visited.add(cj);
-			path.add(cj);
-
-			for (ClassWithJavascript dep : cj.getDirectDependencies()) {
-				visit(visited, path, deps, dep);
-				path.remove(dep);
+	private static Set<Class<?>> getSuperTypesOfTypeAndChildTypes(Class<?> clazz) {
+		Set<Class<?>> superTypes = new HashSet<Class<?>>();
+		List<Class<?>> toVisit = new ArrayList<Class<?>>();
+		toVisit.add(clazz);
+		addChildTypes(clazz, toVisit);
+		while (!toVisit.isEmpty()) {
+			Class<?> type = toVisit.remove(toVisit.size() - 1);
+			if (superTypes.add(type)) {
+				if (type.getSuperclass() != null) {
+					toVisit.add(type.getSuperclass());
+				}
+				toVisit.addAll(Arrays.asList(type.getInterfaces()));
 			}
-
-			deps.add(cj);
-
 		}
+		// the interfaces can also be assigned to Object
+		superTypes.add(Object.class);
+		return superTypes;
 	}
 
-	@SuppressWarnings(value = "SE_COMPARATOR_SHOULD_BE_SERIALIZABLE", justification = "This comparator will not be used with Serializable lists")
-	private static class ClassWithJavascriptComparator implements Comparator<ClassWithJavascript> {
-
-		private final ClassLoader classLoader;
-
-		public ClassWithJavascriptComparator(ClassLoader classLoader) {
-			this.classLoader = classLoader;
+	private static void addChildTypes(Class<?> clazz, List<Class<?>> types) {
+		for (Class<?> child : clazz.getDeclaredClasses()) {
+			types.add(child);
+			addChildTypes(child, types);
 		}
+	}
 
-		@Override
-		public int compare(ClassWithJavascript o1, ClassWithJavascript o2) {
-
-			try {
-				Class<?> c1 = classLoader.loadClass(o1.getClassName());
-				Class<?> c2 = classLoader.loadClass(o2.getClassName());
-				return DEPENDENCY_COMPARATOR.compare(c1, c2);
-			}
-			catch (ClassNotFoundException e) {
-				throw new STJSRuntimeException(e);
+	/**
+	 * use topological sort to find the order of processing cells. The classes are added after all their dependencies
+	 * (except for the cyclic dependencies). The dependencies are browsed with an explicit stack, as the dependency chains
+	 * can be longer than what the thread's stack allows.
+	 */
+	private void visit(Set<ClassWithJavascript> visited, List<ClassWithJavascript> deps, ClassWithJavascript root) {
+		if (!visited.add(root)) {
+			return;
+		}
+		Deque<ClassWithJavascript> path = new ArrayDeque<ClassWithJavascript>();
+		Deque<Iterator<ClassWithJavascript>> remainingDeps = new ArrayDeque<Iterator<ClassWithJavascript>>();
+		path.push(root);
+		remainingDeps.push(root.getDirectDependencies().iterator());
+		while (!path.isEmpty()) {
+			Iterator<ClassWithJavascript> it = remainingDeps.peek();
+			if (it.hasNext()) {
+				ClassWithJavascript dep = it.next();
+				// an already visited class is either already added, or it's a cyclic dependency
+				if (visited.add(dep)) {
+					path.push(dep);
+					remainingDeps.push(dep.getDirectDependencies().iterator());
+				}
+			} else {
+				remainingDeps.pop();
+				deps.add(path.pop());
 			}
 		}
-
 	}
 }
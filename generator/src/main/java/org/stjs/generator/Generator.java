@@ -28,14 +28,30 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
-
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.stjs.generator.closure.ExternsGenerator;
 import org.stjs.generator.scope.CompilationUnitScope;
 import org.stjs.generator.scope.ScopeBuilder;
 import org.stjs.generator.type.ClassLoaderWrapper;
 import org.stjs.generator.type.ClassWrapper;
 import org.stjs.generator.utils.ClassUtils;
+import org.stjs.generator.visitor.ConstantFoldingVisitor;
+import org.stjs.generator.visitor.MethodInliningVisitor;
 import org.stjs.generator.visitor.SetParentVisitor;
 import org.stjs.generator.writer.JavascriptWriterVisitor;
 
@@ -49,7 +65,24 @@ import com.google.common.io.InputSupplier;
  */
 public class Generator {
 
+	private static final Logger LOG = Logger.getLogger(Generator.class.getName());
+
 	private static final String STJS_FILE = "stjs.js";
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/**
+	 * the classes resolved (or generated) by this generator, for each class loader. A class being resolved by a thread
+	 * is already in the table, so the other threads wait for it instead of resolving it again.
+	 */
+	private final Map<ClassLoader, ConcurrentMap<String, Future<ClassWithJavascript>>> resolutionTables =
+			new WeakHashMap<ClassLoader, ConcurrentMap<String, Future<ClassWithJavascript>>>();
+	private final AtomicInteger resolvedClassCount = new AtomicInteger();
+	private final AtomicInteger generatedOnDemandCount = new AtomicInteger();
+
+	static {
+		// the cached parser is a single static instance that cannot be shared by classes generated in parallel
+		JavaParser.setCacheParser(false);
+	}
 
 	public File getOutputFile(File generationFolder, String className) {
 		return getOutputFile(generationFolder, className, true);
@@ -61,7 +94,7 @@ public class Generator {
 
 	public File getOutputFile(File generationFolder, String className, boolean generateDirectory) {
 		File output = new File(generationFolder, className.replace('.', File.separatorChar) + ".js");
-		if (generateDirectory && !output.getParentFile().exists() && !output.getParentFile().mkdirs()) {
+		if (generateDirectory && !output.getParentFile().mkdirs() && !output.getParentFile().isDirectory()) {
 			throw new STJSRuntimeException("Unable to create parent folder for the output file:" + output);
 		}
 		return output;
@@ -83,7 +116,7 @@ public class Generator {
 			GeneratorConfiguration configuration) throws JavascriptFileGenerationException {
 
 		ClassLoaderWrapper classLoaderWrapper =
-				new ClassLoaderWrapper(builtProjectClassLoader, configuration.getAllowedPackages(),
+				new ClassLoaderWrapper(builtProjectClassLoader, configuration.getAllowedPackagePrefixes(),
 						configuration.getAllowedJavaLangClasses());
 		DependencyResolver dependencyResolver =
 				new GeneratorDependencyResolver(builtProjectClassLoader, sourceFolder, generationFolder, targetFolder,
@@ -91,7 +124,9 @@ public class Generator {
 
 		ClassWrapper clazz = classLoaderWrapper.loadClass(className).getOrThrow();
 		if (ClassUtils.isBridge(clazz.getClazz())) {
-			return new BridgeClass(dependencyResolver, clazz.getClazz());
+			BridgeClass bridgeClass = new BridgeClass(dependencyResolver, clazz.getClazz());
+			getResolutionTable(builtProjectClassLoader).put(className, resolved(bridgeClass));
+			return bridgeClass;
 		}
 
 		File inputFile = getInputFile(sourceFolder, className);
@@ -99,26 +134,15 @@ public class Generator {
 		GenerationContext context = new GenerationContext(inputFile, configuration);
 
 		CompilationUnit cu = parseAndResolve(classLoaderWrapper, inputFile, context, configuration.getSourceEncoding());
-
-		BufferedWriter writer = null;
-		JavascriptWriterVisitor generatorVisitor = new JavascriptWriterVisitor(configuration.isGenerateSourceMap());
-
-		try {
-			// generate the javascript code
-			generatorVisitor.visit(cu, context);
-
-			writer = Files.newWriter(outputFile, Charset.forName(configuration.getSourceEncoding()));
-			writer.write(generatorVisitor.getGeneratedSource());
-			writer.flush();
-
+		if (configuration.isInlineConstants()) {
+			cu.accept(new ConstantFoldingVisitor(), context);
 		}
-		catch (IOException e1) {
-			throw new STJSRuntimeException("Could not open output file " + outputFile + ":" + e1, e1);
-		}
-		finally {
-			Closeables.closeQuietly(writer);
+		if (configuration.isInlineMethods()) {
+			cu.accept(new MethodInliningVisitor(), context);
 		}
 
+		JavascriptWriterVisitor generatorVisitor = generateJavascript(cu, context, outputFile, configuration);
+
 		// write properties
 		STJSClass stjsClass = new STJSClass(dependencyResolver, targetFolder, className);
 		Set<String> resolvedClasses = new LinkedHashSet<String>(classLoaderWrapper.getResolvedClasses());
@@ -130,9 +154,49 @@ public class Generator {
 		if (configuration.isGenerateSourceMap()) {
 			generateSourceMap(generationFolder, configuration, context, generatorVisitor, outputFile, stjsClass);
 		}
+		// the classes resolved from now on see the dependencies that were just generated
+		getResolutionTable(builtProjectClassLoader).put(className, resolved(stjsClass));
 		return stjsClass;
 	}
 
+	/**
+	 * generates the javascript code directly in a temporary file that replaces the output file only if the generation
+	 * succeeded, so the output file is never left half written
+	 */
+	private JavascriptWriterVisitor generateJavascript(CompilationUnit cu, GenerationContext context, File outputFile,
+			GeneratorConfiguration configuration) {
+		File tempFile = new File(outputFile.getPath() + TEMP_FILE_SUFFIX);
+		BufferedWriter writer = null;
+		boolean generated = false;
+		try {
+			writer = Files.newWriter(tempFile, Charset.forName(configuration.getSourceEncoding()));
+			JavascriptWriterVisitor generatorVisitor =
+					new JavascriptWriterVisitor(writer, configuration.isGenerateSourceMap(),
+							configuration.isMinify());
+			generatorVisitor.visit(cu, context);
+			writer.close();
+			rename(tempFile, outputFile);
+			generated = true;
+			return generatorVisitor;
+		}
+		catch (IOException e1) {
+			throw new STJSRuntimeException("Could not open output file " + outputFile + ":" + e1, e1);
+		}
+		finally {
+			Closeables.closeQuietly(writer);
+			if (!generated && !tempFile.delete() && tempFile.exists()) {
+				LOG.warning("Could not delete the temporary file " + tempFile);
+			}
+		}
+	}
+
+	private void rename(File from, File to) {
+		// on some platforms the rename fails if the target exists
+		if (!from.renameTo(to) && !(to.delete() && from.renameTo(to))) {
+			throw new STJSRuntimeException("Could not rename " + from + " to " + to);
+		}
+	}
+
 	/**
 	 * generate the source map for the given class
 	 */
@@ -256,6 +320,48 @@ public class Generator {
 		}
 	}
 
+	/**
+	 * This method writes the externs of the bridges used by the given classes, as expected by the Closure Compiler (and
+	 * by the other Javascript optimizers understanding this format), so the optimizers don't rename the members of the
+	 * bridges. The bridges used by these bridges are written too. This method assumes the javascript code for the
+	 * given classes was already generated.
+	 * @param classNames
+	 *            the classes of the project. The bridges among them are written as well.
+	 */
+	public void writeExterns(ClassLoader builtProjectClassLoader, Collection<String> classNames, File outputFile,
+			String encoding) {
+		DependencyResolver dependencyResolver =
+				new GeneratorDependencyResolver(builtProjectClassLoader, null, null, null, null);
+		ExternsGenerator externs = new ExternsGenerator();
+		BufferedWriter writer = null;
+		try {
+			for (String className : classNames) {
+				ClassWithJavascript resolved = dependencyResolver.resolve(className);
+				if (resolved instanceof BridgeClass) {
+					externs.addBridge(builtProjectClassLoader.loadClass(className));
+					continue;
+				}
+				for (ClassWithJavascript dep : resolved.getDirectDependencies()) {
+					if (dep instanceof BridgeClass) {
+						externs.addBridge(builtProjectClassLoader.loadClass(dep.getClassName()));
+					}
+				}
+			}
+			writer = Files.newWriter(outputFile, Charset.forName(encoding));
+			externs.write(writer);
+			writer.flush();
+		}
+		catch (ClassNotFoundException e) {
+			throw new STJSRuntimeException(e);
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Could not write the externs file " + outputFile + ":" + e, e);
+		}
+		finally {
+			Closeables.closeQuietly(writer);
+		}
+	}
+
 	private static final class InputStreamSupplier implements InputSupplier<InputStream> {
 		private final InputStream input;
 
@@ -270,8 +376,57 @@ public class Generator {
 
 	}
 
+	private ConcurrentMap<String, Future<ClassWithJavascript>> getResolutionTable(ClassLoader builtProjectClassLoader) {
+		synchronized (resolutionTables) {
+			ConcurrentMap<String, Future<ClassWithJavascript>> table = resolutionTables.get(builtProjectClassLoader);
+			if (table == null) {
+				table = new ConcurrentHashMap<String, Future<ClassWithJavascript>>();
+				resolutionTables.put(builtProjectClassLoader, table);
+			}
+			return table;
+		}
+	}
+
+	private static Future<ClassWithJavascript> resolved(final ClassWithJavascript resolved) {
+		FutureTask<ClassWithJavascript> future =
+				new FutureTask<ClassWithJavascript>(new Callable<ClassWithJavascript>() {
+					@Override
+					public ClassWithJavascript call() {
+						return resolved;
+					}
+				});
+		future.run();
+		return future;
+	}
+
+	private static String getParentClassName(String className) {
+		int pos = className.indexOf('$');
+		return pos > 0 ? className.substring(0, pos) : className;
+	}
+
 	/**
-	 * this class lazily generates the dependencies
+	 * @return the number of classes resolved by this generator from the information stored at generation time (or from
+	 *         the bridge annotations). A class is resolved only once, the following resolutions reuse it.
+	 */
+	public int getResolvedClassCount() {
+		return resolvedClassCount.get();
+	}
+
+	/**
+	 * @return the number of classes this generator had to generate while resolving the dependencies, as they were not
+	 *         generated yet
+	 */
+	public int getGeneratedOnDemandCount() {
+		return generatedOnDemandCount.get();
+	}
+
+	/**
+	 * this class lazily generates the dependencies. Each class is resolved once: the result is kept in the resolution
+	 * table of the class loader, shared by all the resolvers of the generator. No lock is held while a class is
+	 * resolved, so the threads resolving different classes do not wait for each other. When a class has to be
+	 * generated on demand, the dependencies it needs that were not generated yet are generated in the same loop, using
+	 * a worklist, instead of one nested resolution for each level of the dependency chain. A dependency that cannot be
+	 * generated is left out of the table: its error is thrown when the dependency itself is resolved.
 	 */
 	private class GeneratorDependencyResolver implements DependencyResolver {
 		private final ClassLoader builtProjectClassLoader;
@@ -298,10 +453,86 @@ public class Generator {
 
 		@Override
 		public ClassWithJavascript resolve(String className) {
-			String parentClassName = className;
-			int pos = parentClassName.indexOf('$');
-			if (pos > 0) {
-				parentClassName = parentClassName.substring(0, pos);
+			String parentClassName = getParentClassName(className);
+			ConcurrentMap<String, Future<ClassWithJavascript>> table = getResolutionTable(builtProjectClassLoader);
+			Future<ClassWithJavascript> resolved = table.get(parentClassName);
+			if (resolved != null) {
+				return getResolved(table, parentClassName, resolved);
+			}
+
+			final Deque<String> worklist = new ArrayDeque<String>();
+			worklist.add(parentClassName);
+			while (!worklist.isEmpty()) {
+				final String name = worklist.poll();
+				FutureTask<ClassWithJavascript> task = new FutureTask<ClassWithJavascript>(
+						new Callable<ClassWithJavascript>() {
+							@Override
+							public ClassWithJavascript call() {
+								return resolveOnce(name, worklist);
+							}
+						});
+				Future<ClassWithJavascript> existing = table.putIfAbsent(name, task);
+				if (resolved == null) {
+					// the requested class: its failure is thrown to the caller
+					resolved = existing == null ? task : existing;
+					if (existing == null) {
+						task.run();
+					}
+					getResolved(table, parentClassName, resolved);
+				} else if (existing == null) {
+					// a dependency: its failure is thrown only when the dependency itself is resolved
+					task.run();
+					forgetFailure(table, name, task);
+				}
+				// else already resolved, or being resolved by another thread
+			}
+			return getResolved(table, parentClassName, resolved);
+		}
+
+		private void forgetFailure(ConcurrentMap<String, Future<ClassWithJavascript>> table, String parentClassName,
+				Future<ClassWithJavascript> resolved) {
+			try {
+				getResolved(table, parentClassName, resolved);
+			}
+			catch (RuntimeException e) {
+				// already removed from the table, the class is resolved again the next time
+				LOG.fine("Could not resolve the dependency " + parentClassName + ":" + e);
+			}
+		}
+
+		private ClassWithJavascript getResolved(ConcurrentMap<String, Future<ClassWithJavascript>> table,
+				String parentClassName, Future<ClassWithJavascript> resolved) {
+			try {
+				return resolved.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException("Interrupted while resolving the class " + parentClassName, e);
+			}
+			catch (ExecutionException e) {
+				// a failed resolution is not kept, the class is resolved again the next time
+				table.remove(parentClassName, resolved);
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw new STJSRuntimeException(e.getCause());
+			}
+		}
+
+		/**
+		 * @param worklist
+		 *            receives the dependencies of the class if it had to be generated, as they may have to be generated
+		 *            too
+		 */
+		private ClassWithJavascript resolveOnce(String parentClassName, Deque<String> worklist) {
+			// the classes of the manifests are known without loading them
+			STJSManifest.Entry entry = STJSManifest.forClassLoader(builtProjectClassLoader).getEntry(parentClassName);
+			if (entry != null && !entry.isBridge()) {
+				resolvedClassCount.incrementAndGet();
+				return new STJSClass(this, builtProjectClassLoader, parentClassName);
 			}
 			// try first if to see if it's a bridge class
 			Class<?> clazz;
@@ -312,6 +543,7 @@ public class Generator {
 				throw new STJSRuntimeException(e);
 			}
 			if (ClassUtils.isBridge(clazz)) {
+				resolvedClassCount.incrementAndGet();
 				return new BridgeClass(this, clazz);
 			}
 
@@ -319,10 +551,20 @@ public class Generator {
 			STJSClass stjsClass = new STJSClass(this, builtProjectClassLoader, parentClassName);
 			if (stjsClass.getJavascriptFiles().isEmpty()) {
 				checkFolders(parentClassName);
-				stjsClass =
-						(STJSClass) generateJavascript(builtProjectClassLoader, parentClassName, sourceFolder,
-								generationFolder, targetFolder, configuration);
+				generatedOnDemandCount.incrementAndGet();
+				ClassWithJavascript generated = generateJavascript(builtProjectClassLoader, parentClassName,
+						sourceFolder, generationFolder, targetFolder, configuration);
+				if (generated instanceof STJSClass) {
+					Map<String, Future<ClassWithJavascript>> table = getResolutionTable(builtProjectClassLoader);
+					for (String dependency : ((STJSClass) generated).getDependencies()) {
+						if (!table.containsKey(getParentClassName(dependency))) {
+							worklist.add(getParentClassName(dependency));
+						}
+					}
+				}
+				return generated;
 			}
+			resolvedClassCount.incrementAndGet();
 			return stjsClass;
 		}
 
@@ -18,20 +18,43 @@ package org.stjs.generator;
 import java.util.Collection;
 import java.util.Set;
 
+import org.stjs.generator.utils.PrefixTrie;
+
 public class GeneratorConfiguration {
 	private final Collection<String> allowedPackages;
+	private final PrefixTrie allowedPackagePrefixes;
 	private final Set<String> allowedJavaLangClasses;
 	private final boolean generateArrayHasOwnProperty;
 	private final boolean generateSourceMap;
 	private final String sourceEncoding;
+	private final boolean minify;
+	private final boolean hoistAnonymousClasses;
+	private final boolean iterateArraysByIndex;
+	private final boolean initializeFieldsInConstructor;
+	private final boolean generateJsonDeserializers;
+	private final boolean inlineConstants;
+	private final boolean inlineMethods;
+	private final boolean lazyClassInitialization;
 
 	GeneratorConfiguration(Collection<String> allowedPackages, Set<String> allowedJavaLangClasses,
-			boolean generateArrayHasOwnProperty, boolean generateSourceMap, String sourceEncoding) {
+			boolean generateArrayHasOwnProperty, boolean generateSourceMap, String sourceEncoding, boolean minify,
+			boolean hoistAnonymousClasses, boolean iterateArraysByIndex, boolean initializeFieldsInConstructor,
+			boolean generateJsonDeserializers, boolean inlineConstants, boolean inlineMethods,
+			boolean lazyClassInitialization) {
 		this.allowedPackages = allowedPackages;
+		this.allowedPackagePrefixes = new PrefixTrie(allowedPackages);
 		this.allowedJavaLangClasses = allowedJavaLangClasses;
 		this.generateArrayHasOwnProperty = generateArrayHasOwnProperty;
 		this.generateSourceMap = generateSourceMap;
 		this.sourceEncoding = sourceEncoding;
+		this.minify = minify;
+		this.hoistAnonymousClasses = hoistAnonymousClasses;
+		this.iterateArraysByIndex = iterateArraysByIndex;
+		this.initializeFieldsInConstructor = initializeFieldsInConstructor;
+		this.generateJsonDeserializers = generateJsonDeserializers;
+		this.inlineConstants = inlineConstants;
+		this.inlineMethods = inlineMethods;
+		this.lazyClassInitialization = lazyClassInitialization;
 	}
 
 	/**
@@ -42,6 +65,13 @@ public class GeneratorConfiguration {
 		return allowedPackages;
 	}
 
+	/**
+	 * @return the allowed packages, built once for all the classes generated with this configuration
+	 */
+	public PrefixTrie getAllowedPackagePrefixes() {
+		return allowedPackagePrefixes;
+	}
+
 	public Set<String> getAllowedJavaLangClasses() {
 		return allowedJavaLangClasses;
 	}
@@ -58,4 +88,76 @@ public class GeneratorConfiguration {
 		return sourceEncoding;
 	}
 
+	/**
+	 * @return true if the generated code has no indentation and no comments, and the local variables and the
+	 *         parameters have short names. The names of the types and of their members do not change.
+	 */
+	public boolean isMinify() {
+		return minify;
+	}
+
+	/**
+	 * @return true if the anonymous classes are defined (i.e. stjs.extend is called) only the first time their
+	 *         creation expression is evaluated. The final local variables used by such a class are given to its
+	 *         constructor, instead of being seen by the closures of its methods.
+	 */
+	public boolean isHoistAnonymousClasses() {
+		return hoistAnonymousClasses;
+	}
+
+	/**
+	 * @return true if the for-each loops on an {@link org.stjs.javascript.Array} are generated as loops on the indexes
+	 *         from 0 to the length of the array (read once), instead of for-in loops. The missing elements of a sparse
+	 *         array are then visited too, with an undefined value.
+	 */
+	public boolean isIterateArraysByIndex() {
+		return iterateArraysByIndex;
+	}
+
+	/**
+	 * @return true if the instance fields are initialized in the constructor (after the call to the super class'
+	 *         constructor, in the order they are declared) instead of the prototype. All the instances of a class then
+	 *         have the same properties, added in the same order.
+	 */
+	public boolean isInitializeFieldsInConstructor() {
+		return initializeFieldsInConstructor;
+	}
+
+	/**
+	 * @return true if a $fromJSON function is generated for each class that can be built from JSON. stjs.parseJSON
+	 *         then uses the browser's JSON.parse and this function, that assigns directly the fields of the class,
+	 *         instead of parsing the JSON text itself. The properties that are not fields of the class are ignored.
+	 */
+	public boolean isGenerateJsonDeserializers() {
+		return generateJsonDeserializers;
+	}
+
+	/**
+	 * @return true if the constant fields (the final static fields of a primitive type or String initialized with a
+	 *         compile-time constant expression) are replaced by their value where they are used, and the constant
+	 *         expressions using them are computed at generation time. The fields are still generated, so they can be
+	 *         accessed from Javascript code.
+	 */
+	public boolean isInlineConstants() {
+		return inlineConstants;
+	}
+
+	/**
+	 * @return true if the calls of the trivial methods that cannot be overridden (getters, setters and static helpers
+	 *         returning a simple expression) are replaced by the body of the method. The methods are still generated.
+	 */
+	public boolean isInlineMethods() {
+		return inlineMethods;
+	}
+
+	/**
+	 * @return true if the top-level classes are defined the first time they are used (an instance is created, a static
+	 *         member is accessed or the class is used with instanceof) and not when the script is loaded. The super
+	 *         class is defined before the class and the static initializers run at that point, like the initialization
+	 *         of the classes in Java.
+	 */
+	public boolean isLazyClassInitialization() {
+		return lazyClassInitialization;
+	}
+
 }
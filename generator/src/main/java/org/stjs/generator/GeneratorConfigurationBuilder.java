@@ -30,6 +30,14 @@ public class GeneratorConfigurationBuilder {
 	private boolean generateArrayHasOwnProperty = true;
 	private boolean generateSourceMap;
 	private String sourceEncoding = Charset.defaultCharset().name();
+	private boolean minify;
+	private boolean hoistAnonymousClasses;
+	private boolean iterateArraysByIndex;
+	private boolean initializeFieldsInConstructor;
+	private boolean generateJsonDeserializers;
+	private boolean inlineConstants;
+	private boolean inlineMethods;
+	private boolean lazyClassInitialization;
 
 	public GeneratorConfigurationBuilder allowedPackage(String packageName) {
 		allowedPackages.add(packageName);
@@ -66,6 +74,46 @@ public class GeneratorConfigurationBuilder {
 		return this;
 	}
 
+	public GeneratorConfigurationBuilder minify(boolean b) {
+		minify = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder hoistAnonymousClasses(boolean b) {
+		hoistAnonymousClasses = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder iterateArraysByIndex(boolean b) {
+		iterateArraysByIndex = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder initializeFieldsInConstructor(boolean b) {
+		initializeFieldsInConstructor = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder generateJsonDeserializers(boolean b) {
+		generateJsonDeserializers = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder inlineConstants(boolean b) {
+		inlineConstants = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder inlineMethods(boolean b) {
+		inlineMethods = b;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder lazyClassInitialization(boolean b) {
+		lazyClassInitialization = b;
+		return this;
+	}
+
 	public GeneratorConfiguration build() {
 		allowedJavaLangClasses.add("Object");
 		allowedJavaLangClasses.add("String");
@@ -87,7 +135,9 @@ public class GeneratorConfigurationBuilder {
 		allowedPackages.add("java.lang");
 
 		return new GeneratorConfiguration(allowedPackages, allowedJavaLangClasses, generateArrayHasOwnProperty,
-				generateSourceMap, sourceEncoding);
+				generateSourceMap, sourceEncoding, minify, hoistAnonymousClasses, iterateArraysByIndex,
+				initializeFieldsInConstructor, generateJsonDeserializers, inlineConstants, inlineMethods,
+				lazyClassInitialization);
 	}
 
 }
@@ -41,6 +41,12 @@ public final class GeneratorConstants {
 	 */
 	public static final String CLASSPATH_FILE = "stjs.cp";
 
+	/**
+	 * this is the file where the maven plugin writes the manifest of the classes generated in a module (see
+	 * {@link STJSManifest})
+	 */
+	public static final String MANIFEST_FILE = "META-INF/stjs.manifest";
+
 	/**
 	 * this folder is used by the test runner to write temporary files. the CLASSPATH_FILE is also put in this directory
 	 */
@@ -40,7 +40,8 @@ import com.google.common.io.Files;
  * This class represents a class and the corresponding generated javascript file. The information about dependencies and
  * sources are stored at generation time in a properties file that has as name [class-name].stjs (and it's packed along
  * with the source file in the same folder). Thus, if a STJS library is built, it will be delivered with all this
- * information, as the original Java code will no longer be available with the library.
+ * information, as the original Java code will no longer be available with the library. When the class is found in the
+ * {@link STJSManifest} of its module, the information is taken from there instead of the properties file.
  * @author acraciun
  */
 public class STJSClass implements ClassWithJavascript {
@@ -88,6 +89,14 @@ public class STJSClass implements ClassWithJavascript {
 		this.className = className;
 		this.targetFolder = null;
 		this.dependencyResolver = dependencyResolver;
+
+		STJSManifest.Entry entry = STJSManifest.forClassLoader(classLoader).getEntry(className);
+		if (entry != null) {
+			properties = new Properties();
+			dependencies = entry.getDependencies();
+			generatedJavascriptFile = entry.getJavascriptFile();
+			return;
+		}
 		properties = loadProperties(classLoader);
 
 		// deps
@@ -147,14 +156,15 @@ public class STJSClass implements ClassWithJavascript {
 
 	public File getStjsPropertiesFile() {
 		File propFile = new File(targetFolder, ClassUtils.getPropertiesFileName(className));
-		if (!propFile.getParentFile().exists() && !propFile.getParentFile().mkdirs()) {
+		// the folder may be created in the meantime by another thread generating a class in the same package
+		if (!propFile.getParentFile().mkdirs() && !propFile.getParentFile().isDirectory()) {
 			throw new JavascriptClassGenerationException(className,
 					"Unable to create parent folder for the properties file:" + propFile);
 		}
 		return propFile;
 	}
 
-	public void store() {
+	public synchronized void store() {
 		if (targetFolder == null) {
 			throw new IllegalStateException("This properties file was open for read only");
 		}
@@ -181,7 +191,7 @@ public class STJSClass implements ClassWithJavascript {
 		}
 	}
 
-	public void setDependencies(Collection<String> dependencies) {
+	public synchronized void setDependencies(Collection<String> dependencies) {
 		this.dependencies = new ArrayList<String>(dependencies);
 		if (dependencies == null) {
 			properties.remove(DEPENDENCIES_PROP);
@@ -190,7 +200,18 @@ public class STJSClass implements ClassWithJavascript {
 		}
 	}
 
-	public void setGeneratedJavascriptFile(URI generatedJavascriptFile) {
+	/**
+	 * @return the names of the classes this class depends on, without resolving them
+	 */
+	public synchronized List<String> getDependencies() {
+		List<String> names = new ArrayList<String>(dependencies.size());
+		for (String name : dependencies) {
+			names.add(name.trim());
+		}
+		return names;
+	}
+
+	public synchronized void setGeneratedJavascriptFile(URI generatedJavascriptFile) {
 		this.generatedJavascriptFile = generatedJavascriptFile;
 		if (generatedJavascriptFile == null) {
 			properties.remove(GENERATED_JS_FILE_PROP);
@@ -206,7 +227,7 @@ public class STJSClass implements ClassWithJavascript {
 	}
 
 	@Override
-	public List<URI> getJavascriptFiles() {
+	public synchronized List<URI> getJavascriptFiles() {
 		if (generatedJavascriptFile == null) {
 			return Collections.emptyList();
 		}
@@ -214,12 +235,14 @@ public class STJSClass implements ClassWithJavascript {
 	}
 
 	@Override
-	public List<ClassWithJavascript> getDirectDependencies() {
+	public synchronized List<ClassWithJavascript> getDirectDependencies() {
 		if (directDependencies == null) {
-			directDependencies = new ArrayList<ClassWithJavascript>(dependencies.size());
+			// kept only if all the dependencies were resolved, otherwise they are resolved again the next time
+			List<ClassWithJavascript> resolved = new ArrayList<ClassWithJavascript>(dependencies.size());
 			for (String className : dependencies) {
-				directDependencies.add(dependencyResolver.resolve(className.trim()));
+				resolved.add(dependencyResolver.resolve(className.trim()));
 			}
+			directDependencies = resolved;
 		}
 		return directDependencies;
 	}
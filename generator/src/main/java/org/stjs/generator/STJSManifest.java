@@ -0,0 +1,262 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.concurrent.Immutable;
+
+import org.stjs.generator.utils.PreConditions;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This is the index of the classes generated in a module (i.e. a jar or a folder of the classpath). It has, for each
+ * class, the information found in the [class-name].stjs properties file of the class, plus a flag for the bridges and
+ * the hash of the class' API. It is written in {@link GeneratorConstants#MANIFEST_FILE} once all the classes of the
+ * module are generated, so the users of the module read a single file instead of a properties file for each class.
+ * The manifests found in a class loader are read the first time they're needed and kept (softly referenced) for each
+ * class loader. The classes that are not found in any manifest are looked up in their own properties file.
+ * @author acraciun
+ */
+public final class STJSManifest {
+	private static final Map<ClassLoader, SoftReference<STJSManifest>> MANIFESTS =
+			new WeakHashMap<ClassLoader, SoftReference<STJSManifest>>();
+
+	private static final String HEADER = "# Generated by STJS: class, js file, bridge, API hash, dependencies";
+	private static final char SEPARATOR = '\t';
+	private static final int FIELD_COUNT = 5;
+
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private final Map<String, String> classNamesByJavascriptFile = new HashMap<String, String>();
+
+	private STJSManifest() {
+		//
+	}
+
+	/**
+	 * @return all the manifests found by the given class loader, merged. When a class appears in more than one
+	 *         manifest, the first one found is kept, as the class loader does for the class itself.
+	 */
+	public static STJSManifest forClassLoader(ClassLoader classLoader) {
+		synchronized (MANIFESTS) {
+			SoftReference<STJSManifest> ref = MANIFESTS.get(classLoader);
+			STJSManifest manifest = ref == null ? null : ref.get();
+			if (manifest == null) {
+				manifest = load(classLoader);
+				MANIFESTS.put(classLoader, new SoftReference<STJSManifest>(manifest));
+			}
+			return manifest;
+		}
+	}
+
+	/**
+	 * forgets the manifests read from the given class loader, they are read again the next time they're needed
+	 */
+	public static void clearCache(ClassLoader classLoader) {
+		synchronized (MANIFESTS) {
+			MANIFESTS.remove(classLoader);
+		}
+	}
+
+	/**
+	 * @return the information about the given class or null if the class is not in any manifest
+	 */
+	public Entry getEntry(String className) {
+		return entries.get(className);
+	}
+
+	/**
+	 * @return the name of the class generated in the given file (as found in the manifest) or null if no class of the
+	 *         manifests was generated in this file
+	 */
+	public String getClassNameForJavascriptFile(String javascriptFile) {
+		return classNamesByJavascriptFile.get(javascriptFile);
+	}
+
+	private static STJSManifest load(ClassLoader classLoader) {
+		STJSManifest manifest = new STJSManifest();
+		try {
+			Enumeration<URL> urls = classLoader.getResources(GeneratorConstants.MANIFEST_FILE);
+			while (urls.hasMoreElements()) {
+				manifest.read(urls.nextElement());
+			}
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Could not read the STJS manifests:" + e, e);
+		}
+		return manifest;
+	}
+
+	private void read(URL url) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), Charsets.UTF_8));
+		try {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				parse(line);
+			}
+		}
+		finally {
+			Closeables.closeQuietly(reader);
+		}
+	}
+
+	private void parse(String line) {
+		if (line.length() == 0 || line.charAt(0) == '#') {
+			return;
+		}
+		List<String> fields = new ArrayList<String>(FIELD_COUNT);
+		for (String field : Splitter.on(SEPARATOR).trimResults().split(line)) {
+			fields.add(field);
+		}
+		if (fields.size() != FIELD_COUNT) {
+			throw new STJSRuntimeException("Wrong line in the STJS manifest:" + line);
+		}
+		List<String> dependencies = new ArrayList<String>();
+		for (String dep : Splitter.on(',').omitEmptyStrings().split(fields.get(4))) {
+			dependencies.add(dep);
+		}
+		Entry entry = new Entry(fields.get(0), toURI(fields.get(1)), dependencies, Boolean.parseBoolean(fields.get(2)),
+				emptyToNull(fields.get(3)));
+		if (!entries.containsKey(entry.getClassName())) {
+			entries.put(entry.getClassName(), entry);
+			if (entry.getJavascriptFile() != null) {
+				classNamesByJavascriptFile.put(entry.getJavascriptFile().toString(), entry.getClassName());
+			}
+		}
+	}
+
+	private static URI toURI(String jsFile) {
+		if (jsFile.length() == 0) {
+			return null;
+		}
+		try {
+			return new URI(jsFile);
+		}
+		catch (URISyntaxException e) {
+			throw new STJSRuntimeException("Wrong javascript file in the STJS manifest:" + jsFile, e);
+		}
+	}
+
+	private static String emptyToNull(String s) {
+		return s.length() == 0 ? null : s;
+	}
+
+	private static String nullToEmpty(Object o) {
+		return o == null ? "" : o.toString();
+	}
+
+	/**
+	 * writes the manifest of a module with the given classes
+	 */
+	public static void write(File file, Collection<Entry> entries) throws IOException {
+		if (!file.getParentFile().mkdirs() && !file.getParentFile().isDirectory()) {
+			throw new IOException("Unable to create parent folder for the manifest:" + file);
+		}
+		List<Entry> sortedEntries = new ArrayList<Entry>(entries);
+		Collections.sort(sortedEntries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry e1, Entry e2) {
+				return e1.getClassName().compareTo(e2.getClassName());
+			}
+		});
+
+		Writer writer = Files.newWriter(file, Charsets.UTF_8);
+		try {
+			writer.write(HEADER);
+			writer.write('\n');
+			Joiner joiner = Joiner.on(SEPARATOR);
+			for (Entry entry : sortedEntries) {
+				joiner.appendTo(writer, entry.getClassName(), nullToEmpty(entry.getJavascriptFile()),
+						entry.isBridge(), nullToEmpty(entry.getSignatureHash()),
+						Joiner.on(',').join(entry.getDependencies()));
+				writer.write('\n');
+			}
+		}
+		finally {
+			Closeables.closeQuietly(writer);
+		}
+	}
+
+	/**
+	 * The information stored in the manifest about a class.
+	 */
+	@Immutable
+	public static final class Entry {
+		private final String className;
+		private final URI javascriptFile;
+		private final List<String> dependencies;
+		private final boolean bridge;
+		private final String signatureHash;
+
+		/**
+		 * @param javascriptFile
+		 *            the generated file, null for the bridges
+		 * @param signatureHash
+		 *            the hash of the API of the class, null if it's not known
+		 */
+		public Entry(String className, URI javascriptFile, List<String> dependencies, boolean bridge,
+				String signatureHash) {
+			PreConditions.checkNotNull(className);
+			PreConditions.checkNotNull(dependencies);
+			this.className = className;
+			this.javascriptFile = javascriptFile;
+			this.dependencies = Collections.unmodifiableList(new ArrayList<String>(dependencies));
+			this.bridge = bridge;
+			this.signatureHash = signatureHash;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public URI getJavascriptFile() {
+			return javascriptFile;
+		}
+
+		public List<String> getDependencies() {
+			return dependencies;
+		}
+
+		public boolean isBridge() {
+			return bridge;
+		}
+
+		public String getSignatureHash() {
+			return signatureHash;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package org.stjs.generator.ast;
 
 import japa.parser.ast.Node;
+import japa.parser.ast.body.MethodDeclaration;
 
 import org.stjs.generator.scope.Scope;
 import org.stjs.generator.type.MethodWrapper;
@@ -46,6 +47,16 @@ public class ASTNodeData {
 	 */
 	private Scope resolvedVariableScope;
 
+	/**
+	 * the value of the expression, if it's a constant expression that was folded
+	 */
+	private Object constantValue;
+
+	/**
+	 * the method whose body replaces the method call, if the call is inlined
+	 */
+	private MethodDeclaration inlinedMethod;
+
 	public ASTNodeData() {
 		//
 	}
@@ -102,6 +113,22 @@ public class ASTNodeData {
 		this.resolvedVariableScope = resolvedVariableScope;
 	}
 
+	public Object getConstantValue() {
+		return constantValue;
+	}
+
+	public void setConstantValue(Object constantValue) {
+		this.constantValue = constantValue;
+	}
+
+	public MethodDeclaration getInlinedMethod() {
+		return inlinedMethod;
+	}
+
+	public void setInlinedMethod(MethodDeclaration inlinedMethod) {
+		this.inlinedMethod = inlinedMethod;
+	}
+
 	public static Scope scope(Node n) {
 		return ((ASTNodeData) n.getData()).getScope();
 	}
@@ -150,6 +177,22 @@ public class ASTNodeData {
 		((ASTNodeData) n.getData()).setResolvedType(t);
 	}
 
+	public static Object constantValue(Node n) {
+		return ((ASTNodeData) n.getData()).getConstantValue();
+	}
+
+	public static void constantValue(Node n, Object value) {
+		((ASTNodeData) n.getData()).setConstantValue(value);
+	}
+
+	public static MethodDeclaration inlinedMethod(Node n) {
+		return ((ASTNodeData) n.getData()).getInlinedMethod();
+	}
+
+	public static void inlinedMethod(Node n, MethodDeclaration method) {
+		((ASTNodeData) n.getData()).setInlinedMethod(method);
+	}
+
 	public static Node parent(Node n, int upLevel) {
 		Node p = n;
 		for (int i = 0; (i < upLevel) && (p != null); ++i) {
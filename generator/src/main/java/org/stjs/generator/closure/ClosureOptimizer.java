@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.closure;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.stjs.generator.STJSRuntimeException;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.debugging.sourcemap.SourceMapGeneratorV3;
+import com.google.debugging.sourcemap.SourceMapParseException;
+import com.google.debugging.sourcemap.proto.Mapping.OriginalMapping;
+import com.google.javascript.jscomp.CheckLevel;
+import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.DiagnosticGroups;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.JSSourceFile;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.jscomp.SourceMap;
+
+/**
+ * This class optimizes generated Javascript files with the Closure Compiler in ADVANCED mode. Besides the default
+ * externs of the compiler, the names used by stjs.js and the externs of the bridges (see {@link ExternsGenerator})
+ * are kept as they are.
+ * <p>
+ * Each generated file is given with its source map, so the source map of the optimized code points directly to the
+ * Java sources.
+ * @author acraciun
+ */
+public class ClosureOptimizer {
+	private static final String STJS_RUNTIME = "stjs.js";
+
+	private final List<SourceFile> externs = new ArrayList<SourceFile>();
+	private final List<SourceFile> inputs = new ArrayList<SourceFile>();
+	private final Map<String, SourceMapConsumerV3> inputSourceMaps = new HashMap<String, SourceMapConsumerV3>();
+	private final Map<String, String> javaFolders = new HashMap<String, String>();
+	private List<String> warnings = Collections.emptyList();
+
+	public ClosureOptimizer(String bridgesExterns) throws IOException {
+		externs.addAll(CommandLineRunner.getDefaultExterns());
+		externs.add(JSSourceFile.fromCode(STJS_RUNTIME,
+				Resources.toString(Resources.getResource(ClosureOptimizer.class, "/" + STJS_RUNTIME), Charsets.UTF_8)));
+		externs.add(JSSourceFile.fromCode("stjs-bridges.js", bridgesExterns));
+	}
+
+	/**
+	 * adds a generated file. The files are optimized together, in the order they are added.
+	 * @param name
+	 *            the path of the file, relative to the generation folder
+	 * @param sourceMap
+	 *            the content of the file's source map, or null if there is none
+	 */
+	public void addInput(String name, String code, String sourceMap) {
+		inputs.add(JSSourceFile.fromCode(name, code));
+		if (sourceMap != null) {
+			SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
+			try {
+				consumer.parse(sourceMap);
+			}
+			catch (SourceMapParseException e) {
+				throw new STJSRuntimeException("Cannot read the source map of " + name + ":" + e, e);
+			}
+			inputSourceMaps.put(name, consumer);
+			int slash = name.lastIndexOf('/');
+			javaFolders.put(name, slash < 0 ? "" : name.substring(0, slash + 1));
+		}
+	}
+
+	/**
+	 * @param outputName
+	 *            the name of the optimized file, as written in the source map
+	 * @param sourceMapOutput
+	 *            where the source map is written, or null if no source map is needed
+	 * @return the optimized code
+	 */
+	public String optimize(String outputName, Appendable sourceMapOutput) throws IOException {
+		CompilerOptions options = new CompilerOptions();
+		CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
+		// stjs.js is given as it is in the externs (only the names it uses matter)
+		options.setWarningLevel(DiagnosticGroups.EXTERNS_VALIDATION, CheckLevel.OFF);
+		if (sourceMapOutput != null) {
+			options.setSourceMapOutputPath(outputName + ".map");
+			options.setSourceMapFormat(SourceMap.Format.V3);
+		}
+
+		Compiler compiler = new Compiler();
+		Result result = compiler.compile(externs, inputs, options);
+		warnings = toMessages(result.warnings);
+		if (!result.success) {
+			throw new STJSRuntimeException("The Closure Compiler failed:" + toMessages(result.errors));
+		}
+		// the mappings of the source map are added while the code is printed
+		String code = compiler.toSource();
+		if (sourceMapOutput != null) {
+			StringBuilder closureSourceMap = new StringBuilder();
+			result.sourceMap.appendTo(closureSourceMap, outputName);
+			writeJavaSourceMap(closureSourceMap.toString(), outputName, sourceMapOutput);
+		}
+		return code;
+	}
+
+	/**
+	 * @return the warnings of the last optimization
+	 */
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	private static List<String> toMessages(JSError[] errors) {
+		List<String> messages = new ArrayList<String>(errors.length);
+		for (JSError error : Arrays.asList(errors)) {
+			messages.add(error.toString());
+		}
+		return messages;
+	}
+
+	/**
+	 * writes the source map that goes from the optimized code to the Java sources, by following for each mapping of
+	 * the Closure Compiler's source map the one of the generated file. The mappings of the files without a source map
+	 * are kept as they are.
+	 */
+	private void writeJavaSourceMap(String closureSourceMap, String outputName, Appendable out) throws IOException {
+		SourceMapConsumerV3 closureMapping = new SourceMapConsumerV3();
+		try {
+			closureMapping.parse(closureSourceMap);
+		}
+		catch (SourceMapParseException e) {
+			throw new STJSRuntimeException("Cannot read the source map of the Closure Compiler:" + e, e);
+		}
+		final SourceMapGeneratorV3 javaSourceMap = new SourceMapGeneratorV3();
+		closureMapping.visitMappings(new SourceMapConsumerV3.EntryVisitor() {
+			@Override
+			public void visit(String sourceName, String symbolName, FilePosition sourceStartPosition,
+					FilePosition startPosition, FilePosition endPosition) {
+				SourceMapConsumerV3 inputSourceMap = inputSourceMaps.get(sourceName);
+				if (inputSourceMap == null) {
+					javaSourceMap.addMapping(sourceName, symbolName, sourceStartPosition, startPosition, endPosition);
+					return;
+				}
+				// the consumers count the lines and the columns from 1
+				OriginalMapping original = inputSourceMap.getMappingForLine(sourceStartPosition.getLine() + 1,
+						sourceStartPosition.getColumn() + 1);
+				if (original != null) {
+					javaSourceMap.addMapping(javaFolders.get(sourceName) + original.getOriginalFile(), symbolName,
+							new FilePosition(original.getLineNumber() - 1, original.getColumnPosition() - 1),
+							startPosition, endPosition);
+				}
+			}
+		});
+		javaSourceMap.appendTo(out, outputName);
+	}
+}
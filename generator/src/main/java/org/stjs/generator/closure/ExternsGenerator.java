@@ -0,0 +1,279 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.closure;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.stjs.generator.name.DefaultNameProvider;
+import org.stjs.generator.name.NameProvider;
+import org.stjs.generator.type.ClassWrapper;
+import org.stjs.generator.type.FieldWrapper;
+import org.stjs.generator.type.GenericArrayTypeWrapper;
+import org.stjs.generator.type.MethodWrapper;
+import org.stjs.generator.type.ParameterizedTypeWrapper;
+import org.stjs.generator.type.TypeWrapper;
+import org.stjs.generator.type.TypeWrappers;
+import org.stjs.generator.utils.ClassUtils;
+import org.stjs.generator.writer.JavascriptKeywords;
+import org.stjs.javascript.annotation.GlobalScope;
+import org.stjs.javascript.annotation.STJSBridge;
+
+/**
+ * This class writes the externs of the bridges, as expected by the Closure Compiler: the Javascript names of the
+ * bridges and of their members are declared, so the compiler doesn't rename them when it optimizes the generated code.
+ * The bridges used by the declared ones (super types, types of the fields, of the parameters and of the returned
+ * values) are declared too. The static members of the {@link GlobalScope} bridges are declared as global variables and
+ * functions.
+ * <p>
+ * The namespaces of the generated types are declared as well, as they are created at runtime by stjs.ns. The names of
+ * the instance fields of the generated types are declared as properties, as the JSON deserialization (stjs.parseJSON,
+ * the $typeDescription and the $fromJSON functions) reads and writes them by their Java name.
+ * @author acraciun
+ */
+public class ExternsGenerator {
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+
+	private final NameProvider names = new DefaultNameProvider();
+
+	/**
+	 * the bridges by their Javascript name. The names are sorted, so an outer type is declared before its inner types.
+	 */
+	private final Map<String, ClassWrapper> bridges = new TreeMap<String, ClassWrapper>();
+	private final Set<Class<?>> visitedClasses = new HashSet<Class<?>>();
+	private final Set<String> generatedTypeNames = new TreeSet<String>();
+	private final Set<String> generatedFieldNames = new TreeSet<String>();
+
+	/**
+	 * adds the given class if it's a bridge, together with the bridges it uses
+	 */
+	public void addBridge(Class<?> clazz) {
+		addType(TypeWrappers.wrap(clazz));
+	}
+
+	/**
+	 * adds the name of a generated type and of its inner types, so its namespace is created and the types are not
+	 * renamed (the types are looked up by their name in the type descriptions). The names of their instance fields are
+	 * not renamed either, as they are the keys of the JSON objects.
+	 */
+	public void addGeneratedType(Class<?> clazz) {
+		generatedTypeNames.add(names.getTypeName(TypeWrappers.wrap(clazz)));
+		for (Field field : clazz.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+				addIdentifier(generatedFieldNames, field.getName());
+			}
+		}
+		for (Class<?> innerClass : clazz.getDeclaredClasses()) {
+			addGeneratedType(innerClass);
+		}
+	}
+
+	private void addType(TypeWrapper type) {
+		if (type instanceof ParameterizedTypeWrapper) {
+			for (TypeWrapper arg : ((ParameterizedTypeWrapper) type).getActualTypeArguments()) {
+				addType(arg);
+			}
+		}
+		if (type instanceof GenericArrayTypeWrapper) {
+			addType(type.getComponentType());
+			return;
+		}
+		if (!(type instanceof ClassWrapper)) {
+			// type variables and wildcards
+			return;
+		}
+		Class<?> clazz = ((ClassWrapper) type).getClazz();
+		while (clazz.isArray()) {
+			clazz = clazz.getComponentType();
+		}
+		// the implicit bridges (like java.lang.String) are not declared, their members are found in the default
+		// externs and in stjs.js
+		if (!ClassUtils.hasAnnotation(clazz, STJSBridge.class) || !visitedClasses.add(clazz)) {
+			return;
+		}
+		ClassWrapper bridge = TypeWrappers.wrap(clazz);
+		bridges.put(names.getTypeName(bridge), bridge);
+
+		if (clazz.getGenericSuperclass() != null) {
+			addType(TypeWrappers.wrap(clazz.getGenericSuperclass()));
+		}
+		for (Type iface : clazz.getGenericInterfaces()) {
+			addType(TypeWrappers.wrap(iface));
+		}
+		for (FieldWrapper field : bridge.getDeclaredFields()) {
+			if (isDeclared(field.isDeclared(), field.getModifiers())) {
+				addType(field.getType());
+			}
+		}
+		for (MethodWrapper method : bridge.getDeclaredMethods()) {
+			if (isDeclared(method.isDeclared(), method.getModifiers())) {
+				addType(method.getReturnType());
+				for (TypeWrapper paramType : method.getParameterTypes()) {
+					addType(paramType);
+				}
+			}
+		}
+	}
+
+	private static boolean isDeclared(boolean declaredInType, int modifiers) {
+		return declaredInType && !Modifier.isPrivate(modifiers);
+	}
+
+	public void write(Appendable out) throws IOException {
+		out.append("// Externs generated by STJS\n");
+		Set<String> declaredNames = new HashSet<String>();
+		for (String typeName : generatedTypeNames) {
+			declareNamespace(out, typeName, declaredNames);
+			declareProperty(out, typeName, declaredNames);
+		}
+		if (!generatedFieldNames.isEmpty()) {
+			out.append("\n// the fields of the generated types\n");
+			for (String fieldName : generatedFieldNames) {
+				out.append("Object.prototype.").append(fieldName).append(";\n");
+			}
+		}
+		for (Map.Entry<String, ClassWrapper> entry : bridges.entrySet()) {
+			ClassWrapper bridge = entry.getValue();
+			if (bridge.hasAnnotation(GlobalScope.class)) {
+				writeGlobals(out, bridge);
+			} else {
+				writeType(out, entry.getKey(), bridge, declaredNames);
+			}
+		}
+	}
+
+	private void writeGlobals(Appendable out, ClassWrapper bridge) throws IOException {
+		out.append("\n");
+		for (FieldWrapper field : bridge.getDeclaredFields()) {
+			if (isDeclared(field.isDeclared(), field.getModifiers()) && Modifier.isStatic(field.getModifiers())) {
+				for (String name : getJavascriptNames(field.getName())) {
+					out.append("var ").append(name).append(";\n");
+				}
+			}
+		}
+		for (Map.Entry<String, Integer> method : getMethods(bridge, true).entrySet()) {
+			out.append("function ").append(method.getKey()).append(getParameters(method.getValue())).append(" {}\n");
+		}
+	}
+
+	private void writeType(Appendable out, String typeName, ClassWrapper bridge, Set<String> declaredNames)
+			throws IOException {
+		out.append("\n");
+		declareNamespace(out, typeName, declaredNames);
+		out.append(bridge.getClazz().isInterface() ? "/** @interface */\n" : "/** @constructor */\n");
+		if (typeName.indexOf('.') < 0) {
+			out.append("function ").append(typeName).append("() {}\n");
+		} else {
+			out.append(typeName).append(" = function() {};\n");
+		}
+		declaredNames.add(typeName);
+
+		for (FieldWrapper field : bridge.getDeclaredFields()) {
+			if (isDeclared(field.isDeclared(), field.getModifiers())) {
+				String owner = Modifier.isStatic(field.getModifiers()) ? typeName : typeName + ".prototype";
+				for (String name : getJavascriptNames(field.getName())) {
+					out.append(owner).append(".").append(name).append(";\n");
+				}
+			}
+		}
+		for (Map.Entry<String, Integer> method : getMethods(bridge, true).entrySet()) {
+			out.append(typeName).append(".").append(method.getKey()).append(" = function")
+					.append(getParameters(method.getValue())).append(" {};\n");
+		}
+		for (Map.Entry<String, Integer> method : getMethods(bridge, false).entrySet()) {
+			out.append(typeName).append(".prototype.").append(method.getKey()).append(" = function")
+					.append(getParameters(method.getValue())).append(" {};\n");
+		}
+	}
+
+	/**
+	 * declares the objects of the namespace (the parts of the name, except the last one) that were not declared yet
+	 */
+	private void declareNamespace(Appendable out, String name, Set<String> declaredNames) throws IOException {
+		int pos = name.indexOf('.');
+		while (pos >= 0) {
+			String part = name.substring(0, pos);
+			if (declaredNames.add(part)) {
+				out.append(part.indexOf('.') < 0 ? "var " : "").append(part).append(" = {};\n");
+			}
+			pos = name.indexOf('.', pos + 1);
+		}
+	}
+
+	private void declareProperty(Appendable out, String name, Set<String> declaredNames) throws IOException {
+		if (declaredNames.add(name)) {
+			out.append(name.indexOf('.') < 0 ? "var " : "").append(name).append(";\n");
+		}
+	}
+
+	/**
+	 * @return the Javascript names of the static or instance methods of the given type, with the maximum number of
+	 *         parameters of the methods having the same name
+	 */
+	private Map<String, Integer> getMethods(ClassWrapper bridge, boolean staticMethods) {
+		Map<String, Integer> methods = new TreeMap<String, Integer>();
+		for (MethodWrapper method : bridge.getDeclaredMethods()) {
+			if (!isDeclared(method.isDeclared(), method.getModifiers())
+					|| Modifier.isStatic(method.getModifiers()) != staticMethods) {
+				continue;
+			}
+			int paramCount = method.getParameterTypes().length;
+			for (String name : getJavascriptNames(method.getName())) {
+				Integer previousCount = methods.get(name);
+				methods.put(name, previousCount == null ? paramCount : Math.max(paramCount, previousCount));
+			}
+		}
+		return methods;
+	}
+
+	/**
+	 * @return the name of the member and, for the names starting with $, the name without the $, as the templates
+	 *         (like $get or $length) use it in the generated code. The Javascript keywords are skipped.
+	 */
+	private static Set<String> getJavascriptNames(String name) {
+		Set<String> javascriptNames = new TreeSet<String>();
+		addIdentifier(javascriptNames, name);
+		if (name.startsWith("$")) {
+			addIdentifier(javascriptNames, name.substring(1));
+		}
+		return javascriptNames;
+	}
+
+	private static void addIdentifier(Set<String> javascriptNames, String name) {
+		if (IDENTIFIER.matcher(name).matches() && !JavascriptKeywords.isReservedWord(name)) {
+			javascriptNames.add(name);
+		}
+	}
+
+	private static String getParameters(int count) {
+		StringBuilder params = new StringBuilder("(");
+		for (int i = 0; i < count; ++i) {
+			if (i > 0) {
+				params.append(", ");
+			}
+			params.append("p").append(i);
+		}
+		return params.append(")").toString();
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.name;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.stjs.generator.GeneratorConstants;
+import org.stjs.generator.scope.BasicScope;
+import org.stjs.generator.scope.Scope;
+import org.stjs.generator.scope.VariableWithScope;
+import org.stjs.generator.variable.LocalVariable;
+import org.stjs.generator.variable.ParameterVariable;
+import org.stjs.generator.variable.Variable;
+import org.stjs.generator.writer.JavascriptKeywords;
+
+/**
+ * This class gives short names to the local variables and to the parameters. The types, the methods and the fields keep
+ * their names, so the generated code can still be called from the other files.<br>
+ * The names are given in order, for each function. A function defined inside another function (i.e. a method of an
+ * anonymous class) continues the sequence of the function containing it, so it cannot hide the variables it uses from
+ * the outer function. The names used in the file for anything else (global variables and methods, namespaces) are
+ * never given.
+ * @author acraciun
+ */
+public class MinifyingNameProvider extends DefaultNameProvider {
+	private static final String FIRST_CHARS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+	private static final String NEXT_CHARS = FIRST_CHARS + "0123456789";
+
+	private static final Set<String> JAVASCRIPT_GLOBALS = new HashSet<String>(Arrays.asList("arguments", "eval",
+			"undefined", "null", "true", "false", "NaN", "Infinity", "stjs", "window"));
+
+	private final Set<String> reservedNames;
+
+	private final Map<Variable, String> variableNames = new IdentityHashMap<Variable, String>();
+	private final Map<Scope, int[]> nextNameIndexes = new HashMap<Scope, int[]>();
+
+	/**
+	 * @param reservedNames
+	 *            the names used in the file that are not renamed
+	 */
+	public MinifyingNameProvider(Collection<String> reservedNames) {
+		this.reservedNames = new HashSet<String>(reservedNames);
+		this.reservedNames.addAll(JAVASCRIPT_GLOBALS);
+	}
+
+	@Override
+	public String getVariableName(VariableWithScope var) {
+		Variable variable = var.getVariable();
+		if (!(variable instanceof LocalVariable || variable instanceof ParameterVariable)
+				|| GeneratorConstants.ARGUMENTS_PARAMETER.equals(variable.getName())) {
+			return super.getVariableName(var);
+		}
+		String name = variableNames.get(variable);
+		if (name == null) {
+			int[] nextIndex = getNextNameIndex(functionScope(var.getScope()));
+			do {
+				name = shortName(nextIndex[0]++);
+			} while (reservedNames.contains(name) || JavascriptKeywords.isReservedWord(name));
+			variableNames.put(variable, name);
+		}
+		return name;
+	}
+
+	private int[] getNextNameIndex(Scope function) {
+		int[] nextIndex = nextNameIndexes.get(function);
+		if (nextIndex == null) {
+			Scope outerFunction = outerFunctionScope(function);
+			nextIndex = new int[] { outerFunction == null ? 0 : getNextNameIndex(outerFunction)[0] };
+			nextNameIndexes.put(function, nextIndex);
+		}
+		return nextIndex;
+	}
+
+	/**
+	 * @return the top scope of the method (or initializer block) containing the given scope
+	 */
+	private static Scope functionScope(Scope scope) {
+		Scope s = scope;
+		while (s.getParent() instanceof BasicScope) {
+			s = s.getParent();
+		}
+		return s;
+	}
+
+	/**
+	 * @return the scope of the function containing the class where the given function is defined, or null for the
+	 *         functions of the top-level classes
+	 */
+	private static Scope outerFunctionScope(Scope function) {
+		Scope classScope = function.getParent();
+		if (classScope == null || !(classScope.getParent() instanceof BasicScope)) {
+			return null;
+		}
+		return functionScope(classScope.getParent());
+	}
+
+	static String shortName(int index) {
+		StringBuilder name = new StringBuilder();
+		name.append(FIRST_CHARS.charAt(index % FIRST_CHARS.length()));
+		for (int i = index / FIRST_CHARS.length(); i > 0; i = (i - 1) / NEXT_CHARS.length()) {
+			name.append(NEXT_CHARS.charAt((i - 1) % NEXT_CHARS.length()));
+		}
+		return name.toString();
+	}
+}
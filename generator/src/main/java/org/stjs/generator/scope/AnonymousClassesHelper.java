@@ -22,20 +22,15 @@ import japa.parser.ast.body.InitializerDeclaration;
 import japa.parser.ast.body.MethodDeclaration;
 import japa.parser.ast.expr.ObjectCreationExpr;
 
+import java.io.IOException;
 import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.regex.Pattern;
 
-import org.apache.bcel.Repository;
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.classfile.Method;
-import org.apache.bcel.generic.ClassGen;
-import org.apache.bcel.generic.InstructionHandle;
-import org.apache.bcel.generic.MethodGen;
-import org.apache.bcel.generic.NEW;
 import org.stjs.generator.JavascriptClassGenerationException;
 import org.stjs.generator.ast.ASTNodeData;
+import org.stjs.generator.type.AnonymousClassIndex;
+import org.stjs.generator.type.TypeWrappers;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
@@ -52,51 +47,24 @@ import com.google.common.collect.Multimap;
 public class AnonymousClassesHelper {
 	private final static String STATIC_INIT_METHOD = "<clinit>";
 	private final static String CONSTRUCTOR_METHOD = "<init>";
-	private final static Pattern ANONYMOUS_CLASS_PATTERN = Pattern.compile("\\$\\d+$");
 	private final Multimap<String, String> classesByMethod = ArrayListMultimap.create();
 
 	public AnonymousClassesHelper(Class<?> ownerClass) {
-		JavaClass clazz;
+		AnonymousClassIndex index;
 		try {
-			// XXX: should put this somewhere else
-			Repository.clearCache();
-			clazz = Repository.lookupClass(ownerClass);
+			// the index is kept with the wrapper of the class, so the class file is read only once
+			index = TypeWrappers.wrap(ownerClass).getAnonymousClassIndex();
 		}
-		catch (ClassNotFoundException e) {
-			throw new JavascriptClassGenerationException(ownerClass.getName(),
-					"Cannot load BCEL wrapper for the class:" + ownerClass, e);
+		catch (IOException e) {
+			throw new JavascriptClassGenerationException(ownerClass.getName(), "Cannot read the bytecode of the class:"
+					+ ownerClass, e);
 		}
-		ClassGen g = new ClassGen(clazz);
-		for (Method m : clazz.getMethods()) {
-			addAnonymousClassInMethod(m, g);
+		// the shared index cannot be modified, the classes already found are removed from this copy
+		for (String methodName : index.getMethodNames()) {
+			classesByMethod.putAll(methodName, index.getAnonymousClasses(methodName));
 		}
 	}
 
-	@SuppressWarnings("unchecked")
-	private void addAnonymousClassInMethod(Method m, ClassGen g) {
-		MethodGen mg = new MethodGen(m, g.getClassName(), g.getConstantPool());
-		if (mg.getInstructionList() == null) {
-			return;
-		}
-
-		String methodName = mg.getName();
-		Iterator<InstructionHandle> it = mg.getInstructionList().iterator();
-		while (it.hasNext()) {
-			InstructionHandle h = it.next();
-			if (h.getInstruction() instanceof NEW) {
-				NEW newInstr = (NEW) h.getInstruction();
-				String typeName = newInstr.getType(g.getConstantPool()).toString();
-				if (isAnonymousClass(typeName)) {
-					classesByMethod.put(methodName, typeName);
-				}
-			}
-		}
-	}
-
-	private boolean isAnonymousClass(String typeName) {
-		return ANONYMOUS_CLASS_PATTERN.matcher(typeName).find();
-	}
-
 	private String getInitMethodName(boolean isStatic) {
 		return isStatic ? STATIC_INIT_METHOD : CONSTRUCTOR_METHOD;
 	}
@@ -391,7 +391,7 @@ public class ScopeBuilder extends ForEachNodeVisitor<Scope> {
 				PrimitiveType primitiveType = (PrimitiveType) type;
 				resolvedType = PrimitiveTypes.primitiveReflectionType(primitiveType);
 			} else if (type instanceof VoidType) {
-				resolvedType = new ClassWrapper(void.class);
+				resolvedType = TypeWrappers.wrap(void.class);
 			} else if (type instanceof ClassOrInterfaceType) {
 				ClassOrInterfaceType classType = (ClassOrInterfaceType) type;
 				resolvedType = resolveRegularType(scope, classType);
@@ -9,6 +9,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.stjs.generator.STJSClass;
+import org.stjs.generator.STJSManifest;
 import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.utils.PreConditions;
 
@@ -50,7 +51,11 @@ public class JavascriptToJava {
 		}
 	}
 
-	private String getClassName(String propertiesFile) {
+	private String getClassName(String javascriptFile, String propertiesFile) {
+		String className = STJSManifest.forClassLoader(classLoader).getClassNameForJavascriptFile(javascriptFile);
+		if (className != null) {
+			return className;
+		}
 		InputStream in = null;
 		try {
 			in = classLoader.getResourceAsStream(propertiesFile.substring(1));
@@ -104,7 +109,7 @@ public class JavascriptToJava {
 			String stjsPropertyFile = cleanJsPath.replaceAll("\\.js$", ".stjs");
 
 			// class name
-			String className = getClassName(stjsPropertyFile);
+			String className = getClassName(cleanJsPath, stjsPropertyFile);
 			if (className == null) {
 				className = "<Unknown class>";
 				sourceFile = jsSourceFile;
@@ -0,0 +1,297 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.type;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.google.common.io.Closeables;
+
+/**
+ * This index gives, for each method of a class, the anonymous classes it instantiates (in the order of the bytecode).
+ * It's built with a single pass on the class file, that only decodes the constant pool and the instruction lengths to
+ * find the NEW instructions, and it's kept by the {@link ClassWrapper} of the class, so each class file is read once.
+ * @author acraciun
+ */
+@Immutable
+public final class AnonymousClassIndex {
+	private static final Pattern ANONYMOUS_CLASS_PATTERN = Pattern.compile("\\$\\d+$");
+
+	private static final String CODE_ATTRIBUTE = "Code";
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final int OP_NEW = 0xbb;
+	private static final int OP_TABLESWITCH = 0xaa;
+	private static final int OP_LOOKUPSWITCH = 0xab;
+	private static final int OP_WIDE = 0xc4;
+	private static final int OP_IINC = 0x84;
+
+	/**
+	 * the length of each instruction (opcode included), 0 for the instructions with a variable length
+	 */
+	private static final int[] INSTRUCTION_LENGTHS = new int[256];
+
+	static {
+		Arrays.fill(INSTRUCTION_LENGTHS, 1);
+		setLength(2, 0x10, 0x12); // bipush, ldc
+		setLength(3, 0x11, 0x13, 0x14); // sipush, ldc_w, ldc2_w
+		setLengthRange(2, 0x15, 0x19); // xload
+		setLengthRange(2, 0x36, 0x3a); // xstore
+		setLength(3, OP_IINC);
+		setLengthRange(3, 0x99, 0xa8); // ifxx, goto, jsr
+		setLength(2, 0xa9); // ret
+		setLength(0, OP_TABLESWITCH, OP_LOOKUPSWITCH, OP_WIDE);
+		setLengthRange(3, 0xb2, 0xb8); // field access and invocations
+		setLength(5, 0xb9, 0xba); // invokeinterface, invokedynamic
+		setLength(3, OP_NEW, 0xbd, 0xc0, 0xc1); // new, anewarray, checkcast, instanceof
+		setLength(2, 0xbc); // newarray
+		setLength(4, 0xc5); // multianewarray
+		setLength(3, 0xc6, 0xc7); // ifnull, ifnonnull
+		setLength(5, 0xc8, 0xc9); // goto_w, jsr_w
+	}
+
+	private final Map<String, List<String>> classesByMethod;
+
+	private AnonymousClassIndex(Map<String, List<String>> classesByMethod) {
+		this.classesByMethod = classesByMethod;
+	}
+
+	private static void setLength(int length, int... opcodes) {
+		for (int opcode : opcodes) {
+			INSTRUCTION_LENGTHS[opcode] = length;
+		}
+	}
+
+	private static void setLengthRange(int length, int firstOpcode, int lastOpcode) {
+		for (int opcode = firstOpcode; opcode <= lastOpcode; ++opcode) {
+			INSTRUCTION_LENGTHS[opcode] = length;
+		}
+	}
+
+	/**
+	 * @return the anonymous classes instantiated by the methods (or constructors, or static initializer) with the given
+	 *         name, in the order they appear in the bytecode
+	 */
+	public List<String> getAnonymousClasses(String methodName) {
+		List<String> classes = classesByMethod.get(methodName);
+		return classes == null ? Collections.<String> emptyList() : classes;
+	}
+
+	/**
+	 * @return the names of the methods instantiating at least one anonymous class
+	 */
+	public Collection<String> getMethodNames() {
+		return classesByMethod.keySet();
+	}
+
+	static AnonymousClassIndex build(Class<?> clazz) throws IOException {
+		InputStream in = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class");
+		if (in == null) {
+			throw new IOException("Cannot find the class file of " + clazz.getName());
+		}
+		try {
+			return read(new DataInputStream(new BufferedInputStream(in)));
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	static AnonymousClassIndex read(DataInputStream in) throws IOException {
+		// magic, minor and major version
+		in.readInt();
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+
+		int constantCount = in.readUnsignedShort();
+		String[] utf8s = new String[constantCount];
+		int[] classNameIndexes = new int[constantCount];
+		for (int i = 1; i < constantCount; ++i) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+			case CONSTANT_UTF8:
+				utf8s[i] = in.readUTF();
+				break;
+			case CONSTANT_CLASS:
+				classNameIndexes[i] = in.readUnsignedShort();
+				break;
+			case CONSTANT_STRING:
+			case CONSTANT_METHOD_TYPE:
+			case CONSTANT_MODULE:
+			case CONSTANT_PACKAGE:
+				skip(in, 2);
+				break;
+			case CONSTANT_METHOD_HANDLE:
+				skip(in, 3);
+				break;
+			case CONSTANT_INTEGER:
+			case CONSTANT_FLOAT:
+			case CONSTANT_FIELDREF:
+			case CONSTANT_METHODREF:
+			case CONSTANT_INTERFACE_METHODREF:
+			case CONSTANT_NAME_AND_TYPE:
+			case CONSTANT_DYNAMIC:
+			case CONSTANT_INVOKE_DYNAMIC:
+				skip(in, 4);
+				break;
+			case CONSTANT_LONG:
+			case CONSTANT_DOUBLE:
+				skip(in, 8);
+				// these constants take two entries
+				++i;
+				break;
+			default:
+				throw new IOException("Unknown constant pool tag:" + tag);
+			}
+		}
+
+		// access flags, this class, super class
+		skip(in, 6);
+		skip(in, 2 * in.readUnsignedShort());
+
+		int fieldCount = in.readUnsignedShort();
+		for (int i = 0; i < fieldCount; ++i) {
+			skip(in, 6);
+			skipAttributes(in);
+		}
+
+		Map<String, List<String>> classesByMethod = new LinkedHashMap<String, List<String>>();
+		int methodCount = in.readUnsignedShort();
+		for (int i = 0; i < methodCount; ++i) {
+			in.readUnsignedShort();
+			String methodName = utf8s[in.readUnsignedShort()];
+			in.readUnsignedShort();
+			int attributeCount = in.readUnsignedShort();
+			for (int a = 0; a < attributeCount; ++a) {
+				String attributeName = utf8s[in.readUnsignedShort()];
+				int length = in.readInt();
+				if (!CODE_ATTRIBUTE.equals(attributeName)) {
+					skip(in, length);
+					continue;
+				}
+				// max stack, max locals
+				skip(in, 4);
+				byte[] code = new byte[in.readInt()];
+				in.readFully(code);
+				skip(in, length - 8 - code.length);
+				addAnonymousClasses(code, methodName, utf8s, classNameIndexes, classesByMethod);
+			}
+		}
+
+		for (Map.Entry<String, List<String>> entry : classesByMethod.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		return new AnonymousClassIndex(Collections.unmodifiableMap(classesByMethod));
+	}
+
+	private static void addAnonymousClasses(byte[] code, String methodName, String[] utf8s, int[] classNameIndexes,
+			Map<String, List<String>> classesByMethod) throws IOException {
+		int pc = 0;
+		while (pc < code.length) {
+			int opcode = code[pc] & 0xff;
+			if (opcode == OP_NEW) {
+				String className = utf8s[classNameIndexes[u2(code, pc + 1)]].replace('/', '.');
+				if (ANONYMOUS_CLASS_PATTERN.matcher(className).find()) {
+					List<String> classes = classesByMethod.get(methodName);
+					if (classes == null) {
+						classes = new ArrayList<String>();
+						classesByMethod.put(methodName, classes);
+					}
+					classes.add(className);
+				}
+			}
+			pc += instructionLength(code, pc, opcode);
+		}
+	}
+
+	private static int instructionLength(byte[] code, int pc, int opcode) throws IOException {
+		int length = INSTRUCTION_LENGTHS[opcode];
+		if (length > 0) {
+			return length;
+		}
+		if (opcode == OP_WIDE) {
+			return (code[pc + 1] & 0xff) == OP_IINC ? 6 : 4;
+		}
+		// the switches are aligned on 4 bytes
+		int operands = pc + 1 + (3 - pc % 4);
+		if (opcode == OP_TABLESWITCH) {
+			int low = s4(code, operands + 4);
+			int high = s4(code, operands + 8);
+			return operands - pc + 12 + 4 * (high - low + 1);
+		}
+		if (opcode == OP_LOOKUPSWITCH) {
+			int pairs = s4(code, operands + 4);
+			return operands - pc + 8 + 8 * pairs;
+		}
+		throw new IOException("Unknown instruction:" + opcode);
+	}
+
+	private static int u2(byte[] code, int pos) {
+		return ((code[pos] & 0xff) << 8) | (code[pos + 1] & 0xff);
+	}
+
+	private static int s4(byte[] code, int pos) {
+		return (u2(code, pos) << 16) | u2(code, pos + 2);
+	}
+
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributeCount = in.readUnsignedShort();
+		for (int i = 0; i < attributeCount; ++i) {
+			in.readUnsignedShort();
+			skip(in, in.readInt());
+		}
+	}
+
+	private static void skip(DataInputStream in, int count) throws IOException {
+		int remaining = count;
+		while (remaining > 0) {
+			int skipped = in.skipBytes(remaining);
+			if (skipped <= 0) {
+				throw new IOException("Unexpected end of class file");
+			}
+			remaining -= skipped;
+		}
+	}
+}
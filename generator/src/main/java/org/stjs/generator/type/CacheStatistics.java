@@ -0,0 +1,56 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.type;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The counters of one of the generator's caches, like the {@link TypeWrappers} cache or the {@link MethodSelector}
+ * cache.
+ * @author acraciun
+ */
+@Immutable
+public final class CacheStatistics {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+
+	public CacheStatistics(long hits, long misses, long evictions) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of times (a part of) the cache was cleared, either explicitly or by the garbage collector
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.type;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import com.google.common.io.Closeables;
+
+/**
+ * This class reads the values of the constant fields of a class (the final static fields of a primitive type or
+ * String, initialized with a compile-time constant expression) from the ConstantValue attributes of its class file.
+ * The values are the ones computed by the Java compiler, without initializing the class.
+ * @author acraciun
+ */
+final class ClassFileConstants {
+	private static final Logger LOG = Logger.getLogger(ClassFileConstants.class.getName());
+
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int ACC_STATIC = 0x0008;
+	private static final String CONSTANT_VALUE_ATTRIBUTE = "ConstantValue";
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELD_REF = 9;
+	private static final int CONSTANT_METHOD_REF = 10;
+	private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final Map<Class<?>, Map<String, Object>> CONSTANTS =
+			new WeakHashMap<Class<?>, Map<String, Object>>();
+
+	private ClassFileConstants() {
+		//
+	}
+
+	/**
+	 * @return the value of the given static field of the class (or of one of its super types). It's a String, a
+	 *         Boolean, a Character, a Long (for all the integer types), a Float or a Double. If the field is not a
+	 *         constant, null is returned.
+	 */
+	public static Object getConstantValue(Class<?> clazz, String fieldName) {
+		Class<?> declaringClass = getDeclaringClass(clazz, fieldName);
+		if (declaringClass == null) {
+			return null;
+		}
+		return getConstants(declaringClass).get(fieldName);
+	}
+
+	/**
+	 * @return the class declaring the field, looked up in the same order as the Java compiler: the class itself, its
+	 *         interfaces and then its super class
+	 */
+	private static Class<?> getDeclaringClass(Class<?> clazz, String fieldName) {
+		for (Field field : clazz.getDeclaredFields()) {
+			if (field.getName().equals(fieldName)) {
+				return clazz;
+			}
+		}
+		for (Class<?> iface : clazz.getInterfaces()) {
+			Class<?> declaringClass = getDeclaringClass(iface, fieldName);
+			if (declaringClass != null) {
+				return declaringClass;
+			}
+		}
+		return clazz.getSuperclass() == null ? null : getDeclaringClass(clazz.getSuperclass(), fieldName);
+	}
+
+	private static Map<String, Object> getConstants(Class<?> clazz) {
+		synchronized (CONSTANTS) {
+			Map<String, Object> constants = CONSTANTS.get(clazz);
+			if (constants == null) {
+				constants = readConstants(clazz);
+				CONSTANTS.put(clazz, constants);
+			}
+			return constants;
+		}
+	}
+
+	private static Map<String, Object> readConstants(Class<?> clazz) {
+		ClassLoader classLoader = clazz.getClassLoader() == null ? ClassLoader.getSystemClassLoader() : clazz
+				.getClassLoader();
+		InputStream classFile = classLoader.getResourceAsStream(clazz.getName().replace('.', '/') + ".class");
+		if (classFile == null) {
+			return Collections.emptyMap();
+		}
+		try {
+			return readConstants(new DataInputStream(new BufferedInputStream(classFile)));
+		}
+		catch (IOException e) {
+			LOG.warning("Cannot read the constants of the class " + clazz.getName() + ":" + e);
+			return Collections.emptyMap();
+		}
+		finally {
+			Closeables.closeQuietly(classFile);
+		}
+	}
+
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static Map<String, Object> readConstants(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		// minor and major versions
+		in.readUnsignedShort();
+		in.readUnsignedShort();
+
+		int poolSize = in.readUnsignedShort();
+		Object[] pool = new Object[poolSize];
+		int[] stringIndexes = new int[poolSize];
+		for (int i = 1; i < poolSize; ++i) {
+			int tag = in.readUnsignedByte();
+			switch (tag) {
+				case CONSTANT_UTF8:
+					pool[i] = in.readUTF();
+					break;
+				case CONSTANT_INTEGER:
+					pool[i] = in.readInt();
+					break;
+				case CONSTANT_FLOAT:
+					pool[i] = in.readFloat();
+					break;
+				case CONSTANT_LONG:
+					pool[i] = in.readLong();
+					// the long values take two entries
+					++i;
+					break;
+				case CONSTANT_DOUBLE:
+					pool[i] = in.readDouble();
+					++i;
+					break;
+				case CONSTANT_STRING:
+					stringIndexes[i] = in.readUnsignedShort();
+					break;
+				case CONSTANT_CLASS:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					skip(in, 2);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					skip(in, 3);
+					break;
+				case CONSTANT_FIELD_REF:
+				case CONSTANT_METHOD_REF:
+				case CONSTANT_INTERFACE_METHOD_REF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					skip(in, 4);
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag:" + tag);
+			}
+		}
+		for (int i = 1; i < poolSize; ++i) {
+			if (stringIndexes[i] != 0) {
+				pool[i] = pool[stringIndexes[i]];
+			}
+		}
+
+		// access flags, this class and super class
+		skip(in, 6);
+		skip(in, 2 * in.readUnsignedShort());
+
+		Map<String, Object> constants = new HashMap<String, Object>();
+		int fieldCount = in.readUnsignedShort();
+		for (int f = 0; f < fieldCount; ++f) {
+			int access = in.readUnsignedShort();
+			String name = (String) pool[in.readUnsignedShort()];
+			String descriptor = (String) pool[in.readUnsignedShort()];
+			int attributeCount = in.readUnsignedShort();
+			for (int a = 0; a < attributeCount; ++a) {
+				String attributeName = (String) pool[in.readUnsignedShort()];
+				int length = in.readInt();
+				if (CONSTANT_VALUE_ATTRIBUTE.equals(attributeName) && (access & ACC_STATIC) != 0) {
+					Object value = toFieldType(pool[in.readUnsignedShort()], descriptor);
+					if (value != null) {
+						constants.put(name, value);
+					}
+				} else {
+					skip(in, length);
+				}
+			}
+		}
+		return constants;
+	}
+
+	/**
+	 * the class file keeps the values of the boolean, char, byte and short fields as integers
+	 */
+	private static Object toFieldType(Object value, String descriptor) {
+		switch (descriptor.charAt(0)) {
+			case 'Z':
+				return ((Integer) value).intValue() != 0;
+			case 'C':
+				return (char) ((Integer) value).intValue();
+			case 'B':
+			case 'S':
+			case 'I':
+			case 'J':
+				return ((Number) value).longValue();
+			case 'F':
+			case 'D':
+				return value;
+			default:
+				return value instanceof String ? value : null;
+		}
+	}
+
+	private static void skip(DataInputStream in, int count) throws IOException {
+		for (int skipped = 0; skipped < count;) {
+			int n = in.skipBytes(count - skipped);
+			if (n <= 0) {
+				in.readByte();
+				n = 1;
+			}
+			skipped += n;
+		}
+	}
+}
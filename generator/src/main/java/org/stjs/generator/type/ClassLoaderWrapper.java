@@ -16,26 +16,33 @@
 package org.stjs.generator.type;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.stjs.generator.utils.ClassUtils;
 import org.stjs.generator.utils.Option;
+import org.stjs.generator.utils.PrefixTrie;
 
 import com.google.common.collect.ImmutableList;
 
 public class ClassLoaderWrapper {
 
 	private static final String ANONYMOUS_CLASS_NAME = "(\\$\\d+)+$";
-	private final ClassLoader classLoader;
-	private final Set<String> resolvedClasses = new LinkedHashSet<String>();
-	private final Collection<String> allowedPackages;
+	private final ClassLookupCache lookupCache;
+	private final Set<String> resolvedClasses = Collections.synchronizedSet(new LinkedHashSet<String>());
+	private final PrefixTrie allowedPackages;
 	private final Collection<String> allowedJavaLangClasses;
 
 	public ClassLoaderWrapper(ClassLoader classLoader, Collection<String> allowedPackages,
 			Collection<String> allowedJavaLangClasses) {
-		this.classLoader = classLoader;
+		this(classLoader, new PrefixTrie(allowedPackages), allowedJavaLangClasses);
+	}
+
+	public ClassLoaderWrapper(ClassLoader classLoader, PrefixTrie allowedPackages,
+			Collection<String> allowedJavaLangClasses) {
+		this.lookupCache = ClassLookupCache.forClassLoader(classLoader);
 		this.allowedJavaLangClasses = allowedJavaLangClasses;
 		this.allowedPackages = allowedPackages;
 	}
@@ -48,7 +55,7 @@ public class ClassLoaderWrapper {
 		if (clazz.getSimpleName().isEmpty()) {
 			// anonymous class
 			String cleanedClassName = clazz.getName().replaceAll(ANONYMOUS_CLASS_NAME, "");
-			return classLoader.loadClass(cleanedClassName);
+			return lookupCache.loadClass(cleanedClassName).getOrThrow(new ClassNotFoundException(cleanedClassName));
 		}
 		if (clazz.getDeclaringClass() == null) {
 			return clazz;
@@ -58,10 +65,14 @@ public class ClassLoaderWrapper {
 
 	public Option<ClassWrapper> loadClass(String name) {
 		try {
-			Class<?> clazz = classLoader.loadClass(name);
+			Option<Class<?>> found = lookupCache.loadClass(name);
+			if (found.isEmpty()) {
+				return Option.none();
+			}
+			Class<?> clazz = found.getOrNull();
 			Class<?> topDeclaringClass = getTopDeclaringClass(clazz);
 			checkAndAddResolvedClass(topDeclaringClass);
-			return Option.<ClassWrapper> some(new ClassWrapper(clazz));
+			return Option.<ClassWrapper> some(TypeWrappers.wrap(clazz));
 		}
 		catch (ClassNotFoundException e) {
 			return Option.none();
@@ -76,15 +87,7 @@ public class ClassLoaderWrapper {
 
 	private void checkPackageAllowed(Class<?> clazz) {
 		if (!ClassUtils.isBridge(clazz)) {
-			boolean found = false;
-			for (String packageName : allowedPackages) {
-				if (clazz.getName().startsWith(packageName)) {
-					found = true;
-					break;
-				}
-			}
-
-			if (!found && !isImportedStjsClass(clazz)) {
+			if (!allowedPackages.matchesPrefixOf(clazz.getName()) && !isImportedStjsClass(clazz)) {
 				throw typeNotAllowedException(clazz);
 			}
 		}
@@ -110,8 +113,7 @@ public class ClassLoaderWrapper {
 	}
 
 	private boolean isImportedStjsClass(Class<?> clazz) {
-		String stjsPropertiesName = ClassUtils.getPropertiesFileName(clazz.getName());
-		return classLoader.getResource(stjsPropertiesName) != null;
+		return lookupCache.hasStjsProperties(clazz.getName());
 	}
 
 	public Option<ClassWrapper> loadClassOrInnerClass(String aClassLoaderCompatibleName) {
@@ -136,7 +138,9 @@ public class ClassLoaderWrapper {
 	}
 
 	public List<String> getResolvedClasses() {
-		return ImmutableList.copyOf(resolvedClasses);
+		synchronized (resolvedClasses) {
+			return ImmutableList.copyOf(resolvedClasses);
+		}
 	}
 
 }
\ No newline at end of file
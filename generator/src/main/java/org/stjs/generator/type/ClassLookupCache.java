@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.type;
+
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.stjs.generator.STJSManifest;
+import org.stjs.generator.utils.ClassUtils;
+import org.stjs.generator.utils.Option;
+
+/**
+ * This class remembers the lookups made in a class loader: the class found (or not) for a given name and whether a
+ * class comes with its STJS properties file. The misses are kept as well, so the generator does not have to ask again
+ * the class loader (and fill the stack trace of a ClassNotFoundException) for the same name when it tries all the
+ * imports of each compilation unit. As for {@link TypeWrappers}, there is a softly referenced cache for each class
+ * loader. It's cleared together with the type wrappers of the same class loader.
+ * @author acraciun
+ */
+public final class ClassLookupCache {
+	private static final Map<ClassLoader, SoftReference<ClassLookupCache>> CACHES =
+			new WeakHashMap<ClassLoader, SoftReference<ClassLookupCache>>();
+
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+	private static final AtomicLong EVICTIONS = new AtomicLong();
+
+	private final ClassLoader classLoader;
+	private final ConcurrentMap<String, Option<Class<?>>> classes = new ConcurrentHashMap<String, Option<Class<?>>>();
+	private final ConcurrentMap<String, Boolean> stjsProperties = new ConcurrentHashMap<String, Boolean>();
+
+	private ClassLookupCache(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	static ClassLookupCache forClassLoader(ClassLoader classLoader) {
+		synchronized (CACHES) {
+			SoftReference<ClassLookupCache> ref = CACHES.get(classLoader);
+			ClassLookupCache cache = ref == null ? null : ref.get();
+			if (cache == null) {
+				if (ref != null) {
+					// reclaimed by the garbage collector
+					EVICTIONS.incrementAndGet();
+				}
+				cache = new ClassLookupCache(classLoader);
+				CACHES.put(classLoader, new SoftReference<ClassLookupCache>(cache));
+			}
+			return cache;
+		}
+	}
+
+	static void clear() {
+		synchronized (CACHES) {
+			EVICTIONS.addAndGet(CACHES.size());
+			CACHES.clear();
+		}
+	}
+
+	static void clear(ClassLoader classLoader) {
+		synchronized (CACHES) {
+			if (CACHES.remove(classLoader) != null) {
+				EVICTIONS.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return the hit, miss and eviction counters of the lookups since the JVM started
+	 */
+	public static CacheStatistics getStatistics() {
+		return new CacheStatistics(HITS.get(), MISSES.get(), EVICTIONS.get());
+	}
+
+	/**
+	 * @return the class with the given name or none if the class loader cannot find it
+	 */
+	public Option<Class<?>> loadClass(String name) {
+		Option<Class<?>> clazz = classes.get(name);
+		if (clazz != null) {
+			HITS.incrementAndGet();
+			return clazz;
+		}
+		MISSES.incrementAndGet();
+		try {
+			clazz = Option.<Class<?>> some(classLoader.loadClass(name));
+		}
+		catch (ClassNotFoundException e) {
+			clazz = Option.none();
+		}
+		classes.putIfAbsent(name, clazz);
+		return clazz;
+	}
+
+	/**
+	 * @return true if the class loader has the STJS properties file of the given class (or the class is in one of its
+	 *         STJS manifests), i.e. the class was generated
+	 */
+	public boolean hasStjsProperties(String className) {
+		Boolean found = stjsProperties.get(className);
+		if (found != null) {
+			HITS.incrementAndGet();
+			return found;
+		}
+		MISSES.incrementAndGet();
+		STJSManifest.Entry entry = STJSManifest.forClassLoader(classLoader).getEntry(className);
+		found = entry != null && !entry.isBridge()
+				|| classLoader.getResource(ClassUtils.getPropertiesFileName(className)) != null;
+		stjsProperties.putIfAbsent(className, found);
+		return found;
+	}
+}
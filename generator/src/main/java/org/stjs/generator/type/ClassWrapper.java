@@ -20,6 +20,7 @@ import static com.google.common.collect.Iterables.transform;
 import static java.lang.reflect.Modifier.PRIVATE;
 import static java.lang.reflect.Modifier.STATIC;
 
+import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.GenericArrayType;
@@ -34,6 +35,8 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -50,7 +53,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
@@ -62,7 +64,7 @@ public class ClassWrapper implements TypeWrapper {
 	private static final Function<Class<?>, ClassWrapper> WRAP_CLASS = new Function<Class<?>, ClassWrapper>() {
 		@Override
 		public ClassWrapper apply(Class<?> clazz) {
-			return new ClassWrapper(clazz);
+			return TypeWrappers.wrap(clazz);
 		}
 	};
 
@@ -71,8 +73,20 @@ public class ClassWrapper implements TypeWrapper {
 	private Map<String, FieldWrapper> fields;
 	private Map<String, TypeWrapper> types;
 	private Multimap<String, MethodWrapper> methods;
+	private Map<String, Class<?>> declaredClassesBySimpleName;
+	private AnonymousClassIndex anonymousClassIndex;
 
-	public ClassWrapper(@Nonnull
+	/**
+	 * the methods already resolved by {@link #findMethod(String, TypeWrapper...)}, for each method name
+	 */
+	private final ConcurrentMap<String, ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>>> resolvedMethods =
+			new ConcurrentHashMap<String, ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>>>();
+
+	/**
+	 * the wrappers are shared, so the members of a class are indexed only once. Use {@link TypeWrappers#wrap(Class)}
+	 * to get the wrapper of a class.
+	 */
+	ClassWrapper(@Nonnull
 	Class<?> clazz) {
 		Preconditions.checkNotNull(clazz);
 		this.clazz = clazz;
@@ -186,7 +200,7 @@ public class ClassWrapper implements TypeWrapper {
 				+ " of class:" + type.getClass());
 	}
 
-	private void prepareFieldsMethodsAndTypes() {
+	private synchronized void prepareFieldsMethodsAndTypes() {
 		if (fields != null) {
 			return;
 		}
@@ -299,7 +313,7 @@ public class ClassWrapper implements TypeWrapper {
 
 	public Option<ClassWrapper> getDeclaringClass() {
 		Class<?> declaringClass = clazz.getDeclaringClass();
-		return declaringClass == null ? Option.<ClassWrapper> none() : Option.some(new ClassWrapper(declaringClass));
+		return declaringClass == null ? Option.<ClassWrapper> none() : Option.some(TypeWrappers.wrap(declaringClass));
 	}
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
@@ -327,26 +341,29 @@ public class ClassWrapper implements TypeWrapper {
 	}
 
 	public List<MethodWrapper> findMethods(final String name) {
-		return ImmutableList.copyOf(Iterables.filter(getDeclaredMethods(), new Predicate<MethodWrapper>() {
-			@Override
-			public boolean apply(MethodWrapper method) {
-				return method.getName().equals(name);
-			}
-		}));
+		prepareFieldsMethodsAndTypes();
+		return ImmutableList.copyOf(methods.get(name));
 	}
 
-	public <T> Option<ClassWrapper> getDeclaredClass(String name) {
-		try {
-			for (Class<?> innerClass : clazz.getDeclaredClasses()) {
-				if (innerClass.getSimpleName().equals(name)) {
-					return Option.some(new ClassWrapper(innerClass));
+	private synchronized Map<String, Class<?>> getDeclaredClassesBySimpleName() {
+		if (declaredClassesBySimpleName == null) {
+			Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+			try {
+				for (Class<?> innerClass : clazz.getDeclaredClasses()) {
+					classes.put(innerClass.getSimpleName(), innerClass);
 				}
 			}
+			catch (SecurityException e) {
+				throw new JavascriptClassGenerationException(clazz.getName(), e);
+			}
+			declaredClassesBySimpleName = classes;
 		}
-		catch (SecurityException e) {
-			throw new JavascriptClassGenerationException(name, e);
-		}
-		return Option.none();
+		return declaredClassesBySimpleName;
+	}
+
+	public <T> Option<ClassWrapper> getDeclaredClass(String name) {
+		Class<?> innerClass = getDeclaredClassesBySimpleName().get(name);
+		return innerClass == null ? Option.<ClassWrapper> none() : Option.some(TypeWrappers.wrap(innerClass));
 	}
 
 	@Override
@@ -357,7 +374,14 @@ public class ClassWrapper implements TypeWrapper {
 			return Option.none();
 		}
 
-		MethodWrapper w = MethodSelector.resolveMethod(wrappers, paramTypes);
+		MethodWrapper w;
+		if (TypeWrappers.isVisibleFrom(clazz.getClassLoader(), paramTypes)) {
+			w = MethodSelector.resolveMethod(getResolvedMethods(name), wrappers, paramTypes);
+		} else {
+			// the cache cannot reference classes of a more specific class loader (e.g. a JDK class called with a
+			// project's class as argument)
+			w = MethodSelector.resolveMethod(wrappers, paramTypes);
+		}
 		if (w != null) {
 			return Option.some(w);
 		}
@@ -365,6 +389,19 @@ public class ClassWrapper implements TypeWrapper {
 		return Option.none();
 	}
 
+	private ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>> getResolvedMethods(String name) {
+		ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>> cache = resolvedMethods.get(name);
+		if (cache == null) {
+			cache = new ConcurrentHashMap<List<TypeWrapper>, Option<MethodWrapper>>();
+			ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>> existing =
+					resolvedMethods.putIfAbsent(name, cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+
 	public List<MethodWrapper> getDeclaredMethods() {
 		prepareFieldsMethodsAndTypes();
 		return Lists.newArrayList(methods.values());
@@ -376,7 +413,7 @@ public class ClassWrapper implements TypeWrapper {
 
 	public Option<ClassWrapper> getSuperclass() {
 		Class<?> superClass = clazz.getSuperclass();
-		return superClass == null ? Option.<ClassWrapper> none() : Option.some(new ClassWrapper(superClass));
+		return superClass == null ? Option.<ClassWrapper> none() : Option.some(TypeWrappers.wrap(superClass));
 	}
 
 	@Override
@@ -388,6 +425,17 @@ public class ClassWrapper implements TypeWrapper {
 		return clazz;
 	}
 
+	/**
+	 * @return the anonymous classes instantiated by each method of this class. The class file is read only the first
+	 *         time.
+	 */
+	public synchronized AnonymousClassIndex getAnonymousClassIndex() throws IOException {
+		if (anonymousClassIndex == null) {
+			anonymousClassIndex = AnonymousClassIndex.build(clazz);
+		}
+		return anonymousClassIndex;
+	}
+
 	public List<FieldWrapper> getDeclaredNonPrivateStaticFields() {
 		return ImmutableList.copyOf(filter(getDeclaredFields(), new Predicate<FieldWrapper>() {
 			@Override
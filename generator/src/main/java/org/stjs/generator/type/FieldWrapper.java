@@ -15,6 +15,8 @@
  */
 package org.stjs.generator.type;
 
+import java.lang.reflect.Modifier;
+
 import org.stjs.generator.variable.Variable;
 
 /**
@@ -61,6 +63,18 @@ public class FieldWrapper implements Variable {
 		return declared;
 	}
 
+	/**
+	 * @return the value of the field if it's a constant (a final static field of a primitive type or String initialized
+	 *         with a compile-time constant expression), as computed by the Java compiler, or null otherwise. The
+	 *         integer values are returned as Long.
+	 */
+	public Object getConstantValue() {
+		if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers) || !(ownerType instanceof ClassWrapper)) {
+			return null;
+		}
+		return ClassFileConstants.getConstantValue(((ClassWrapper) ownerType).getClazz(), name);
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -2,14 +2,18 @@ package org.stjs.generator.type;
 
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.stjs.generator.utils.Lists;
+import org.stjs.generator.utils.Option;
 
 /**
  * This class tries to implement the algorithm to select the matching method given a list of parameter types. The
@@ -32,6 +36,9 @@ public final class MethodSelector {
 		}
 	};
 
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+
 	private MethodSelector() {
 		//
 	}
@@ -117,6 +124,31 @@ public final class MethodSelector {
 		return found.withReturnType(inferredType);
 	}
 
+	/**
+	 * same as {@link #resolveMethod(Collection, TypeWrapper...)}, but the result is kept in the given cache. As the key
+	 * of the cache is made only of the argument types, the cache must be used for the same candidates only.
+	 */
+	static MethodWrapper resolveMethod(ConcurrentMap<List<TypeWrapper>, Option<MethodWrapper>> cache,
+			Collection<MethodWrapper> candidates, TypeWrapper... argumentTypes) {
+		List<TypeWrapper> key = Arrays.asList(argumentTypes.clone());
+		Option<MethodWrapper> resolved = cache.get(key);
+		if (resolved != null) {
+			HITS.incrementAndGet();
+			return resolved.getOrNull();
+		}
+		MISSES.incrementAndGet();
+		MethodWrapper found = resolveMethod(candidates, argumentTypes);
+		cache.putIfAbsent(key, found == null ? Option.<MethodWrapper> none() : Option.some(found));
+		return found;
+	}
+
+	/**
+	 * @return the hit and miss counters of the cached method resolutions since the JVM started
+	 */
+	public static CacheStatistics getStatistics() {
+		return new CacheStatistics(HITS.get(), MISSES.get(), 0);
+	}
+
 	private static Map<String, TypeWrapper> resolveVariablesForParameterizedTypeWrapper(
 			ParameterizedTypeWrapper paramType, TypeWrapper argumentType) {
 		Map<String, TypeWrapper> inferredTypes = new HashMap<String, TypeWrapper>();
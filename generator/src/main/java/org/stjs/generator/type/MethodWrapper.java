@@ -80,6 +80,13 @@ public final class MethodWrapper {
 		return ownerType;
 	}
 
+	/**
+	 * @return the class declaring the method (the owner type may be a sub class inheriting it)
+	 */
+	public Class<?> getDeclaringClass() {
+		return method.getDeclaringClass();
+	}
+
 	public TypeVariableWrapper<Method>[] getTypeParameters() {
 		return Arrays.copyOf(typeParameters, typeParameters.length);
 	}
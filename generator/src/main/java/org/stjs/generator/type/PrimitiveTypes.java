@@ -71,7 +71,7 @@ public final class PrimitiveTypes {
 	public static ClassWrapper primitiveReflectionType(PrimitiveType type) {
 		Class<?> primitiveClass = PRIMITIVE_TYPES_BY_CODE.get(type.getType());
 		if (primitiveClass != null) {
-			return new ClassWrapper(primitiveClass);
+			return TypeWrappers.wrap(primitiveClass);
 		}
 
 		throw new STJSRuntimeException("Strange primitive type:" + type.getType());
@@ -15,25 +15,190 @@
  */
 package org.stjs.generator.type;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.GenericDeclaration;
+import java.lang.reflect.Member;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.stjs.generator.STJSManifest;
+
+/**
+ * This class builds and caches the wrappers of the reflection types. There is a cache for each class loader that loaded
+ * the wrapped types. The class loaders are weakly referenced and their caches are softly referenced (as the cached
+ * wrappers point back to the classes, and so to their class loader), so the classes of a project built in a long-lived
+ * JVM (Maven, IDE) can be garbage collected once their class loader is no longer used. The cache of a class loader is
+ * found without locking, as it's done for each wrapped type by all the generating threads; a lock is taken only to
+ * create a cache.
+ * @author acraciun
+ */
 public final class TypeWrappers {
 
-	private static final Map<Type, TypeWrapper> CACHE = new HashMap<Type, TypeWrapper>();
+	private static final ConcurrentMap<Object, SoftReference<ConcurrentMap<Type, TypeWrapper>>> CACHES =
+			new ConcurrentHashMap<Object, SoftReference<ConcurrentMap<Type, TypeWrapper>>>();
+
+	/**
+	 * the key of the types of the bootstrap class loader
+	 */
+	private static final Object BOOTSTRAP_CLASS_LOADER = new Object();
+
+	/**
+	 * the keys of the class loaders that were garbage collected, removed from {@link #CACHES} when a cache is created
+	 */
+	private static final ReferenceQueue<ClassLoader> COLLECTED_CLASS_LOADERS = new ReferenceQueue<ClassLoader>();
+
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+	private static final AtomicLong EVICTIONS = new AtomicLong();
 
 	private TypeWrappers() {
 		//
 	}
 
+	/**
+	 * removes all the cached wrappers (and the cached class lookups)
+	 */
 	public static void clearCache() {
-		CACHE.clear();
+		synchronized (CACHES) {
+			EVICTIONS.addAndGet(CACHES.size());
+			CACHES.clear();
+		}
+		ClassLookupCache.clear();
+	}
+
+	/**
+	 * removes the wrappers of the types loaded by the given class loader (and the class lookups made in it, and the
+	 * STJS manifests read from it)
+	 */
+	public static void clearCache(ClassLoader classLoader) {
+		synchronized (CACHES) {
+			if (CACHES.remove(getKey(classLoader, null)) != null) {
+				EVICTIONS.incrementAndGet();
+			}
+		}
+		ClassLookupCache.clear(classLoader);
+		STJSManifest.clearCache(classLoader);
+	}
+
+	/**
+	 * @return the hit, miss and eviction counters of the cache since the JVM started
+	 */
+	public static CacheStatistics getStatistics() {
+		return new CacheStatistics(HITS.get(), MISSES.get(), EVICTIONS.get());
+	}
+
+	private static Object getKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+		return classLoader == null ? BOOTSTRAP_CLASS_LOADER : new ClassLoaderKey(classLoader, queue);
+	}
+
+	private static ConcurrentMap<Type, TypeWrapper> getCache(ClassLoader classLoader) {
+		SoftReference<ConcurrentMap<Type, TypeWrapper>> ref = CACHES.get(getKey(classLoader, null));
+		ConcurrentMap<Type, TypeWrapper> cache = ref == null ? null : ref.get();
+		if (cache != null) {
+			return cache;
+		}
+		synchronized (CACHES) {
+			removeCollectedClassLoaders();
+			ref = CACHES.get(getKey(classLoader, null));
+			cache = ref == null ? null : ref.get();
+			if (cache == null) {
+				if (ref != null) {
+					// reclaimed by the garbage collector
+					EVICTIONS.incrementAndGet();
+				}
+				cache = new ConcurrentHashMap<Type, TypeWrapper>();
+				CACHES.put(getKey(classLoader, COLLECTED_CLASS_LOADERS),
+						new SoftReference<ConcurrentMap<Type, TypeWrapper>>(cache));
+			}
+			return cache;
+		}
+	}
+
+	private static void removeCollectedClassLoaders() {
+		Reference<? extends ClassLoader> key = COLLECTED_CLASS_LOADERS.poll();
+		while (key != null) {
+			if (CACHES.remove(key) != null) {
+				EVICTIONS.incrementAndGet();
+			}
+			key = COLLECTED_CLASS_LOADERS.poll();
+		}
+	}
+
+	/**
+	 * @return the most specific of the two class loaders, i.e. the one that can see the classes of the other one. null
+	 *         stands for the bootstrap class loader.
+	 */
+	private static ClassLoader mostSpecific(ClassLoader a, ClassLoader b) {
+		if (a == null || a == b) {
+			return b;
+		}
+		for (ClassLoader parent = b; parent != null; parent = parent.getParent()) {
+			if (parent == a) {
+				return b;
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * @return true if all the given types can be seen from the given class loader, i.e. an object cached for this
+	 *         class loader can reference them without keeping another class loader alive.
+	 */
+	static boolean isVisibleFrom(ClassLoader classLoader, TypeWrapper[] types) {
+		for (TypeWrapper type : types) {
+			if (type != null && mostSpecific(classLoader, getClassLoader(type.getType())) != classLoader) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static ClassLoader getClassLoader(Type[] types) {
+		ClassLoader classLoader = null;
+		for (Type type : types) {
+			classLoader = mostSpecific(classLoader, getClassLoader(type));
+		}
+		return classLoader;
+	}
+
+	/**
+	 * @return the class loader of the classes the given type refers to. For a composed type it's the most specific
+	 *         class loader of all the types it is made of.
+	 */
+	private static ClassLoader getClassLoader(Type type) {
+		if (type instanceof Class) {
+			return ((Class<?>) type).getClassLoader();
+		}
+		if (type instanceof ParameterizedType) {
+			ParameterizedType ptype = (ParameterizedType) type;
+			return mostSpecific(getClassLoader(ptype.getRawType()), getClassLoader(ptype.getActualTypeArguments()));
+		}
+		if (type instanceof GenericArrayType) {
+			return getClassLoader(((GenericArrayType) type).getGenericComponentType());
+		}
+		if (type instanceof WildcardType) {
+			WildcardType wtype = (WildcardType) type;
+			return mostSpecific(getClassLoader(wtype.getUpperBounds()), getClassLoader(wtype.getLowerBounds()));
+		}
+		if (type instanceof TypeVariable) {
+			GenericDeclaration decl = ((TypeVariable<?>) type).getGenericDeclaration();
+			if (decl instanceof Class) {
+				return ((Class<?>) decl).getClassLoader();
+			}
+			if (decl instanceof Member) {
+				return ((Member) decl).getDeclaringClass().getClassLoader();
+			}
+		}
+		return null;
 	}
 
 	public static TypeWrapper[] wrap(Type[] types) {
@@ -77,13 +242,17 @@ public final class TypeWrappers {
 		if (type == null) {
 			return null;
 		}
-		TypeWrapper w = CACHE.get(type);
+		ConcurrentMap<Type, TypeWrapper> cache = getCache(getClassLoader(type));
+		TypeWrapper w = cache.get(type);
 		if (w != null) {
+			HITS.incrementAndGet();
 			return w;
 		}
+		MISSES.incrementAndGet();
 		w = wrapNoCache(type);
-		CACHE.put(type, w);
-		return w;
+		// keep the wrapper that was first added, if another thread wrapped the same type in the meantime
+		TypeWrapper existing = cache.putIfAbsent(type, w);
+		return existing != null ? existing : w;
 	}
 
 	@SuppressWarnings("unchecked")
@@ -98,4 +267,33 @@ public final class TypeWrappers {
 	public static ClassWrapper wrap(Class<?> type) {
 		return (ClassWrapper) wrap((Type) type);
 	}
+	/**
+	 * The key of the cache of a class loader: it references the class loader weakly and compares it by identity. The
+	 * keys stored in the map are registered in a queue, so they can be removed once their class loader is collected.
+	 */
+	private static final class ClassLoaderKey extends WeakReference<ClassLoader> {
+		private final int hashCode;
+
+		ClassLoaderKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+			super(classLoader, queue);
+			this.hashCode = System.identityHashCode(classLoader);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ClassLoaderKey)) {
+				return false;
+			}
+			ClassLoader classLoader = get();
+			return classLoader != null && classLoader == ((ClassLoaderKey) obj).get();
+		}
+	}
 }
@@ -117,4 +117,22 @@ public class WildcardTypeWrapper implements TypeWrapper {
 		// TODO should this be something else !?
 		return null;
 	}
+
+	// the wrappers are part of the keys of the method resolution cache, where a wrapper created again for the same
+	// type (e.g. a wildcard resolved from the source) must find the same entry
+	@Override
+	public int hashCode() {
+		return type.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		return type.equals(((WildcardTypeWrapper) obj).type);
+	}
 }
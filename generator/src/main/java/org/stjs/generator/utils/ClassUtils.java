@@ -238,7 +238,7 @@ public final class ClassUtils {
 			return resolvedType;
 		}
 		if (resolvedType.getClass() == ClassWrapper.class) {
-			return new ClassWrapper(Array.newInstance((Class<?>) resolvedType.getType(), new int[arrayCount])
+			return TypeWrappers.wrap(Array.newInstance((Class<?>) resolvedType.getType(), new int[arrayCount])
 					.getClass());
 		}
 
@@ -23,6 +23,7 @@ import japa.parser.ast.type.ClassOrInterfaceType;
 import japa.parser.ast.type.ReferenceType;
 import japa.parser.ast.visitor.VoidVisitor;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -62,12 +63,28 @@ public final class NodeUtils {
 				&& isString((ClassOrInterfaceType) refType.getType());
 	}
 
+	/**
+	 * @return true if the method is the main method of its class, i.e. the method the generated file calls when it's
+	 *         loaded
+	 */
 	public static boolean isMainMethod(MethodDeclaration methodDeclaration) {
-		boolean isMainMethod = false;
-		if (isStatic(methodDeclaration.getModifiers()) && "main".equals(methodDeclaration.getName())) {
-			isMainMethod = isStringArray(methodDeclaration.getParameters());
-		}
-		return isMainMethod;
+		return isMainMethod(methodDeclaration.getModifiers(), methodDeclaration.getName(),
+				isStringArray(methodDeclaration.getParameters()));
+	}
+
+	/**
+	 * same as {@link #isMainMethod(MethodDeclaration)}, for a compiled method
+	 */
+	public static boolean isMainMethod(Method method) {
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		// String... args is not a String[] parameter in the source
+		return isMainMethod(method.getModifiers(), method.getName(), !method.isVarArgs() && parameterTypes.length == 1
+				&& parameterTypes[0] == String[].class);
+	}
+
+	private static boolean isMainMethod(int modifiers, String name, boolean hasStringArrayParameter) {
+		// the modifiers of the AST have the same values as the ones of the compiled classes
+		return isStatic(modifiers) && "main".equals(name) && hasStringArrayParameter;
 	}
 
 	/**
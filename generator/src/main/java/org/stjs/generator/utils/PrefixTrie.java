@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A set of prefixes that checks if a name starts with one of them in a time proportional to the length of the name,
+ * instead of the number of prefixes. It's immutable once built.
+ * @author acraciun
+ */
+public final class PrefixTrie {
+	private final Node root = new Node();
+
+	public PrefixTrie(Collection<String> prefixes) {
+		for (String prefix : prefixes) {
+			add(prefix);
+		}
+	}
+
+	private void add(String prefix) {
+		Node node = root;
+		for (int i = 0; i < prefix.length(); ++i) {
+			char c = prefix.charAt(i);
+			Node child = node.children.get(c);
+			if (child == null) {
+				child = new Node();
+				node.children.put(c, child);
+			}
+			node = child;
+		}
+		node.terminal = true;
+	}
+
+	/**
+	 * @return true if the given name starts with one of the prefixes (the same as calling name.startsWith for each
+	 *         prefix)
+	 */
+	public boolean matchesPrefixOf(String name) {
+		Node node = root;
+		for (int i = 0; !node.terminal; ++i) {
+			if (i == name.length()) {
+				return false;
+			}
+			node = node.children.get(name.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Node {
+		private final Map<Character, Node> children = new HashMap<Character, Node>();
+		private boolean terminal;
+	}
+}
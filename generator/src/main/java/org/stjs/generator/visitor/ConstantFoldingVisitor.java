@@ -0,0 +1,477 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.visitor;
+
+import static org.stjs.generator.ast.ASTNodeData.constantValue;
+import static org.stjs.generator.ast.ASTNodeData.parent;
+import static org.stjs.generator.ast.ASTNodeData.resolvedType;
+import static org.stjs.generator.ast.ASTNodeData.resolvedVariable;
+import japa.parser.ast.Node;
+import japa.parser.ast.body.FieldDeclaration;
+import japa.parser.ast.body.ModifierSet;
+import japa.parser.ast.body.VariableDeclarator;
+import japa.parser.ast.expr.BinaryExpr;
+import japa.parser.ast.expr.BooleanLiteralExpr;
+import japa.parser.ast.expr.CharLiteralExpr;
+import japa.parser.ast.expr.ConditionalExpr;
+import japa.parser.ast.expr.DoubleLiteralExpr;
+import japa.parser.ast.expr.EnclosedExpr;
+import japa.parser.ast.expr.Expression;
+import japa.parser.ast.expr.FieldAccessExpr;
+import japa.parser.ast.expr.IntegerLiteralExpr;
+import japa.parser.ast.expr.IntegerLiteralMinValueExpr;
+import japa.parser.ast.expr.LiteralExpr;
+import japa.parser.ast.expr.LongLiteralExpr;
+import japa.parser.ast.expr.LongLiteralMinValueExpr;
+import japa.parser.ast.expr.NameExpr;
+import japa.parser.ast.expr.StringLiteralExpr;
+import japa.parser.ast.expr.UnaryExpr;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.type.ClassWrapper;
+import org.stjs.generator.type.FieldWrapper;
+import org.stjs.generator.type.TypeWrapper;
+import org.stjs.generator.utils.ClassUtils;
+import org.stjs.generator.utils.Option;
+import org.stjs.generator.variable.Variable;
+
+/**
+ * This visitor computes the value of the constant expressions, once the scopes are resolved (see
+ * {@link org.stjs.generator.GeneratorConfiguration#isInlineConstants()}). The value is kept with the node of the
+ * expression and the writer prints it instead of the expression.
+ * <p>
+ * The constant fields take the value computed by the Java compiler, that is also written in their declaration. The
+ * other expressions are folded only if Javascript computes the same value as Java: the operations on integers that
+ * could overflow, on floats or on chars used as numbers and the concatenation of decimal numbers are left as they are.
+ * The constant fields of the bridges are not inlined, as their Javascript value is not the one of the Java stub.
+ * @author acraciun
+ */
+public class ConstantFoldingVisitor extends ForEachNodeVisitor<GenerationContext> {
+	private static final long MAX_SAFE_INTEGER = 1L << 53;
+	private static final Set<String> INT_TYPE_NAMES = new HashSet<String>(Arrays.asList("int", "short", "byte"));
+
+	@Override
+	protected void after(Node node, GenerationContext context) {
+		if (node instanceof VariableDeclarator) {
+			foldFieldInitializer((VariableDeclarator) node);
+		} else if (node instanceof Expression && !isLiteral(node)) {
+			constantValue(node, fold((Expression) node));
+		}
+	}
+
+	/**
+	 * the declaration of a constant field takes the value computed by the Java compiler, so the field has the value
+	 * inlined where it's used
+	 */
+	private void foldFieldInitializer(VariableDeclarator n) {
+		Node declaration = parent(n);
+		if (n.getInit() == null || !(declaration instanceof FieldDeclaration)
+				|| !ModifierSet.isStatic(((FieldDeclaration) declaration).getModifiers())) {
+			return;
+		}
+		TypeWrapper type = resolvedType(parent(declaration));
+		if (!(type instanceof ClassWrapper)) {
+			return;
+		}
+		Option<FieldWrapper> field = type.findField(n.getId().getName());
+		if (field.isDefined()) {
+			Object value = getFieldValue(field.getOrThrow());
+			if (value != null) {
+				constantValue(n.getInit(), value);
+			}
+		}
+	}
+
+	private static boolean isLiteral(Node n) {
+		return n instanceof LiteralExpr;
+	}
+
+	/**
+	 * @return the value of the expression, or null if it's not a constant
+	 */
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private Object fold(Expression n) {
+		if (n instanceof NameExpr) {
+			return getFieldValue(resolvedVariable(n));
+		}
+		if (n instanceof FieldAccessExpr) {
+			// only the fields qualified by a type name are constants
+			Expression scope = ((FieldAccessExpr) n).getScope();
+			boolean typeName = (scope instanceof NameExpr || scope instanceof FieldAccessExpr)
+					&& resolvedVariable(scope) == null;
+			return typeName ? getFieldValue(resolvedVariable(n)) : null;
+		}
+		if (n instanceof EnclosedExpr) {
+			return valueOf(((EnclosedExpr) n).getInner());
+		}
+		if (n instanceof UnaryExpr) {
+			return foldUnary(((UnaryExpr) n).getOperator(), valueOf(((UnaryExpr) n).getExpr()));
+		}
+		if (n instanceof BinaryExpr) {
+			BinaryExpr binary = (BinaryExpr) n;
+			Object left = valueOf(binary.getLeft());
+			Object right = valueOf(binary.getRight());
+			if (left == null || right == null) {
+				return null;
+			}
+			return foldBinary(binary, left, right);
+		}
+		if (n instanceof ConditionalExpr) {
+			ConditionalExpr conditional = (ConditionalExpr) n;
+			Object condition = valueOf(conditional.getCondition());
+			Object thenValue = valueOf(conditional.getThenExpr());
+			Object elseValue = valueOf(conditional.getElseExpr());
+			if (condition instanceof Boolean && thenValue != null && elseValue != null) {
+				return (Boolean) condition ? thenValue : elseValue;
+			}
+		}
+		return null;
+	}
+
+	private static Object getFieldValue(Variable var) {
+		if (!(var instanceof FieldWrapper)) {
+			return null;
+		}
+		FieldWrapper field = (FieldWrapper) var;
+		if (!(field.getOwnerType() instanceof ClassWrapper)
+				|| ClassUtils.isBridge(((ClassWrapper) field.getOwnerType()).getClazz())) {
+			return null;
+		}
+		Object value = field.getConstantValue();
+		return isFinite(value) ? value : null;
+	}
+
+	/**
+	 * @return the value of an operand: the literals are parsed, the other expressions were already folded
+	 */
+	private static Object valueOf(Expression n) {
+		try {
+			if (n instanceof BooleanLiteralExpr) {
+				return ((BooleanLiteralExpr) n).getValue();
+			}
+			if (n instanceof IntegerLiteralMinValueExpr || n instanceof LongLiteralMinValueExpr) {
+				return null;
+			}
+			if (n instanceof IntegerLiteralExpr) {
+				return parseInteger(((IntegerLiteralExpr) n).getValue(), false);
+			}
+			if (n instanceof LongLiteralExpr) {
+				return parseInteger(((LongLiteralExpr) n).getValue(), true);
+			}
+			if (n instanceof DoubleLiteralExpr) {
+				String value = ((DoubleLiteralExpr) n).getValue();
+				// the floats are not folded, as Java computes them with a lower precision
+				return value.endsWith("f") || value.endsWith("F") ? null : Double.valueOf(value);
+			}
+			if (n instanceof StringLiteralExpr) {
+				// the other literals extend StringLiteralExpr, so they are checked before
+				String value = unescape(((StringLiteralExpr) n).getValue());
+				if (n instanceof CharLiteralExpr) {
+					return value != null && value.length() == 1 ? value.charAt(0) : null;
+				}
+				return value;
+			}
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+		return constantValue(n);
+	}
+
+	private static Long parseInteger(String literal, boolean longLiteral) {
+		String value = literal.replace("_", "");
+		if (longLiteral) {
+			value = value.substring(0, value.length() - 1);
+		}
+		if (value.startsWith("0x") || value.startsWith("0X")) {
+			return Long.parseLong(value.substring(2), 16);
+		}
+		if (value.startsWith("0b") || value.startsWith("0B")) {
+			return Long.parseLong(value.substring(2), 2);
+		}
+		if (value.length() > 1 && value.startsWith("0")) {
+			return Long.parseLong(value.substring(1), 8);
+		}
+		return Long.parseLong(value);
+	}
+
+	/**
+	 * @return the value of the string literal, as written in the source, or null if an escape sequence is not known
+	 */
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static String unescape(String literal) {
+		StringBuilder value = new StringBuilder(literal.length());
+		for (int i = 0; i < literal.length(); ++i) {
+			char c = literal.charAt(i);
+			if (c != '\\') {
+				value.append(c);
+				continue;
+			}
+			if (++i == literal.length()) {
+				return null;
+			}
+			c = literal.charAt(i);
+			switch (c) {
+				case 'b':
+					value.append('\b');
+					break;
+				case 't':
+					value.append('\t');
+					break;
+				case 'n':
+					value.append('\n');
+					break;
+				case 'f':
+					value.append('\f');
+					break;
+				case 'r':
+					value.append('\r');
+					break;
+				case '"':
+				case '\'':
+				case '\\':
+					value.append(c);
+					break;
+				case 'u':
+					while (i < literal.length() && literal.charAt(i) == 'u') {
+						++i;
+					}
+					if (i + 4 > literal.length()) {
+						return null;
+					}
+					value.append((char) Integer.parseInt(literal.substring(i, i + 4), 16));
+					i += 3;
+					break;
+				default:
+					// octal escape: up to 3 digits, with a value up to 0377
+					int end = i;
+					int maxLength = c <= '3' ? 3 : 2;
+					while (end < literal.length() && end - i < maxLength && literal.charAt(end) >= '0'
+							&& literal.charAt(end) <= '7') {
+						++end;
+					}
+					if (end == i) {
+						return null;
+					}
+					value.append((char) Integer.parseInt(literal.substring(i, end), 8));
+					i = end - 1;
+					break;
+			}
+		}
+		return value.toString();
+	}
+
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static Object foldUnary(UnaryExpr.Operator operator, Object value) {
+		switch (operator) {
+			case positive:
+				return value instanceof Long || value instanceof Double ? value : null;
+			case negative:
+				if (value instanceof Long) {
+					return toInt(-(Long) value);
+				}
+				return value instanceof Double ? (Object) (-(Double) value) : null;
+			case inverse:
+				return isInt(value) ? (Object) (~(Long) value) : null;
+			case not:
+				return value instanceof Boolean ? (Object) (!(Boolean) value) : null;
+			default:
+				return null;
+		}
+	}
+
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static Object foldBinary(BinaryExpr n, Object left, Object right) {
+		switch (n.getOperator()) {
+			case plus:
+				if (left instanceof String || right instanceof String) {
+					return isConcatenable(left) && isConcatenable(right) ? left.toString() + right.toString() : null;
+				}
+				return foldArithmetic(n.getOperator(), left, right);
+			case minus:
+			case times:
+			case divide:
+			case remainder:
+				return foldArithmetic(n.getOperator(), left, right);
+			case less:
+			case greater:
+			case lessEquals:
+			case greaterEquals:
+				return isExactNumber(left) && isExactNumber(right) ? compare(n.getOperator(), left, right) : null;
+			case equals:
+			case notEquals:
+				Boolean equal = equal(left, right);
+				if (equal == null) {
+					return null;
+				}
+				return n.getOperator() == BinaryExpr.Operator.equals ? equal : !equal;
+			case and:
+			case or:
+				if (left instanceof Boolean && right instanceof Boolean) {
+					return n.getOperator() == BinaryExpr.Operator.and ? (Boolean) left && (Boolean) right
+							: (Boolean) left || (Boolean) right;
+				}
+				return null;
+			case binAnd:
+			case binOr:
+			case xor:
+				// for booleans Javascript returns a number
+				return isInt(left) && isInt(right) ? foldBitwise(n.getOperator(), (Long) left, (Long) right) : null;
+			case lShift:
+			case rSignedShift:
+				// Javascript shifts only 32 bits integers
+				TypeWrapper leftType = resolvedType(n.getLeft());
+				boolean intShift = leftType != null && INT_TYPE_NAMES.contains(leftType.toString());
+				if (!intShift || !isInt(left) || !isInt(right)) {
+					return null;
+				}
+				int l = ((Long) left).intValue();
+				int r = ((Long) right).intValue();
+				return (long) (n.getOperator() == BinaryExpr.Operator.lShift ? l << r : l >> r);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * the integers are computed if the result is still a 32 bits integer (the integer division is truncated in
+	 * Javascript too), the other numbers as doubles
+	 */
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private static Object foldArithmetic(BinaryExpr.Operator operator, Object left, Object right) {
+		if (isInt(left) && isInt(right)) {
+			long l = (Long) left;
+			long r = (Long) right;
+			switch (operator) {
+				case plus:
+					return toInt(l + r);
+				case minus:
+					return toInt(l - r);
+				case times:
+					return toInt(l * r);
+				case divide:
+					return r == 0 ? null : toInt(l / r);
+				case remainder:
+					return r == 0 ? null : toInt(l % r);
+				default:
+					return null;
+			}
+		}
+		if (!isExactNumber(left) || !isExactNumber(right) || left instanceof Long && right instanceof Long) {
+			return null;
+		}
+		double l = ((Number) left).doubleValue();
+		double r = ((Number) right).doubleValue();
+		double result;
+		switch (operator) {
+			case plus:
+				result = l + r;
+				break;
+			case minus:
+				result = l - r;
+				break;
+			case times:
+				result = l * r;
+				break;
+			case divide:
+				result = l / r;
+				break;
+			case remainder:
+				result = l % r;
+				break;
+			default:
+				return null;
+		}
+		return isFinite(result) ? (Object) result : null;
+	}
+
+	private static Object foldBitwise(BinaryExpr.Operator operator, long left, long right) {
+		switch (operator) {
+			case binAnd:
+				return left & right;
+			case binOr:
+				return left | right;
+			default:
+				return left ^ right;
+		}
+	}
+
+	private static Boolean compare(BinaryExpr.Operator operator, Object left, Object right) {
+		double l = ((Number) left).doubleValue();
+		double r = ((Number) right).doubleValue();
+		switch (operator) {
+			case less:
+				return l < r;
+			case greater:
+				return l > r;
+			case lessEquals:
+				return l <= r;
+			default:
+				return l >= r;
+		}
+	}
+
+	/**
+	 * @return the result of ==, or null if it cannot be computed. The constant strings are interned in Java, so they
+	 *         are compared by value like in Javascript.
+	 */
+	private static Boolean equal(Object left, Object right) {
+		if (isExactNumber(left) && isExactNumber(right)) {
+			return ((Number) left).doubleValue() == ((Number) right).doubleValue();
+		}
+		if (left instanceof Boolean && right instanceof Boolean || left instanceof String && right instanceof String
+				|| left instanceof Character && right instanceof Character) {
+			return left.equals(right);
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the value is converted to the same string in Java and in Javascript. The chars are strings in
+	 *         Javascript.
+	 */
+	private static boolean isConcatenable(Object value) {
+		return value instanceof String || value instanceof Character || value instanceof Boolean
+				|| value instanceof Long && Math.abs((Long) value) <= MAX_SAFE_INTEGER;
+	}
+
+	private static boolean isInt(Object value) {
+		return value instanceof Long && (Long) value == ((Long) value).intValue();
+	}
+
+	private static Long toInt(long value) {
+		return value == (int) value ? (Long) value : null;
+	}
+
+	/**
+	 * @return true for the doubles and the integers that Javascript represents exactly
+	 */
+	private static boolean isExactNumber(Object value) {
+		return value instanceof Double || value instanceof Long && Math.abs((Long) value) <= MAX_SAFE_INTEGER;
+	}
+
+	private static boolean isFinite(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			return !Double.isNaN(d) && !Double.isInfinite(d);
+		}
+		return true;
+	}
+}
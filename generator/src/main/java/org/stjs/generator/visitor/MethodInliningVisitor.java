@@ -0,0 +1,318 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.visitor;
+
+import static org.stjs.generator.ast.ASTNodeData.inlinedMethod;
+import static org.stjs.generator.ast.ASTNodeData.resolvedMethod;
+import static org.stjs.generator.ast.ASTNodeData.resolvedType;
+import static org.stjs.generator.ast.ASTNodeData.resolvedVariable;
+import static org.stjs.generator.ast.ASTNodeData.scope;
+import japa.parser.ast.CompilationUnit;
+import japa.parser.ast.Node;
+import japa.parser.ast.body.MethodDeclaration;
+import japa.parser.ast.body.ModifierSet;
+import japa.parser.ast.body.Parameter;
+import japa.parser.ast.expr.AssignExpr;
+import japa.parser.ast.expr.BinaryExpr;
+import japa.parser.ast.expr.CastExpr;
+import japa.parser.ast.expr.ConditionalExpr;
+import japa.parser.ast.expr.EnclosedExpr;
+import japa.parser.ast.expr.Expression;
+import japa.parser.ast.expr.FieldAccessExpr;
+import japa.parser.ast.expr.LiteralExpr;
+import japa.parser.ast.expr.MethodCallExpr;
+import japa.parser.ast.expr.NameExpr;
+import japa.parser.ast.expr.SuperExpr;
+import japa.parser.ast.expr.ThisExpr;
+import japa.parser.ast.expr.UnaryExpr;
+import japa.parser.ast.stmt.ExpressionStmt;
+import japa.parser.ast.stmt.ReturnStmt;
+import japa.parser.ast.stmt.Statement;
+import japa.parser.ast.type.VoidType;
+
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.GeneratorConstants;
+import org.stjs.generator.scope.ClassScope;
+import org.stjs.generator.type.ClassWrapper;
+import org.stjs.generator.type.FieldWrapper;
+import org.stjs.generator.type.MethodWrapper;
+import org.stjs.generator.utils.NodeUtils;
+import org.stjs.generator.variable.ParameterVariable;
+import org.stjs.generator.variable.Variable;
+import org.stjs.javascript.annotation.Template;
+
+/**
+ * This visitor finds the calls of the trivial methods that can be replaced by the method's body, once the scopes are
+ * resolved (see {@link org.stjs.generator.GeneratorConfiguration#isInlineMethods()}). The method is kept with the
+ * node of the call and the writer prints its body instead of the call, with the arguments in place of the parameters.
+ * <p>
+ * A method is inlined if it cannot be overridden (it's static, private or final, or its class is final) and its body
+ * is either the return of a simple expression (fields, parameters, literals and operators) or the assignment of such
+ * an expression to a field (a setter). Only the methods declared in the compilation unit are inlined, as their body is
+ * needed. As the arguments may be evaluated more than once or not at all, the calls are inlined only if the arguments
+ * and the target of the call have no side effect (the inlined getters can be used as arguments).
+ * @author acraciun
+ */
+public class MethodInliningVisitor extends ForEachNodeVisitor<GenerationContext> {
+	/**
+	 * the inlinable methods by their declaring class and their name (the methods cannot be overloaded)
+	 */
+	private final Map<String, MethodDeclaration> inlinableMethods = new HashMap<String, MethodDeclaration>();
+
+	@Override
+	public void visit(CompilationUnit n, GenerationContext context) {
+		final Set<String> declaredMethods = new HashSet<String>();
+		n.accept(new ForEachNodeVisitor<GenerationContext>() {
+			@Override
+			protected void before(Node node, GenerationContext arg) {
+				if (!(node instanceof MethodDeclaration) || resolvedMethod(node) == null) {
+					return;
+				}
+				String key = getKey(resolvedMethod(node));
+				if (declaredMethods.add(key) && isInlinable((MethodDeclaration) node)) {
+					inlinableMethods.put(key, (MethodDeclaration) node);
+				} else {
+					inlinableMethods.remove(key);
+				}
+			}
+		}, context);
+		super.visit(n, context);
+	}
+
+	@Override
+	protected void after(Node node, GenerationContext context) {
+		if (!(node instanceof MethodCallExpr)) {
+			return;
+		}
+		MethodCallExpr n = (MethodCallExpr) node;
+		MethodWrapper method = resolvedMethod(n);
+		MethodDeclaration declaration = method == null ? null : inlinableMethods.get(getKey(method));
+		if (declaration == null || !hasPureArguments(n, declaration)) {
+			return;
+		}
+		if (!Modifier.isStatic(method.getModifiers()) && !isInlinableTarget(n, method, declaration)) {
+			return;
+		}
+		inlinedMethod(n, declaration);
+	}
+
+	private static String getKey(MethodWrapper method) {
+		return method.getDeclaringClass().getName() + "." + method.getName();
+	}
+
+	private boolean isInlinable(MethodDeclaration n) {
+		MethodWrapper method = resolvedMethod(n);
+		int modifiers = n.getModifiers();
+		if (n.getBody() == null || n.getBody().getStmts() == null || n.getBody().getStmts().size() != 1
+				|| ModifierSet.isAbstract(modifiers) || ModifierSet.isNative(modifiers) || NodeUtils.isMainMethod(n)
+				|| method.getAnnotation(Template.class) != null) {
+			return false;
+		}
+		if (n.getParameters() != null) {
+			for (Parameter param : n.getParameters()) {
+				if (param.isVarArgs()) {
+					return false;
+				}
+			}
+		}
+		boolean overridable =
+				!ModifierSet.isStatic(modifiers) && !ModifierSet.isPrivate(modifiers) && !ModifierSet.isFinal(modifiers)
+						&& !Modifier.isFinal(method.getDeclaringClass().getModifiers());
+		if (overridable) {
+			return false;
+		}
+
+		Statement stmt = n.getBody().getStmts().get(0);
+		Class<?> declaringClass = method.getDeclaringClass();
+		if (stmt instanceof ReturnStmt) {
+			Expression expr = ((ReturnStmt) stmt).getExpr();
+			return expr != null && isSimple(expr, declaringClass);
+		}
+		if (stmt instanceof ExpressionStmt && n.getType() instanceof VoidType
+				&& ((ExpressionStmt) stmt).getExpression() instanceof AssignExpr) {
+			// a setter
+			AssignExpr assign = (AssignExpr) ((ExpressionStmt) stmt).getExpression();
+			boolean fieldTarget =
+					(assign.getTarget() instanceof NameExpr || assign.getTarget() instanceof FieldAccessExpr)
+							&& resolvedVariable(assign.getTarget()) instanceof FieldWrapper;
+			return assign.getOperator() == AssignExpr.Operator.assign && fieldTarget
+					&& isSimple(assign.getTarget(), declaringClass) && isSimple(assign.getValue(), declaringClass);
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the expression can be printed in the place of the call: it's made only of literals, parameters,
+	 *         fields of the class (or static fields) and operators.
+	 */
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private boolean isSimple(Expression n, Class<?> declaringClass) {
+		if (n instanceof LiteralExpr) {
+			return true;
+		}
+		if (n instanceof ThisExpr) {
+			return ((ThisExpr) n).getClassExpr() == null;
+		}
+		if (n instanceof NameExpr) {
+			Variable var = resolvedVariable(n);
+			return !GeneratorConstants.SPECIAL_THIS.equals(((NameExpr) n).getName())
+					&& (var instanceof ParameterVariable || isFieldOf(var, declaringClass));
+		}
+		if (n instanceof FieldAccessExpr) {
+			Expression scope = ((FieldAccessExpr) n).getScope();
+			return isFieldOf(resolvedVariable(n), declaringClass)
+					&& (isTypeName(scope) || !(scope instanceof SuperExpr) && isSimple(scope, declaringClass));
+		}
+		if (n instanceof EnclosedExpr) {
+			return isSimple(((EnclosedExpr) n).getInner(), declaringClass);
+		}
+		if (n instanceof CastExpr) {
+			return isSimple(((CastExpr) n).getExpr(), declaringClass);
+		}
+		if (n instanceof UnaryExpr) {
+			return !isIncrement((UnaryExpr) n) && isSimple(((UnaryExpr) n).getExpr(), declaringClass);
+		}
+		if (n instanceof BinaryExpr) {
+			return isSimple(((BinaryExpr) n).getLeft(), declaringClass)
+					&& isSimple(((BinaryExpr) n).getRight(), declaringClass);
+		}
+		if (n instanceof ConditionalExpr) {
+			ConditionalExpr cond = (ConditionalExpr) n;
+			return isSimple(cond.getCondition(), declaringClass) && isSimple(cond.getThenExpr(), declaringClass)
+					&& isSimple(cond.getElseExpr(), declaringClass);
+		}
+		return false;
+	}
+
+	/**
+	 * @return true for the static fields and the instance fields of the given class (not the ones of an outer class)
+	 */
+	private static boolean isFieldOf(Variable var, Class<?> declaringClass) {
+		if (!(var instanceof FieldWrapper)) {
+			return false;
+		}
+		FieldWrapper field = (FieldWrapper) var;
+		if (Modifier.isStatic(field.getModifiers())) {
+			return true;
+		}
+		return field.getOwnerType() instanceof ClassWrapper
+				&& ((ClassWrapper) field.getOwnerType()).getClazz().isAssignableFrom(declaringClass);
+	}
+
+	private static boolean isTypeName(Expression n) {
+		return (n instanceof NameExpr || n instanceof FieldAccessExpr) && resolvedVariable(n) == null
+				&& resolvedType(n) instanceof ClassWrapper;
+	}
+
+	private static boolean isIncrement(UnaryExpr n) {
+		switch (n.getOperator()) {
+			case preIncrement:
+			case preDecrement:
+			case posIncrement:
+			case posDecrement:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private boolean hasPureArguments(MethodCallExpr n, MethodDeclaration declaration) {
+		List<Expression> args = n.getArgs();
+		int paramCount = declaration.getParameters() == null ? 0 : declaration.getParameters().size();
+		if ((args == null ? 0 : args.size()) != paramCount) {
+			return false;
+		}
+		if (args != null) {
+			for (Expression arg : args) {
+				if (!isPure(arg)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the expression has no side effect and can be evaluated as many times as needed. The calls that
+	 *         were already inlined (the arguments are visited first) are pure if they return a value.
+	 */
+	@SuppressWarnings("PMD.CyclomaticComplexity")
+	private boolean isPure(Expression n) {
+		if (n instanceof LiteralExpr) {
+			return true;
+		}
+		if (n instanceof MethodCallExpr) {
+			MethodDeclaration inlined = inlinedMethod(n);
+			return inlined != null && inlined.getBody().getStmts().get(0) instanceof ReturnStmt;
+		}
+		if (n instanceof ThisExpr) {
+			return ((ThisExpr) n).getClassExpr() == null;
+		}
+		if (n instanceof NameExpr) {
+			return resolvedVariable(n) != null;
+		}
+		if (n instanceof FieldAccessExpr) {
+			Expression scope = ((FieldAccessExpr) n).getScope();
+			return resolvedVariable(n) instanceof FieldWrapper
+					&& (isTypeName(scope) || !(scope instanceof SuperExpr) && isPure(scope));
+		}
+		if (n instanceof EnclosedExpr) {
+			return isPure(((EnclosedExpr) n).getInner());
+		}
+		if (n instanceof UnaryExpr) {
+			return !isIncrement((UnaryExpr) n) && isPure(((UnaryExpr) n).getExpr());
+		}
+		return false;
+	}
+
+	/**
+	 * the calls of instance methods are inlined if they are called on this from the declaring class (or a sub class),
+	 * or on another object without side effect, if the body uses it
+	 */
+	private boolean isInlinableTarget(MethodCallExpr n, MethodWrapper method, MethodDeclaration declaration) {
+		Expression target = n.getScope();
+		if (target == null || target instanceof ThisExpr && ((ThisExpr) target).getClassExpr() == null) {
+			ClassScope classScope = scope(n).closest(ClassScope.class);
+			return classScope != null && method.getDeclaringClass().isAssignableFrom(classScope.getClazz().getClazz());
+		}
+		return !(target instanceof SuperExpr) && isPure(target) && usesTarget(declaration);
+	}
+
+	/**
+	 * @return true if the body of the method uses this, explicitly or through an instance field
+	 */
+	private boolean usesTarget(MethodDeclaration declaration) {
+		final boolean[] usesTarget = new boolean[1];
+		declaration.getBody().accept(new ForEachNodeVisitor<GenerationContext>() {
+			@Override
+			protected void before(Node node, GenerationContext arg) {
+				if (node instanceof ThisExpr) {
+					usesTarget[0] = true;
+				} else if (node instanceof NameExpr && resolvedVariable(node) instanceof FieldWrapper) {
+					usesTarget[0] |= !Modifier.isStatic(((FieldWrapper) resolvedVariable(node)).getModifiers());
+				}
+			}
+		}, null);
+		return usesTarget[0];
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.writer;
+
+import static org.stjs.generator.ast.ASTNodeData.resolvedMethod;
+import static org.stjs.generator.ast.ASTNodeData.resolvedVariable;
+import static org.stjs.generator.ast.ASTNodeData.resolvedVariableScope;
+import static org.stjs.generator.ast.ASTNodeData.scope;
+import japa.parser.ast.Node;
+import japa.parser.ast.body.BodyDeclaration;
+import japa.parser.ast.body.MethodDeclaration;
+import japa.parser.ast.expr.MethodCallExpr;
+import japa.parser.ast.expr.NameExpr;
+import japa.parser.ast.expr.ObjectCreationExpr;
+import japa.parser.ast.stmt.BlockStmt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.stjs.generator.GeneratorConstants;
+import org.stjs.generator.scope.Scope;
+import org.stjs.generator.scope.VariableWithScope;
+import org.stjs.generator.type.MethodWrapper;
+import org.stjs.generator.variable.LocalVariable;
+import org.stjs.generator.variable.ParameterVariable;
+import org.stjs.generator.variable.Variable;
+import org.stjs.generator.visitor.ForEachNodeVisitor;
+import org.stjs.javascript.annotation.Template;
+
+/**
+ * This class finds the local variables and the parameters of the enclosing methods that are used by an anonymous class
+ * defined only once (see {@link org.stjs.generator.GeneratorConfiguration#isHoistAnonymousClasses()}). Such a class
+ * receives these variables in its constructor and each of its methods copies the ones it uses into local variables of
+ * the same name, so the code of the methods is written as usual.
+ * @author acraciun
+ */
+final class AnonymousClassCaptures {
+	private final List<VariableWithScope> variables;
+	private final Map<BlockStmt, List<VariableWithScope>> variablesByMethodBody;
+
+	private AnonymousClassCaptures(List<VariableWithScope> variables,
+			Map<BlockStmt, List<VariableWithScope>> variablesByMethodBody) {
+		this.variables = variables;
+		this.variablesByMethodBody = variablesByMethodBody;
+	}
+
+	/**
+	 * @return the variables used by the anonymous class created by the given expression, or null if the class has to
+	 *         be defined each time the expression is evaluated: a variable is used outside a method (i.e. in an inner
+	 *         class) or the class contains Javascript code (that may use any variable).
+	 */
+	static AnonymousClassCaptures find(ObjectCreationExpr n) {
+		Scope classScope = scope(n);
+		Map<Variable, VariableWithScope> allVariables = new LinkedHashMap<Variable, VariableWithScope>();
+		Map<BlockStmt, List<VariableWithScope>> variablesByMethodBody =
+				new IdentityHashMap<BlockStmt, List<VariableWithScope>>();
+
+		for (BodyDeclaration member : n.getAnonymousClassBody()) {
+			Map<Variable, VariableWithScope> usedVariables = new LinkedHashMap<Variable, VariableWithScope>();
+			if (!collectUsedVariables(member, classScope, usedVariables)) {
+				return null;
+			}
+			if (usedVariables.isEmpty()) {
+				continue;
+			}
+			if (!(member instanceof MethodDeclaration) || ((MethodDeclaration) member).getBody() == null) {
+				return null;
+			}
+			for (Map.Entry<Variable, VariableWithScope> entry : usedVariables.entrySet()) {
+				if (!allVariables.containsKey(entry.getKey())) {
+					allVariables.put(entry.getKey(), entry.getValue());
+				}
+			}
+			variablesByMethodBody.put(((MethodDeclaration) member).getBody(),
+					new ArrayList<VariableWithScope>(usedVariables.values()));
+		}
+		return new AnonymousClassCaptures(new ArrayList<VariableWithScope>(allVariables.values()),
+				Collections.unmodifiableMap(variablesByMethodBody));
+	}
+
+	/**
+	 * adds to the given map the variables used in the given member that are declared outside the anonymous class.
+	 * @return false if the member contains Javascript code or uses a variable that cannot be copied
+	 */
+	private static boolean collectUsedVariables(BodyDeclaration member, final Scope classScope,
+			final Map<Variable, VariableWithScope> usedVariables) {
+		final boolean[] supported = { true };
+		member.accept(new ForEachNodeVisitor<Void>() {
+			@Override
+			protected void before(Node node, Void arg) {
+				if (node instanceof NameExpr) {
+					Variable var = resolvedVariable(node);
+					if ((var instanceof LocalVariable || var instanceof ParameterVariable)
+							&& !isInside(resolvedVariableScope(node), classScope)) {
+						String name = var.getName();
+						if (GeneratorConstants.SPECIAL_THIS.equals(name)
+								|| GeneratorConstants.ARGUMENTS_PARAMETER.equals(name)) {
+							supported[0] = false;
+						} else if (!usedVariables.containsKey(var)) {
+							usedVariables.put(var, resolvedVariableScope(node).resolveVariable(name));
+						}
+					}
+				} else if (node instanceof MethodCallExpr) {
+					MethodWrapper method = resolvedMethod(node);
+					Template template = method == null ? null : method.getAnnotation(Template.class);
+					if (template != null && JavascriptWriterVisitor.JAVASCRIPT_CODE_TEMPLATE.equals(template.value())) {
+						supported[0] = false;
+					}
+				}
+			}
+		}, null);
+		return supported[0];
+	}
+
+	private static boolean isInside(Scope scope, Scope parentScope) {
+		for (Scope s = scope; s != null; s = s.getParent()) {
+			if (s == parentScope) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return all the variables used by the class, in the order they are given to its constructor
+	 */
+	public List<VariableWithScope> getVariables() {
+		return variables;
+	}
+
+	/**
+	 * @return the variables used in the methods of the class, by the body of the method
+	 */
+	public Map<BlockStmt, List<VariableWithScope>> getVariablesByMethodBody() {
+		return variablesByMethodBody;
+	}
+
+	/**
+	 * @return the name of the property of the anonymous class' instances where the given variable is kept
+	 */
+	public static String getPropertyName(VariableWithScope var) {
+		return "$captured$" + var.getVariable().getName();
+	}
+}
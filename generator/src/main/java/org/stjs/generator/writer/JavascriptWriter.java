@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 import org.stjs.generator.GenerationContext;
+import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.utils.Operators;
 
 import com.google.debugging.sourcemap.FilePosition;
@@ -30,19 +31,28 @@ import com.google.debugging.sourcemap.SourceMapFormat;
 import com.google.debugging.sourcemap.SourceMapGenerator;
 import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
 
+/**
+ * This class prints the generated code either in memory or directly to a {@link Writer} (streaming mode), keeping track
+ * of the current line and column for the source map.
+ * @author acraciun
+ */
 public class JavascriptWriter {
-	private static final String NUMERIC_LITERAL_ENDING = "[a-zA-Z]$";
-
 	private static final String INDENT = "    ";
 	private int level;
 
 	private boolean indented;
 
+	/**
+	 * null in streaming mode
+	 */
 	@SuppressWarnings("PMD.AvoidStringBufferField")
-	private final StringBuilder buf = new StringBuilder();
+	private final StringBuilder buf;
+	private final Appendable out;
 
 	private final SourceMapGenerator sourceMapGenerator;
 	private final boolean generateSourceMap;
+	private final boolean minify;
+	private char lastChar;
 
 	private int currentLine;
 	private int currentColumn;
@@ -50,7 +60,32 @@ public class JavascriptWriter {
 	private FilePosition sourcePosition;
 	private FilePosition startOutputPosition;
 
+	/**
+	 * the generated code is kept in memory and it can be retrieved with {@link #getSource()}
+	 */
 	public JavascriptWriter(boolean generateSourceMap) {
+		this(new StringBuilder(), generateSourceMap, false);
+	}
+
+	/**
+	 * the generated code is written directly to the given writer. The caller has to flush and close it.
+	 */
+	public JavascriptWriter(Writer out, boolean generateSourceMap) {
+		this(out, generateSourceMap, false);
+	}
+
+	/**
+	 * @param minify
+	 *            if true, the code is not indented and the new lines are skipped where they are not needed
+	 */
+	public JavascriptWriter(Writer out, boolean generateSourceMap, boolean minify) {
+		this((Appendable) out, generateSourceMap, minify);
+	}
+
+	private JavascriptWriter(Appendable out, boolean generateSourceMap, boolean minify) {
+		this.out = out;
+		this.minify = minify;
+		this.buf = out instanceof StringBuilder ? (StringBuilder) out : null;
 		sourceMapGenerator = generateSourceMap ? SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3) : null;
 		this.generateSourceMap = generateSourceMap;
 	}
@@ -66,12 +101,38 @@ public class JavascriptWriter {
 	}
 
 	private void makeIndent() {
+		if (minify) {
+			return;
+		}
 		for (int i = 0; i < level; i++) {
-			buf.append(INDENT);
+			write(INDENT);
 			currentColumn += INDENT.length();
 		}
 	}
 
+	private void write(CharSequence s) {
+		if (s.length() == 0) {
+			return;
+		}
+		lastChar = s.charAt(s.length() - 1);
+		try {
+			out.append(s);
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Cannot write the generated code:" + e, e);
+		}
+	}
+
+	private void write(char c) {
+		lastChar = c;
+		try {
+			out.append(c);
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Cannot write the generated code:" + e, e);
+		}
+	}
+
 	public JavascriptWriter printLiteral(String value) {
 		//
 		print(value);
@@ -79,12 +140,23 @@ public class JavascriptWriter {
 	}
 
 	public JavascriptWriter printNumberLiteral(String value) {
-
 		// remove and ending type coercion. i.e 123L -> 123
-		print(value.replaceAll(NUMERIC_LITERAL_ENDING, ""));
+		int end = value.length();
+		if (end > 0 && isTypeSuffix(value, value.charAt(end - 1))) {
+			end--;
+		}
+		print(end == value.length() ? value : value.substring(0, end));
 		return this;
 	}
 
+	private static boolean isTypeSuffix(String value, char last) {
+		if (value.length() > 1 && value.charAt(0) == '0' && (value.charAt(1) == 'x' || value.charAt(1) == 'X')) {
+			// the other letters are hexadecimal digits
+			return last == 'L' || last == 'l';
+		}
+		return last >= 'a' && last <= 'z' || last >= 'A' && last <= 'Z';
+	}
+
 	public JavascriptWriter printStringLiteral(String value) {
 		print("\"");
 		print(value);
@@ -99,6 +171,55 @@ public class JavascriptWriter {
 		return this;
 	}
 
+	/**
+	 * prints the value of a constant expression: a String, a Character, a Boolean or a Number
+	 */
+	public JavascriptWriter printConstant(Object value) {
+		if (value instanceof String || value instanceof Character) {
+			return printStringLiteral(escape(value.toString()));
+		}
+		String literal = value.toString();
+		if (literal.startsWith("-")) {
+			// the parenthesis avoid ending up with -- when it follows a minus
+			print("(").print(literal).print(")");
+		} else {
+			print(literal);
+		}
+		return this;
+	}
+
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					escaped.append("\\\"");
+					break;
+				case '\\':
+					escaped.append("\\\\");
+					break;
+				case '\n':
+					escaped.append("\\n");
+					break;
+				case '\r':
+					escaped.append("\\r");
+					break;
+				case '\t':
+					escaped.append("\\t");
+					break;
+				default:
+					if (c < ' ' || c > '~') {
+						escaped.append(String.format("\\u%04x", (int) c));
+					} else {
+						escaped.append(c);
+					}
+					break;
+			}
+		}
+		return escaped.toString();
+	}
+
 	public JavascriptWriter printList(Iterable<String> args) {
 		boolean first = true;
 		for (String arg : args) {
@@ -132,7 +253,7 @@ public class JavascriptWriter {
 			makeIndent();
 			indented = true;
 		}
-		buf.append(arg);
+		write(arg);
 		// TODO check for newlines in the string
 		currentColumn += arg.length();
 		return this;
@@ -145,20 +266,35 @@ public class JavascriptWriter {
 	}
 
 	public JavascriptWriter printLn() {
-		buf.append('\n');
+		if (minify && isStatementOrBlockEnd(lastChar)) {
+			// after these characters a new line cannot end a statement, so it can be skipped
+			indented = false;
+			return this;
+		}
+		write('\n');
 		indented = false;
 		currentLine++;
 		currentColumn = 0;
 		return this;
 	}
 
+	private static boolean isStatementOrBlockEnd(char c) {
+		return c == ';' || c == '{' || c == ',' || c == '(' || c == '\n';
+	}
+
+	/**
+	 * @return the generated code. It's not available in streaming mode.
+	 */
 	public String getSource() {
+		if (buf == null) {
+			throw new IllegalStateException("The code was written directly to the output");
+		}
 		return buf.toString();
 	}
 
 	@Override
 	public String toString() {
-		return getSource();
+		return buf == null ? super.toString() : getSource();
 	}
 
 	public void setSourceNode(Node n) {
@@ -178,7 +314,8 @@ public class JavascriptWriter {
 
 	public void addSourceMapURL(GenerationContext context) {
 		if (generateSourceMap) {
-			buf.append("//@ sourceMappingURL=").append(context.getInputFile().getName().replaceAll("\\.java$", ".map"));
+			write("//@ sourceMappingURL=");
+			write(context.getInputFile().getName().replaceAll("\\.java$", ".map"));
 		}
 	}
 
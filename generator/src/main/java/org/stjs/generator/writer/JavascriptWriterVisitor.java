@@ -18,6 +18,8 @@ package org.stjs.generator.writer;
 import static japa.parser.ast.body.ModifierSet.isAbstract;
 import static japa.parser.ast.body.ModifierSet.isStatic;
 import static org.stjs.generator.ast.ASTNodeData.checkParent;
+import static org.stjs.generator.ast.ASTNodeData.constantValue;
+import static org.stjs.generator.ast.ASTNodeData.inlinedMethod;
 import static org.stjs.generator.ast.ASTNodeData.parent;
 import static org.stjs.generator.ast.ASTNodeData.resolvedMethod;
 import static org.stjs.generator.ast.ASTNodeData.resolvedType;
@@ -67,6 +69,7 @@ import japa.parser.ast.expr.FieldAccessExpr;
 import japa.parser.ast.expr.InstanceOfExpr;
 import japa.parser.ast.expr.IntegerLiteralExpr;
 import japa.parser.ast.expr.IntegerLiteralMinValueExpr;
+import japa.parser.ast.expr.LiteralExpr;
 import japa.parser.ast.expr.LongLiteralExpr;
 import japa.parser.ast.expr.LongLiteralMinValueExpr;
 import japa.parser.ast.expr.MarkerAnnotationExpr;
@@ -114,12 +117,20 @@ import japa.parser.ast.visitor.VoidVisitor;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.stjs.generator.GenerationContext;
 import org.stjs.generator.GeneratorConstants;
@@ -127,9 +138,11 @@ import org.stjs.generator.JavascriptFileGenerationException;
 import org.stjs.generator.ast.ASTNodeData;
 import org.stjs.generator.ast.SourcePosition;
 import org.stjs.generator.name.DefaultNameProvider;
+import org.stjs.generator.name.MinifyingNameProvider;
 import org.stjs.generator.name.NameProvider;
 import org.stjs.generator.scope.ClassScope;
 import org.stjs.generator.scope.Scope;
+import org.stjs.generator.scope.VariableWithScope;
 import org.stjs.generator.type.ClassWrapper;
 import org.stjs.generator.type.FieldWrapper;
 import org.stjs.generator.type.MethodWrapper;
@@ -141,9 +154,12 @@ import org.stjs.generator.utils.Lists;
 import org.stjs.generator.utils.NodeUtils;
 import org.stjs.generator.utils.Option;
 import org.stjs.generator.utils.PreConditions;
+import org.stjs.generator.variable.ParameterVariable;
 import org.stjs.generator.variable.Variable;
+import org.stjs.generator.visitor.ForEachNodeVisitor;
 import org.stjs.javascript.Array;
 import org.stjs.javascript.annotation.GlobalScope;
+import org.stjs.javascript.annotation.Template;
 
 /**
  * This class visits the AST corresponding to a Java file and generates the corresponding Javascript code. It presumes
@@ -159,9 +175,16 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	private static final int INLINE_CREATION_PARENT_LEVEL = 3;
 
+	static final String JAVASCRIPT_CODE_TEMPLATE = "js";
+
+	/**
+	 * the templates of the methods that can receive a number instead of a string key
+	 */
+	private static final Set<String> INDEX_TEMPLATES = new HashSet<String>(Arrays.asList("get", "set"));
+
 	private final MethodCallTemplates specialMethodHandlers;
 
-	private final NameProvider names;
+	private NameProvider names;
 
 	private final JavascriptWriter printer;
 
@@ -169,10 +192,52 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	private int currentComment;
 
+	/**
+	 * while the body of an inlined method is printed, the target of the call (null for this) and the arguments by the
+	 * name of the parameters
+	 */
+	private Expression inlinedTarget;
+
+	private Map<String, Expression> inlinedArguments;
+
+	/**
+	 * the anonymous classes defined only once, with the variables they use from the enclosing methods
+	 */
+	private final Map<ClassWrapper, AnonymousClassCaptures> hoistedAnonymousClasses =
+			new HashMap<ClassWrapper, AnonymousClassCaptures>();
+
+	private final Map<BlockStmt, List<VariableWithScope>> capturedVariablesByMethodBody =
+			new IdentityHashMap<BlockStmt, List<VariableWithScope>>();
+
+	/**
+	 * the members of the class of each constructor, when the instance fields are initialized in the constructor
+	 */
+	private final Map<BlockStmt, List<BodyDeclaration>> classMembersByConstructorBody =
+			new IdentityHashMap<BlockStmt, List<BodyDeclaration>>();
+
 	public JavascriptWriterVisitor(boolean generateSourceMap) {
+		this(new JavascriptWriter(generateSourceMap));
+	}
+
+	/**
+	 * the generated code is written directly to the given writer, so {@link #getGeneratedSource()} cannot be used.
+	 */
+	public JavascriptWriterVisitor(Writer out, boolean generateSourceMap) {
+		this(new JavascriptWriter(out, generateSourceMap));
+	}
+
+	/**
+	 * @param minify
+	 *            if true the code is written without indentation and comments and the local variables are renamed
+	 */
+	public JavascriptWriterVisitor(Writer out, boolean generateSourceMap, boolean minify) {
+		this(new JavascriptWriter(out, generateSourceMap, minify));
+	}
+
+	private JavascriptWriterVisitor(JavascriptWriter printer) {
 		specialMethodHandlers = new MethodCallTemplates();
 		names = new DefaultNameProvider();
-		printer = new JavascriptWriter(generateSourceMap);
+		this.printer = printer;
 	}
 
 	public String getGeneratedSource() {
@@ -181,7 +246,11 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(CompilationUnit n, GenerationContext context) {
-		comments = n.getComments();
+		if (context.getConfiguration().isMinify()) {
+			names = buildMinifyingNameProvider(n, context);
+		} else {
+			comments = n.getComments();
+		}
 		if (n.getTypes() != null) {
 			for (Iterator<TypeDeclaration> i = n.getTypes().iterator(); i.hasNext();) {
 				i.next().accept(this, context);
@@ -334,9 +403,13 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 	public void visit(ForeachStmt n, GenerationContext context) {
 		printer.setSourceNode(n);
 		printer.print("for (");
-		n.getVariable().accept(this, context);
-		printer.print(" in ");
-		n.getIterable().accept(this, context);
+		if (isIteratedByIndex(n, context)) {
+			printIndexLoopHeader(n, context);
+		} else {
+			n.getVariable().accept(this, context);
+			printer.print(" in ");
+			n.getIterable().accept(this, context);
+		}
 		printer.print(") ");
 
 		printer.addSouceMapping(context);
@@ -347,7 +420,7 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		if (!hasBlockBody) {
 			printer.printLn("{");
 			printer.indent();
-			generateArrayHasOwnProperty(n, context);
+			printForeachPrologue(n, context);
 		}
 		n.getBody().accept(this, context);
 
@@ -446,13 +519,51 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		n.getBody().accept(this, context);
 	}
 
+	/**
+	 * the local variables cannot be renamed if the file contains Javascript code (i.e. $js) that may use them
+	 * @return a {@link MinifyingNameProvider} that does not give the names used in the file for anything else than a
+	 *         local variable or a parameter
+	 */
+	private NameProvider buildMinifyingNameProvider(CompilationUnit n, GenerationContext context) {
+		final Set<String> reservedNames = new HashSet<String>();
+		final boolean[] hasJavascriptCode = new boolean[1];
+		final DefaultNameProvider defaultNames = new DefaultNameProvider();
+		n.accept(new ForEachNodeVisitor<GenerationContext>() {
+			@Override
+			protected void before(Node node, GenerationContext arg) {
+				if (node instanceof NameExpr) {
+					reservedNames.add(((NameExpr) node).getName());
+				} else if (node instanceof MethodCallExpr) {
+					reservedNames.add(((MethodCallExpr) node).getName());
+					MethodWrapper method = resolvedMethod(node);
+					Template template = method == null ? null : method.getAnnotation(Template.class);
+					hasJavascriptCode[0] |= template != null && JAVASCRIPT_CODE_TEMPLATE.equals(template.value());
+				} else if (node instanceof ClassOrInterfaceType) {
+					reservedNames.add(((ClassOrInterfaceType) node).getName());
+				}
+				TypeWrapper type = node.getData() == null ? null : resolvedType(node);
+				if (type instanceof ClassWrapper) {
+					// the first part of the namespace
+					reservedNames.add(defaultNames.getTypeName(type).split("\\.")[0]);
+				}
+			}
+		}, context);
+		return hasJavascriptCode[0] ? defaultNames : new MinifyingNameProvider(reservedNames);
+	}
+
+	private String variableName(Node n, String name) {
+		VariableWithScope var = scope(n) == null ? null : scope(n).resolveVariable(name);
+		return var == null ? name : names.getVariableName(var);
+	}
+
 	@Override
 	public void visit(VariableDeclaratorId n, GenerationContext context) {
-		if (parent(n) instanceof Parameter && n.getName().equals(GeneratorConstants.ARGUMENTS_PARAMETER)) {
+		String name = variableName(n, n.getName());
+		if (parent(n) instanceof Parameter && name.equals(GeneratorConstants.ARGUMENTS_PARAMETER)) {
 			// add an "_" for the arguments parameter to no override to arguments one.
 			printer.print("_");
 		}
-		printer.print(n.getName());
+		printer.print(name);
 	}
 
 	@Override
@@ -469,8 +580,24 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 			}
 		} else {
 			printer.print(EQUALS);
-			n.getInit().accept(this, context);
+			if (!printConstant(n.getInit())) {
+				n.getInit().accept(this, context);
+			}
+		}
+	}
+
+	/**
+	 * prints the value of the expression if it's a constant that was folded (see
+	 * {@link org.stjs.generator.visitor.ConstantFoldingVisitor})
+	 * @return true if the value was printed
+	 */
+	private boolean printConstant(Expression n) {
+		Object value = constantValue(n);
+		if (value == null) {
+			return false;
 		}
+		printer.printConstant(value);
+		return true;
 	}
 
 	@Override
@@ -505,7 +632,7 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 	}
 
 	private void printJavadoc(JavadocComment javadoc, GenerationContext context) {
-		if (javadoc != null) {
+		if (javadoc != null && !context.getConfiguration().isMinify()) {
 			javadoc.accept(this, context);
 		}
 	}
@@ -688,6 +815,16 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 			}
 
 			// special construction to handle the inline body
+			List<String> capturedVariables = Collections.emptyList();
+			AnonymousClassCaptures captures = null;
+			if (context.getConfiguration().isHoistAnonymousClasses()) {
+				captures = AnonymousClassCaptures.find(n);
+			}
+			if (captures != null) {
+				hoistedAnonymousClasses.put((ClassWrapper) resolvedType(n), captures);
+				capturedVariablesByMethodBody.putAll(captures.getVariablesByMethodBody());
+				capturedVariables = variableNames(captures.getVariables());
+			}
 			printer.print("new ");
 			ClassOrInterfaceDeclaration inlineFakeClass =
 					buildClassDeclaration(GeneratorConstants.SPECIAL_INLINE_TYPE, n.getType(),
@@ -695,7 +832,7 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 			inlineFakeClass.setData(n.getData());
 			inlineFakeClass.accept(this, context);
 
-			printArguments(n.getArgs(), context);
+			printArguments(capturedVariables, n.getArgs(), Collections.<String> emptyList(), context);
 			return;
 		}
 
@@ -722,8 +859,26 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 				resolvedType(parent(n)), false, false);
 	}
 
+	private List<String> variableNames(List<VariableWithScope> variables) {
+		List<String> variableNames = new ArrayList<String>(variables.size());
+		for (VariableWithScope var : variables) {
+			variableNames.add(names.getVariableName(var));
+		}
+		return variableNames;
+	}
+
 	private void addCallToSuper(ClassScope classScope, GenerationContext context, Collection<Expression> args,
 			boolean apply) {
+		addCallToSuper(classScope, context, args, apply, 0);
+	}
+
+	/**
+	 * @param skippedArguments
+	 *            when the arguments are passed with apply, the number of arguments of the constructor that are not
+	 *            passed to the super class
+	 */
+	private void addCallToSuper(ClassScope classScope, GenerationContext context, Collection<Expression> args,
+			boolean apply, int skippedArguments) {
 		PreConditions.checkNotNull(classScope);
 
 		Option<ClassWrapper> superClass = classScope.getClazz().getSuperclass();
@@ -739,7 +894,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 				return;
 			}
 			printer.print(names.getTypeName(superClass.getOrThrow()));
-			if (apply) {
+			if (apply && skippedArguments > 0) {
+				printer.print(".apply(this, Array.prototype.slice.call(arguments, " + skippedArguments + "))");
+			} else if (apply) {
 				printer.print(".apply(this, arguments)");
 			} else {
 				printer.print(".call");
@@ -782,6 +939,12 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		if (superClass.isDefined() && !ClassUtils.isSyntheticType(superClass.getOrThrow())) {
 			printCallToSuper(n);
 		}
+		if (context.getConfiguration().isInitializeFieldsInConstructor() && parent(n) instanceof TypeDeclaration) {
+			if (n.getBlock().getStmts() == null) {
+				n.getBlock().setStmts(new ArrayList<Statement>());
+			}
+			classMembersByConstructorBody.put(n.getBlock(), ((TypeDeclaration) parent(n)).getMembers());
+		}
 		ClassWrapper type = (ClassWrapper) resolvedType(parent(n));
 		printMethod(type.getSimpleBinaryName(), n.getParameters(), n.getModifiers(), n.getBlock(), context, type, true,
 				type.isInnerType() || type.isAnonymousClass());
@@ -888,8 +1051,13 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		String className = null;
 		if (type.isAnonymousClass()) {
 			printer.print("(");
+			if (hoistedAnonymousClasses.containsKey(type)) {
+				// the class is defined the first time the expression is evaluated
+				String holder = getHoistedClassHolder(type);
+				printer.print(holder).print(" || (").print(holder).print(EQUALS);
+			}
 		} else {
-			if (!type.isInnerType() && namespace == null) {
+			if (!type.isInnerType() && namespace == null && !isLazilyDefined(type, context)) {
 				printer.print("var ");
 			}
 			className = names.getTypeName(type);
@@ -921,6 +1089,11 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		ClassWrapper type = (ClassWrapper) resolvedType(n);
 		String namespace = printNamespace(type);
 
+		boolean lazy = isLazilyDefined(type, context);
+		if (lazy) {
+			printer.print("stjs.lazy(\"").print(names.getTypeName(type)).printLn("\", function(){");
+			printer.indent();
+		}
 		printTypeName(n, context, namespace);
 
 		printer.print("stjs.extend(");
@@ -943,17 +1116,121 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		printer.print(")");
 
 		if (type.isAnonymousClass()) {
-			printer.print(")");
+			printer.print(hoistedAnonymousClasses.containsKey(type) ? "))" : ")");
 		} else {
 			printer.printLn(";");
+			if (context.getConfiguration().isGenerateJsonDeserializers() && hasJsonDeserializer(n, type)) {
+				printJsonDeserializer(type);
+			}
 			if (!type.isInnerType()) {
 				printGlobals(filterGlobals(n, type), context);
 				printStaticInitializers(n, context);
+				if (lazy) {
+					printer.unindent();
+					printer.printLn("});");
+				}
 				printMainMethodCall(n, type);
 			}
 		}
 	}
 
+	/**
+	 * @return true if the type is defined the first time it's used (see
+	 *         {@link org.stjs.generator.GeneratorConfiguration#isLazyClassInitialization()}). The global scope types
+	 *         are always defined at once, as their members are global variables and functions.
+	 */
+	private boolean isLazilyDefined(ClassWrapper type, GenerationContext context) {
+		return context.getConfiguration().isLazyClassInitialization() && !type.isInnerType()
+				&& !type.isAnonymousClass() && !type.getClazz().isLocalClass() && !isGlobal(type);
+	}
+
+	/**
+	 * @return the property of the top-level class where the given anonymous class is kept once it's defined
+	 */
+	private String getHoistedClassHolder(ClassWrapper anonymousType) {
+		Class<?> topLevelClass = anonymousType.getClazz();
+		while (topLevelClass.getEnclosingClass() != null) {
+			topLevelClass = topLevelClass.getEnclosingClass();
+		}
+		String suffix = anonymousType.getClazz().getName().substring(topLevelClass.getName().length());
+		return names.getTypeName(TypeWrappers.wrap(topLevelClass)) + ".$anonymous" + suffix;
+	}
+
+	private boolean hasJsonDeserializer(ClassOrInterfaceDeclaration n, ClassWrapper type) {
+		return !n.isInterface() && !type.hasAnonymousDeclaringClass() && !type.getClazz().isLocalClass()
+				&& !isGlobal(type);
+	}
+
+	/**
+	 * prints the function that builds an instance of the class from an object returned by JSON.parse (it's called by
+	 * stjs.parseJSON). The fields that are not strings, numbers or booleans are converted using the $typeDescription
+	 * of the class. The function assigns only the fields declared by the class: the inherited ones are assigned by the
+	 * deserializer of the generated super class, which receives the instance being built. This way a change in the
+	 * private fields of a super class does not require its subclasses to be generated again.
+	 */
+	private void printJsonDeserializer(ClassWrapper type) {
+		String className = names.getTypeName(type);
+		printer.print(className).printLn(".$fromJSON = function(json, o) {");
+		printer.indent();
+		printer.print("o = o || new ").print(className).printLn("();");
+		printer.print("var d = ").print(className).printLn(".$typeDescription;");
+		Class<?> superClass = getGeneratedSuperClass(type.getClazz());
+		if (superClass != null) {
+			String superClassName = names.getTypeName(TypeWrappers.wrap(superClass));
+			// the super class may come from a library generated without deserializers
+			printer.print("if (").print(superClassName).print(".$fromJSON) ").print(superClassName)
+					.printLn(".$fromJSON(json, o);");
+			printer.print("else stjs.jsonFill(json, o, ").print(superClassName).printLn(".$typeDescription);");
+		}
+		for (Field field : getJsonFields(type.getClazz())) {
+			String name = field.getName();
+			printer.print("if (json.").print(name).print(" !== undefined) o.").print(name).print(EQUALS);
+			if (ClassUtils.isBasicType(TypeWrappers.wrap(field.getGenericType()))) {
+				printer.print("json.").print(name);
+			} else {
+				printer.print("stjs.jsonConvert(json.").print(name).print(", d.").print(name).print(")");
+			}
+			printer.printLn(";");
+		}
+		printer.printLn("return o;");
+		printer.unindent();
+		printer.printLn("};");
+	}
+
+	/**
+	 * @return the closest super class that is generated (i.e. not a bridge), or null if there is none
+	 */
+	private static Class<?> getGeneratedSuperClass(Class<?> clazz) {
+		for (Class<?> c = clazz.getSuperclass(); c != null && c != Object.class; c = c.getSuperclass()) {
+			if (!ClassUtils.isBridge(c)) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the instance fields of the given class and of its bridge super classes (the ones of the super classes
+	 *         first), up to the closest generated super class, whose fields are assigned by its own deserializer
+	 */
+	private static Collection<Field> getJsonFields(Class<?> clazz) {
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		hierarchy.add(clazz);
+		for (Class<?> c = clazz.getSuperclass(); c != null && c != Object.class && ClassUtils.isBridge(c); c = c
+				.getSuperclass()) {
+			hierarchy.add(0, c);
+		}
+		Map<String, Field> fields = new LinkedHashMap<String, Field>();
+		for (Class<?> c : hierarchy) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers()) && !field.isSynthetic()) {
+					fields.put(field.getName(), field);
+				}
+			}
+		}
+		return fields.values();
+	}
+
 	private boolean isTypeOrStaticMember(BodyDeclaration decl) {
 		return isClassOrInterface(decl) || isEnum(decl) || isStaticField(decl) || isStaticMethod(decl);
 	}
@@ -981,8 +1258,26 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 				printer.print(" ");
 				printer.print(type.getSimpleBinaryName());
 			}
-			printer.print("(){");
-			addCallToSuper(scope, context, Collections.<Expression> emptyList(), inlineType);
+			AnonymousClassCaptures captures = hoistedAnonymousClasses.get(type);
+			if (captures == null || captures.getVariables().isEmpty()) {
+				printer.print("(){");
+				addCallToSuper(scope, context, Collections.<Expression> emptyList(), inlineType);
+			} else {
+				// the variables used by the class come before the arguments of the super class' constructor
+				List<String> capturedVariables = variableNames(captures.getVariables());
+				printer.print("(").printList(capturedVariables).print("){");
+				for (int i = 0; i < capturedVariables.size(); ++i) {
+					printer.print("this.").print(AnonymousClassCaptures.getPropertyName(captures.getVariables().get(i)))
+							.print(EQUALS).print(capturedVariables.get(i)).print(";");
+				}
+				addCallToSuper(scope, context, Collections.<Expression> emptyList(), inlineType,
+						capturedVariables.size());
+			}
+			if (context.getConfiguration().isInitializeFieldsInConstructor()) {
+				for (VariableDeclarator field : getInstanceFields(n.getMembers())) {
+					printInstanceFieldInitialization(field, context);
+				}
+			}
 			printer.print("}");
 		} else {
 			constr.accept(this, context);
@@ -1101,10 +1396,13 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		// the following members must not appear in the initializer function:
 		// - constructors (they are printed elsewhere)
 		// - abstract methods (they should be omitted)
+		// - instance fields, if they are initialized in the constructor
 
 		List<BodyDeclaration> nonConstructors = new ArrayList<BodyDeclaration>();
+		boolean fieldsInConstructor = context.getConfiguration().isInitializeFieldsInConstructor();
 		for (BodyDeclaration member : members) {
-			if (!isConstructor(member) && !isAbstractInstanceMethod(member)) {
+			if (!isConstructor(member) && !isAbstractInstanceMethod(member)
+					&& !(fieldsInConstructor && isInstanceField(member))) {
 				nonConstructors.add(member);
 			}
 		}
@@ -1331,6 +1629,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(BinaryExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		TypeWrapper leftType = ASTNodeData.resolvedType(n.getLeft());
 		TypeWrapper rightType = ASTNodeData.resolvedType(n.getRight());
 		boolean integerDivision =
@@ -1359,6 +1660,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(ConditionalExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		n.getCondition().accept(this, context);
 		printer.print(" ? ");
 		n.getThenExpr().accept(this, context);
@@ -1368,6 +1672,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(EnclosedExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		printer.print("(");
 		n.getInner().accept(this, context);
 		printer.print(")");
@@ -1375,14 +1682,34 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(InstanceOfExpr n, GenerationContext context) {
+		TypeWrapper type = scope(n).resolveType(((ReferenceType) n.getType()).getType().toString()).getType();
+		if (isGeneratedClass(type)) {
+			// the prototype chain of the generated classes follows the Java class hierarchy
+			n.getExpr().accept(this, context);
+			printer.print(" instanceof ");
+			printer.print(names.getTypeName(type));
+			return;
+		}
 		printer.print("stjs.isInstanceOf(");
 		n.getExpr().accept(this, context);
 		printer.print(".constructor,");
-		TypeWrapper type = scope(n).resolveType(((ReferenceType) n.getType()).getType().toString()).getType();
 		printer.print(names.getTypeName(type));
 		printer.print(")");
 	}
 
+	/**
+	 * @return true if the type is a class (not an interface nor an enum) whose constructor is generated by stjs.extend.
+	 *         The bridges may stand for Javascript types (like String) whose values are not objects.
+	 */
+	private boolean isGeneratedClass(TypeWrapper type) {
+		if (!(type instanceof ClassWrapper)) {
+			return false;
+		}
+		Class<?> clazz = ((ClassWrapper) type).getClazz();
+		return !clazz.isInterface() && !clazz.isEnum() && !ClassUtils.isBridge(clazz)
+				&& !ClassUtils.isSyntheticType(clazz) && !isGlobal(type);
+	}
+
 	@Override
 	public void visit(IntegerLiteralMinValueExpr n, GenerationContext context) {
 		printer.print(n.getValue());
@@ -1400,6 +1727,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(FieldAccessExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		boolean withScopeSuper = n.getScope() != null && n.getScope().toString().equals(GeneratorConstants.SUPER);
 		if (!withScopeSuper) {
 			n.getScope().accept(this, context);
@@ -1423,6 +1753,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 			// already handled by a special handler
 			return;
 		}
+		if (printInlinedCall(n, context)) {
+			return;
+		}
 		MethodWrapper method = resolvedMethod(n);
 		TypeWrapper methodDeclaringClass = method.getOwnerType();
 		if (Modifier.isStatic(method.getModifiers())) {
@@ -1457,6 +1790,86 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	}
 
+	/**
+	 * prints the body of the method instead of the call, if the call was inlined (see
+	 * {@link org.stjs.generator.visitor.MethodInliningVisitor})
+	 * @return true if the body was printed
+	 */
+	private boolean printInlinedCall(MethodCallExpr n, GenerationContext context) {
+		MethodDeclaration method = inlinedMethod(n);
+		if (method == null) {
+			return false;
+		}
+		Map<String, Expression> arguments = new HashMap<String, Expression>();
+		if (method.getParameters() != null) {
+			for (int i = 0; i < method.getParameters().size(); ++i) {
+				arguments.put(method.getParameters().get(i).getId().getName(), n.getArgs().get(i));
+			}
+		}
+		Expression target = n.getScope() instanceof ThisExpr ? null : n.getScope();
+
+		Expression previousTarget = inlinedTarget;
+		Map<String, Expression> previousArguments = inlinedArguments;
+		inlinedTarget = target;
+		inlinedArguments = arguments;
+		try {
+			Statement stmt = method.getBody().getStmts().get(0);
+			if (stmt instanceof ReturnStmt) {
+				Expression expr = ((ReturnStmt) stmt).getExpr();
+				boolean enclose = !isPrimary(expr);
+				if (enclose) {
+					printer.print("(");
+				}
+				expr.accept(this, context);
+				if (enclose) {
+					printer.print(")");
+				}
+			} else {
+				// a setter
+				((ExpressionStmt) stmt).getExpression().accept(this, context);
+			}
+		}
+		finally {
+			inlinedTarget = previousTarget;
+			inlinedArguments = previousArguments;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the expression doesn't need parentheses to be used as an operand. The inlined calls add their own
+	 *         parentheses if needed.
+	 */
+	private boolean isPrimary(Expression n) {
+		return n instanceof LiteralExpr && !(n instanceof IntegerLiteralMinValueExpr)
+				&& !(n instanceof LongLiteralMinValueExpr) || n instanceof NameExpr || n instanceof FieldAccessExpr
+				|| n instanceof ThisExpr || n instanceof EnclosedExpr || n instanceof MethodCallExpr;
+	}
+
+	/**
+	 * prints an argument or the target of an inlined call, as it would be printed by the caller
+	 */
+	private void printInlinedExpression(Expression n, GenerationContext context) {
+		Expression previousTarget = inlinedTarget;
+		Map<String, Expression> previousArguments = inlinedArguments;
+		inlinedTarget = null;
+		inlinedArguments = null;
+		try {
+			boolean enclose = !isPrimary(n);
+			if (enclose) {
+				printer.print("(");
+			}
+			n.accept(this, context);
+			if (enclose) {
+				printer.print(")");
+			}
+		}
+		finally {
+			inlinedTarget = previousTarget;
+			inlinedArguments = previousArguments;
+		}
+	}
+
 	private void printStaticFieldOrMethodAccessPrefix(TypeWrapper type, boolean addDot) {
 		if (!isGlobal(type)) {
 			printer.print(names.getTypeName(type));
@@ -1478,6 +1891,28 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		return decl instanceof MethodDeclaration && isStatic(((MethodDeclaration) decl).getModifiers());
 	}
 
+	private boolean isInstanceField(BodyDeclaration decl) {
+		return decl instanceof FieldDeclaration && !isStatic(((FieldDeclaration) decl).getModifiers());
+	}
+
+	private List<VariableDeclarator> getInstanceFields(List<BodyDeclaration> members) {
+		List<VariableDeclarator> fields = new ArrayList<VariableDeclarator>();
+		if (members != null) {
+			for (BodyDeclaration member : members) {
+				if (isInstanceField(member)) {
+					fields.addAll(((FieldDeclaration) member).getVariables());
+				}
+			}
+		}
+		return fields;
+	}
+
+	private void printInstanceFieldInitialization(VariableDeclarator field, GenerationContext context) {
+		printer.print("this.");
+		printVariableDeclarator(field, context, true);
+		printer.print(";");
+	}
+
 	private boolean isAbstractInstanceMethod(BodyDeclaration decl) {
 		return decl instanceof MethodDeclaration && !isStatic(((MethodDeclaration) decl).getModifiers())
 				&& isAbstract(((MethodDeclaration) decl).getModifiers());
@@ -1495,9 +1930,12 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		return decl instanceof EnumDeclaration;
 	}
 
-	private void visitField(FieldWrapper field, NameExpr n) {
+	private void visitField(FieldWrapper field, NameExpr n, GenerationContext context) {
 		if (Modifier.isStatic(field.getModifiers())) {
 			printStaticFieldOrMethodAccessPrefix(field.getOwnerType(), true);
+		} else if (inlinedTarget != null) {
+			printInlinedExpression(inlinedTarget, context);
+			printer.print(".");
 		} else if (!isInlineObjectCreationChild(n, INLINE_CREATION_PARENT_LEVEL)) {
 			printer.print("this.");
 		}
@@ -1505,11 +1943,18 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(NameExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		if (GeneratorConstants.SPECIAL_THIS.equals(n.getName())) {
 			printer.print(GeneratorConstants.THIS);
 			return;
 		}
 		Variable var = resolvedVariable(n);
+		if (var instanceof ParameterVariable && inlinedArguments != null && inlinedArguments.containsKey(n.getName())) {
+			printInlinedExpression(inlinedArguments.get(n.getName()), context);
+			return;
+		}
 		if (var == null) {
 			if (!(parent(n) instanceof SwitchEntryStmt)) {
 				TypeWrapper type = resolvedType(n);
@@ -1520,7 +1965,10 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 			}
 		} else {
 			if (var instanceof FieldWrapper) {
-				visitField((FieldWrapper) var, n);
+				visitField((FieldWrapper) var, n, context);
+			} else {
+				printer.print(variableName(n, n.getName()));
+				return;
 			}
 		}
 
@@ -1536,6 +1984,10 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 
 	@Override
 	public void visit(ThisExpr n, GenerationContext context) {
+		if (n.getClassExpr() == null && inlinedTarget != null) {
+			printInlinedExpression(inlinedTarget, context);
+			return;
+		}
 		if (n.getClassExpr() != null) {
 			n.getClassExpr().accept(this, context);
 			printer.print(".");
@@ -1551,6 +2003,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 	@Override
 	@SuppressWarnings("PMD.CyclomaticComplexity")
 	public void visit(UnaryExpr n, GenerationContext context) {
+		if (printConstant(n)) {
+			return;
+		}
 		switch (n.getOperator()) {
 			case positive:
 				printer.print("+");
@@ -1636,6 +2091,84 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 				"Only assign expression are allowed in an object creation block");
 	}
 
+	private boolean isIteratedByIndex(ForeachStmt n, GenerationContext context) {
+		return context.getConfiguration().isIterateArraysByIndex()
+				&& TypeWrappers.wrap(Array.class).isAssignableFrom(resolvedType(n.getIterable()));
+	}
+
+	/**
+	 * prints <code>var i = 0, i$length = array.length; i < i$length; ++i</code> if the loop variable is only used as
+	 * an index in the array (or map), otherwise the loop is done on i$index and the loop variable i is declared in the
+	 * body of the loop with the index as string (see {@link #printForeachPrologue(ForeachStmt, GenerationContext)}). An
+	 * iterated expression that is not a simple name is evaluated once in i$array.
+	 */
+	private void printIndexLoopHeader(ForeachStmt n, GenerationContext context) {
+		String var = getLoopVariableName(n);
+		String index = isUsedOnlyAsIndex(n) ? var : var + "$index";
+		String length = var + "$length";
+		printer.print("var ").print(index).print(" = 0, ");
+		if (n.getIterable() instanceof NameExpr) {
+			printer.print(length).print(EQUALS);
+			n.getIterable().accept(this, context);
+		} else {
+			String array = var + "$array";
+			printer.print(array).print(EQUALS);
+			n.getIterable().accept(this, context);
+			printer.print(", ").print(length).print(EQUALS).print(array);
+		}
+		printer.print(".length; ").print(index).print(" < ").print(length).print("; ++").print(index);
+	}
+
+	private String getLoopVariableName(ForeachStmt n) {
+		VariableDeclaratorId id = n.getVariable().getVars().get(0).getId();
+		return variableName(id, id.getName());
+	}
+
+	/**
+	 * @return true if the variable of the given loop is only used as the index given to $get or $set
+	 */
+	private boolean isUsedOnlyAsIndex(ForeachStmt n) {
+		VariableDeclaratorId id = n.getVariable().getVars().get(0).getId();
+		VariableWithScope var = scope(id) == null ? null : scope(id).resolveVariable(id.getName());
+		if (var == null) {
+			return false;
+		}
+		final Variable loopVariable = var.getVariable();
+		final boolean[] onlyIndex = { true };
+		n.getBody().accept(new ForEachNodeVisitor<Void>() {
+			@Override
+			protected void before(Node node, Void arg) {
+				if (node instanceof NameExpr && resolvedVariable(node) == loopVariable && !isIndex((NameExpr) node)) {
+					onlyIndex[0] = false;
+				}
+			}
+		}, null);
+		return onlyIndex[0];
+	}
+
+	private boolean isIndex(NameExpr n) {
+		if (!(parent(n) instanceof MethodCallExpr)) {
+			return false;
+		}
+		MethodCallExpr call = (MethodCallExpr) parent(n);
+		MethodWrapper method = resolvedMethod(call);
+		Template template = method == null ? null : method.getAnnotation(Template.class);
+		return template != null && INDEX_TEMPLATES.contains(template.value()) && call.getArgs().get(0) == n;
+	}
+
+	/**
+	 * the statement added at the beginning of the body of a for-each loop: the check that the key belongs to the array
+	 * for a for-in loop, or the declaration of the loop variable when the loop is done on a separate index.
+	 */
+	private void printForeachPrologue(ForeachStmt n, GenerationContext context) {
+		if (!isIteratedByIndex(n, context)) {
+			generateArrayHasOwnProperty(n, context);
+		} else if (!isUsedOnlyAsIndex(n)) {
+			String var = getLoopVariableName(n);
+			printer.print("var ").print(var).print(" = \"\" + ").print(var).printLn("$index;");
+		}
+	}
+
 	private void generateArrayHasOwnProperty(ForeachStmt n, GenerationContext context) {
 		if (!context.getConfiguration().isGenerateArrayHasOwnProperty()) {
 			return;
@@ -1649,19 +2182,58 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 		printer.print("if (!(");
 		n.getIterable().accept(this, context);
 		printer.print(").hasOwnProperty(");
-		printer.print(n.getVariable().getVars().get(0).getId().getName());
+		n.getVariable().getVars().get(0).getId().accept(this, context);
 		printer.printLn(")) continue;");
 	}
 
+	/**
+	 * @return the position of the statement of the given block before which the instance fields are initialized, i.e.
+	 *         after the call to the super class' constructor, or -1 if the block is not a constructor that initializes
+	 *         the fields
+	 */
+	private int getFieldsPosition(BlockStmt block) {
+		if (!classMembersByConstructorBody.containsKey(block)) {
+			return -1;
+		}
+		List<Statement> stmts = block.getStmts();
+		return !stmts.isEmpty() && stmts.get(0) instanceof ExplicitConstructorInvocationStmt ? 1 : 0;
+	}
+
+	private void printInstanceFields(BlockStmt constructorBody, GenerationContext context) {
+		for (VariableDeclarator field : getInstanceFields(classMembersByConstructorBody.get(constructorBody))) {
+			printInstanceFieldInitialization(field, context);
+			printer.printLn();
+		}
+	}
+
+	/**
+	 * the methods of a hoisted anonymous class copy the variables they use from the properties set by the constructor
+	 */
+	private void printCapturedVariables(BlockStmt methodBody) {
+		List<VariableWithScope> capturedVariables = capturedVariablesByMethodBody.get(methodBody);
+		if (capturedVariables == null) {
+			return;
+		}
+		for (VariableWithScope var : capturedVariables) {
+			printer.print("var ").print(names.getVariableName(var)).print(EQUALS).print("this.")
+					.print(AnonymousClassCaptures.getPropertyName(var)).printLn(";");
+		}
+	}
+
 	@Override
 	public void visit(BlockStmt n, GenerationContext context) {
 		printer.printLn("{");
 		if (n.getStmts() != null) {
 			printer.indent();
 			if (parent(n) instanceof ForeachStmt) {
-				generateArrayHasOwnProperty((ForeachStmt) parent(n), context);
+				printForeachPrologue((ForeachStmt) parent(n), context);
 			}
+			printCapturedVariables(n);
+			int fieldsPosition = getFieldsPosition(n);
 			for (int i = 0; i < n.getStmts().size(); ++i) {
+				if (i == fieldsPosition) {
+					printInstanceFields(n, context);
+				}
 				Statement s = n.getStmts().get(i);
 				printComments(s, context);
 				if (isInlineObjectCreationChild(s, 1)) {
@@ -1675,6 +2247,9 @@ public class JavascriptWriterVisitor implements VoidVisitor<GenerationContext> {
 				}
 				printer.printLn();
 			}
+			if (fieldsPosition == n.getStmts().size()) {
+				printInstanceFields(n, context);
+			}
 			printer.unindent();
 		}
 		printer.print("}");
@@ -20,10 +20,12 @@ import japa.parser.ast.expr.MethodCallExpr;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
 
 import org.stjs.generator.GenerationContext;
 import org.stjs.generator.JavascriptFileGenerationException;
@@ -41,25 +43,47 @@ import com.google.common.io.Closeables;
  */
 public class MethodCallTemplates {
 	private static final String STJS_TEMPLATES_CONFIG_FILE = "META-INF/stjs.templates";
-	private final Map<String, MethodCallTemplate> methodTemplates = new HashMap<String, MethodCallTemplate>();
+
+	/**
+	 * the templates are stateless, so they are loaded only once for a given class loader. The configuration files
+	 * are not read again for each generated class
+	 */
+	private static final Map<ClassLoader, Map<String, MethodCallTemplate>> TEMPLATES_BY_CLASS_LOADER =
+			new WeakHashMap<ClassLoader, Map<String, MethodCallTemplate>>();
+
+	private final Map<String, MethodCallTemplate> methodTemplates;
 
 	public MethodCallTemplates() {
 
 		// methodHandlers.put("java.lang.String.length", methodToPropertyHandler);
 
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		synchronized (TEMPLATES_BY_CLASS_LOADER) {
+			Map<String, MethodCallTemplate> templates = TEMPLATES_BY_CLASS_LOADER.get(classLoader);
+			if (templates == null) {
+				templates = loadTemplates(classLoader);
+				TEMPLATES_BY_CLASS_LOADER.put(classLoader, templates);
+			}
+			methodTemplates = templates;
+		}
+	}
+
+	private static Map<String, MethodCallTemplate> loadTemplates(ClassLoader classLoader) {
+		Map<String, MethodCallTemplate> templates = new HashMap<String, MethodCallTemplate>();
 		Enumeration<URL> configFiles;
 		try {
-			configFiles = Thread.currentThread().getContextClassLoader().getResources(STJS_TEMPLATES_CONFIG_FILE);
+			configFiles = classLoader.getResources(STJS_TEMPLATES_CONFIG_FILE);
 		}
 		catch (IOException e) {
 			throw new STJSRuntimeException(e);
 		}
 		while (configFiles.hasMoreElements()) {
-			loadConfigFile(configFiles.nextElement());
+			loadConfigFile(configFiles.nextElement(), templates);
 		}
+		return Collections.unmodifiableMap(templates);
 	}
 
-	private void loadConfigFile(URL configFile) {
+	private static void loadConfigFile(URL configFile, Map<String, MethodCallTemplate> methodTemplates) {
 		InputStream input = null;
 		try {
 			input = configFile.openStream();
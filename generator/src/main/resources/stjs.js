@@ -239,7 +239,9 @@ Boolean.valueOf=function(value){
 var stjs={};
 
 stjs.global=this;
-stjs.skipCopy = {"prototype":true, "constructor": true, "$typeDescription":true, "$inherit" : true};
+stjs.skipCopy = {"prototype":true, "constructor": true, "$typeDescription":true, "$inherit" : true, "$typeId" : true, "$ancestors" : true, "$fromJSON" : true};
+// the anonymous classes hoisted in a class (Outer.$anonymous$1) belong only to that class, not to its subclasses
+stjs.skipCopyPrefix = "$anonymous$";
 
 stjs.ns=function(path){
 	var p = path.split(".");
@@ -253,7 +255,7 @@ stjs.ns=function(path){
 
 stjs.copyProps=function(from, to){
 	for(key in from){
-		if (!stjs.skipCopy[key])
+		if (!stjs.skipCopy[key] && key.indexOf(stjs.skipCopyPrefix) !== 0)
 			to[key]	= from[key];
 	}
 	return to;
@@ -268,6 +270,10 @@ stjs.extend=function(_constructor, _super, _implements, _initializer, _typeDescr
 
 	_constructor.$inherit=[];
 	var key, a;
+	// the ids of the type itself, of its super class and of all the interfaces it implements (see stjs.isInstanceOf)
+	var ancestors = {};
+	_constructor.$typeId = ++stjs.lastTypeId;
+	ancestors[_constructor.$typeId] = true;
 	if(_super != null){
 		// I is used as a no-op constructor that has the same prototype as _super
 		// we do this because we cannot predict the result of calling new _super()
@@ -285,13 +291,16 @@ stjs.extend=function(_constructor, _super, _implements, _initializer, _typeDescr
 
 		//add the super class to inherit array
 		_constructor.$inherit.push(_super);
+		stjs.addAncestors(_super, ancestors);
 	}
 
 	// copy static properties for interfaces
 	for(a = 0; a < _implements.length; ++a){
 		stjs.copyProps(_implements[a], _constructor);
 		_constructor.$inherit.push(_implements[a]);
+		stjs.addAncestors(_implements[a], ancestors);
 	}
+	_constructor.$ancestors = Object.freeze ? Object.freeze(ancestors) : ancestors;
 
 	// remember the correct constructor
 	_constructor.prototype.constructor	= _constructor;
@@ -341,12 +350,53 @@ stjs.extend12=function( _constructor,  _super, _implements){
 	return	_constructor;
 };
 
+stjs.lastTypeId = 0;
+
 /**
- * checks if the child is an instanceof parent. it checks recursively if "parent" is the child itself or it's found somewhere in the $inherit array
+ * registers the type with the given name (with its namespace) to be defined by the given function the first time it
+ * is used: when an instance is created, a static member is accessed or it's checked with instanceof. Before the
+ * function is called, the getter is replaced by a plain property, so the type can use itself while it's defined (like a
+ * class being initialized in Java). If the getter cannot be defined, the type is defined at once.
+ */
+stjs.lazy=function(name, define){
+	var pos = name.lastIndexOf(".");
+	var parent = pos < 0 ? stjs.global : stjs.ns(name.substring(0, pos));
+	var property = name.substring(pos + 1);
+	var replace = function(value){
+		Object.defineProperty(parent, property, {value : value, writable : true, configurable : true, enumerable : true});
+	};
+	try {
+		Object.defineProperty(parent, property, {
+			configurable : true,
+			enumerable : true,
+			get : function(){
+				replace(undefined);
+				define();
+				return parent[property];
+			},
+			set : replace
+		});
+	} catch (e) {
+		// no ES5 getters (or a non configurable global variable)
+		define();
+	}
+};
+
+stjs.addAncestors=function(parent, ancestors){
+	for(var id in parent.$ancestors){
+		ancestors[id] = true;
+	}
+};
+
+/**
+ * checks if the child is an instanceof parent. For the types built by stjs.extend it looks up the parent in the ancestors
+ * of the child, otherwise it checks recursively if "parent" is the child itself or it's found somewhere in the $inherit array
  */
 stjs.isInstanceOf=function(child, parent){
 	if (child === parent)
 		return true;
+	if (child.$ancestors && parent.$typeId)
+		return child.$ancestors[parent.$typeId] === true;
 	if (!child.$inherit)
 		return false;
 	for(var i in child.$inherit){
@@ -423,6 +473,63 @@ stjs.converters = {
 	}
 };
 
+/**
+ * converts a value returned by JSON.parse to the given type (an entry of a $typeDescription). It is used by the
+ * $fromJSON functions generated for the classes, the classes without such a function are filled using their
+ * $typeDescription
+ */
+stjs.jsonConvert = (function () {
+	var constructors = {};
+
+	function constr(name){
+		var c = constructors[name];
+		if (!c)
+			constructors[name] = c = eval(name);
+		return c;
+	}
+
+	return function convert(value, type) {
+		if (value == null || !type)
+			return value;
+		var cv = stjs.converters[type.name || type];
+		if (cv)
+			return cv(value, type);
+		var i, result;
+		if (type.name == "Array") {
+			result = [];
+			for (i = 0; i < value.length; ++i)
+				result[i] = convert(value[i], type.arguments[0]);
+			return result;
+		}
+		if (type.name == "Map") {
+			result = {};
+			for (i in value)
+				if (value.hasOwnProperty(i))
+					result[i] = convert(value[i], type.arguments[1]);
+			return result;
+		}
+		var c = typeof type == "function" ? type : constr(type.name || type);
+		if (c.$fromJSON)
+			return c.$fromJSON(value);
+		if (typeof value != "object")
+			//hopefully the type has a string constructor
+			return new c(value);
+		return stjs.jsonFill(value, new c(), c.$typeDescription);
+	};
+})();
+
+/**
+ * assigns to the given object all the properties of a value returned by JSON.parse, converted using the given
+ * $typeDescription. It is used for the classes without a $fromJSON function.
+ */
+stjs.jsonFill = function(value, result, typeDescription) {
+	var d = typeDescription || {};
+	for (var i in value)
+		if (value.hasOwnProperty(i))
+			result[i] = stjs.jsonConvert(value[i], d[i]);
+	return result;
+};
+
 /** *********** global ************** */
 function exception(err){
 	return err;
@@ -521,6 +628,11 @@ stjs.parseJSON = (function () {
 		  return m != null ? m[0] : null;
 	  }
 	  return function (json, type) {
+	    // the classes generated with a deserializer are built directly from the native parser's result
+	    if (type && type.$fromJSON && typeof JSON != "undefined") {
+	      var value = JSON.parse(json);
+	      return value != null && typeof value == "object" && !(value instanceof Array) ? type.$fromJSON(value) : value;
+	    }
 	    // Split into tokens
 	    // Construct the object to return
 	    var result;
@@ -0,0 +1,40 @@
+package org.stjs.generator.closure;
+
+import static org.stjs.javascript.JSCollections.$array;
+
+import org.stjs.javascript.Array;
+import org.stjs.javascript.annotation.Namespace;
+
+@Namespace("acme.closure")
+public class Closure1 {
+	public static String result;
+
+	public interface Shape {
+		public double area();
+	}
+
+	public static class Square implements Shape {
+		private double side;
+
+		public Square(double side) {
+			this.side = side;
+		}
+
+		@Override
+		public double area() {
+			return side * side;
+		}
+	}
+
+	public static void main(String[] args) {
+		Array<Shape> shapes = $array();
+		shapes.push(new Square(2));
+		shapes.push(new Square(3));
+		double total = 0;
+		for (String i : shapes) {
+			total += shapes.$get(i).area();
+		}
+		result = total + ":" + (shapes.$get(0) instanceof Square) + ":" + (shapes.$get(1) instanceof Shape) + ":"
+				+ shapes.$length();
+	}
+}
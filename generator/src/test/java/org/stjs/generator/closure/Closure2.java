@@ -0,0 +1,11 @@
+package org.stjs.generator.closure;
+
+import static org.stjs.javascript.Global.window;
+
+import org.stjs.javascript.dom.Document;
+
+public class Closure2 {
+	public Document document() {
+		return window.document;
+	}
+}
@@ -0,0 +1,31 @@
+package org.stjs.generator.closure;
+
+import static org.stjs.javascript.Global.stjs;
+
+import org.stjs.javascript.annotation.Namespace;
+
+@Namespace("acme.closure")
+public class Closure3 {
+	public static String result;
+
+	public static class Point {
+		private int x;
+		private int y;
+	}
+
+	public static class Segment {
+		private String name;
+		private Point from;
+		private Point to;
+
+		public int length() {
+			return to.x - from.x + to.y - from.y;
+		}
+	}
+
+	public static void main(String[] args) {
+		Segment segment = stjs.parseJSON("{\"name\":\"s\", \"from\":{\"x\":1, \"y\":2}, \"to\":{\"x\":4, \"y\":6}}",
+				Segment.class);
+		result = segment.name + ":" + segment.length() + ":" + (segment.from instanceof Point);
+	}
+}
@@ -0,0 +1,126 @@
+package org.stjs.generator.closure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeDoesNotContain;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.script.ScriptException;
+
+import org.junit.Test;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.executor.RhinoExecutor;
+import org.stjs.generator.utils.GeneratorTestHelper;
+import org.stjs.javascript.Global;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class ClosureOptimizerTest {
+	private static final File GENERATED_FILE = new File("target/temp-generated-js/org/stjs/generator/closure/Closure1");
+
+	private static String externs() throws IOException {
+		ExternsGenerator externs = new ExternsGenerator();
+		externs.addBridge(Global.class);
+		externs.addGeneratedType(Closure1.class);
+		StringBuilder out = new StringBuilder();
+		externs.write(out);
+		return out.toString();
+	}
+
+	@Test
+	public void testExterns() throws IOException {
+		String externs = externs();
+		assertCodeContains(externs, "var acme = {}; acme.closure = {}; acme.closure.Closure1;");
+		assertCodeContains(externs, "acme.closure.Closure1.Square;");
+		// the fields of the generated types
+		assertCodeContains(externs, "Object.prototype.side;");
+		// the global members
+		assertCodeContains(externs, "var window;");
+		assertCodeContains(externs, "function parseInt(p0, p1) {}");
+		// the bridges used by Global
+		assertCodeContains(externs, "/** @constructor */ function Window() {}");
+		assertCodeContains(externs, "Window.prototype.document;");
+		assertCodeContains(externs, "/** @constructor */ function Document() {}");
+		assertCodeDoesNotContain(externs, "function String()");
+	}
+
+	@Test
+	public void testWriteExterns() throws IOException {
+		GeneratorTestHelper.generate(Closure1.class);
+		GeneratorTestHelper.generate(Closure2.class);
+
+		File externsFile = new File("target/temp-generated-js/closure-externs.js");
+		new Generator().writeExterns(Thread.currentThread().getContextClassLoader(),
+				Arrays.asList(Closure1.class.getName(), Closure2.class.getName()), externsFile, "UTF-8");
+		String externs = Files.toString(externsFile, Charsets.UTF_8);
+		// the bridges used by the classes and the ones they use in their turn
+		assertCodeContains(externs, "var window;");
+		assertCodeContains(externs, "/** @constructor */ function Window() {}");
+		assertCodeContains(externs, "Window.prototype.document;");
+		assertCodeContains(externs, "/** @constructor */ function Document() {}");
+		assertCodeContains(externs, "Array.prototype.push = function(p0) {};");
+		// the generated classes are not declared
+		assertCodeDoesNotContain(externs, "Closure1");
+	}
+
+	@Test
+	public void testOptimize() throws IOException, ScriptException {
+		GeneratorTestHelper.generateWithSourcemap(Closure1.class);
+
+		// the result is kept by the compiler only if it's exported
+		ClosureOptimizer optimizer = new ClosureOptimizer(externs() + "acme.closure.Closure1.result;\n");
+		optimizer.addInput("org/stjs/generator/closure/Closure1.js", read(".js"), read(".map"));
+		StringBuilder sourceMap = new StringBuilder();
+		String code = optimizer.optimize("closure.min.js", sourceMap);
+
+		assertCodeDoesNotContain(code, "area");
+		assertCodeContains(sourceMap.toString(), "\"org/stjs/generator/closure/Closure1.java\"");
+
+		File optimizedFile = new File("target/temp-generated-js/closure.min.js");
+		Files.write(code, optimizedFile, Charsets.UTF_8);
+		File resultFile = new File("target/temp-generated-js/closure-result.js");
+		Files.write("acme.closure.Closure1.result", resultFile, Charsets.UTF_8);
+		Object result = new RhinoExecutor().run(Arrays.asList(optimizedFile, resultFile), false).getResult();
+		assertEquals("13:true:true:2", result);
+		assertTrue(code.length() < read(".js").length());
+	}
+
+	@Test
+	public void testOptimizeJsonDeserialization() throws IOException, ScriptException {
+		// the JSON objects keep the Java names of the fields, with or without the generated deserializers
+		assertEquals("s:7:true", optimizeAndRun(Closure3.class, new GeneratorConfigurationBuilder()));
+		assertEquals("s:7:true",
+				optimizeAndRun(Closure3.class, new GeneratorConfigurationBuilder().generateJsonDeserializers(true)));
+	}
+
+	private static Object optimizeAndRun(Class<?> clazz, GeneratorConfigurationBuilder configuration)
+			throws IOException, ScriptException {
+		GeneratorTestHelper.generate(clazz, configuration);
+		String path = clazz.getName().replace('.', '/') + ".js";
+
+		ExternsGenerator externs = new ExternsGenerator();
+		externs.addBridge(Global.class);
+		externs.addGeneratedType(clazz);
+		StringBuilder externsCode = new StringBuilder();
+		externs.write(externsCode);
+		externsCode.append("acme.closure.").append(clazz.getSimpleName()).append(".result;\n");
+
+		ClosureOptimizer optimizer = new ClosureOptimizer(externsCode.toString());
+		optimizer.addInput(path, Files.toString(new File("target/temp-generated-js", path), Charsets.UTF_8), null);
+		File optimizedFile = new File("target/temp-generated-js/closure.min.js");
+		Files.write(optimizer.optimize("closure.min.js", null), optimizedFile, Charsets.UTF_8);
+		File resultFile = new File("target/temp-generated-js/closure-result.js");
+		Files.write("acme.closure." + clazz.getSimpleName() + ".result", resultFile, Charsets.UTF_8);
+		return new RhinoExecutor().run(Arrays.asList(optimizedFile, resultFile), false).getResult();
+	}
+
+	private static String read(String extension) throws IOException {
+		return Files.toString(new File(GENERATED_FILE.getPath() + extension), Charsets.UTF_8);
+	}
+}
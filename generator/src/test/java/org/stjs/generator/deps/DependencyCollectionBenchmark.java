@@ -0,0 +1,95 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+
+/**
+ * Compares the ordering of the dependencies with the pairwise comparison it replaced, on a few thousand classes of the
+ * JDK. It is not part of the regular build (its name does not end with Test), run it with:
+ * 
+ * <pre>
+ * mvn test -Dtest=DependencyCollectionBenchmark
+ * </pre>
+ */
+public class DependencyCollectionBenchmark {
+	private static final int CLASS_COUNT = 3000;
+
+	@Test
+	@SuppressWarnings("PMD.SystemPrintln")
+	public void testOrderThousandsOfClasses() {
+		List<ClassWithJavascript> classes = DependencyCollectionTest.classes(collectClasses(CLASS_COUNT));
+
+		long start = System.nanoTime();
+		List<ClassWithJavascript> expected = DependencyCollectionTest.orderWithComparator(classes);
+		long pairwiseTime = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		List<ClassWithJavascript> actual = DependencyCollectionTest.order(classes);
+		long graphTime = System.nanoTime() - start;
+
+		assertEquals(DependencyCollectionTest.classNames(expected), DependencyCollectionTest.classNames(actual));
+		System.out.println("Ordered " + classes.size() + " classes in " + graphTime / 1000000 + " ms (pairwise: "
+				+ pairwiseTime / 1000000 + " ms)");
+		assertTrue(graphTime < pairwiseTime);
+	}
+
+	/**
+	 * @return top-level classes of the JDK's public packages, in the order of the runtime jar
+	 */
+	private static List<Class<?>> collectClasses(int count) {
+		URL url = String.class.getResource("String.class");
+		if (!"jar".equals(url.getProtocol())) {
+			throw new IllegalStateException("The benchmark reads the classes of the JDK from its runtime jar: " + url);
+		}
+		String jarPath = url.getPath().substring("file:".length(), url.getPath().indexOf('!'));
+
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		try {
+			JarFile jar = new JarFile(URLDecoder.decode(jarPath, "UTF-8"));
+			try {
+				for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements() && classes.size() < count;) {
+					String name = e.nextElement().getName();
+					if ((name.startsWith("java/") || name.startsWith("javax/")) && name.endsWith(".class")
+							&& name.indexOf('$') < 0) {
+						addClass(name.substring(0, name.length() - ".class".length()).replace('/', '.'), classes);
+					}
+				}
+			}
+			finally {
+				jar.close();
+			}
+		}
+		catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return classes;
+	}
+
+	private static void addClass(String className, List<Class<?>> classes) {
+		try {
+			Class<?> clazz = Class.forName(className, false, DependencyCollectionBenchmark.class.getClassLoader());
+			// the hierarchy of the class and of its inner classes must be complete
+			clazz.getInterfaces();
+			clazz.getDeclaredClasses();
+			classes.add(clazz);
+		}
+		catch (ClassNotFoundException e) {
+			// skip this class
+		}
+		catch (LinkageError e) {
+			// skip this class
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollection;
+
+public class DependencyCollectionTest {
+	@Test
+	public void testSuperClassesFirst() {
+		List<String> order = classNames(order(classes(Dep3.class, Dep2.class, Dep4.class, Dep1.class)));
+		assertEquals(Arrays.asList(Dep1.class.getName(), Dep3.class.getName(), Dep2.class.getName(),
+				Dep4.class.getName()), order);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCyclicInheritance() {
+		order(classes(Err1.class, Err2.class));
+	}
+
+	@Test
+	public void testSameOrderAsPairwiseComparison() {
+		List<Class<?>> fixtures = fixtures();
+		assertEquals(classNames(orderWithComparator(classes(fixtures))), classNames(order(classes(fixtures))));
+
+		Collections.reverse(fixtures);
+		assertEquals(classNames(orderWithComparator(classes(fixtures))), classNames(order(classes(fixtures))));
+	}
+
+	@Test
+	public void testSuperTypesBeforeSubTypes() {
+		List<Class<?>> fixtures = fixtures();
+		Collections.reverse(fixtures);
+		List<ClassWithJavascript> ordered = order(classes(fixtures));
+
+		assertEquals(fixtures.size(), ordered.size());
+		for (int i = 0; i < ordered.size(); ++i) {
+			for (int j = i + 1; j < ordered.size(); ++j) {
+				if (load(ordered.get(j)).isAssignableFrom(load(ordered.get(i)))) {
+					throw new AssertionError(ordered.get(i).getClassName() + " is placed before its super type "
+							+ ordered.get(j).getClassName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return top-level classes, some extending each other or each other's inner classes, some without any relation
+	 */
+	private static List<Class<?>> fixtures() {
+		return new ArrayList<Class<?>>(Arrays.<Class<?>> asList(Dep3.class, Resolve1.class, Dep2.class, Dep4.class,
+				Resolve3.class, Dep1.class, Resolve2.class));
+	}
+
+	static List<ClassWithJavascript> order(List<ClassWithJavascript> classes) {
+		return new DependencyCollection(classes).orderAllDependencies(DependencyCollectionTest.class.getClassLoader());
+	}
+
+	/**
+	 * the ordering done by comparing each class with all the remaining ones
+	 */
+	static List<ClassWithJavascript> orderWithComparator(List<ClassWithJavascript> classes) {
+		List<ClassWithJavascript> deps = new ArrayList<ClassWithJavascript>(classes);
+		List<ClassWithJavascript> orderedDeps = new ArrayList<ClassWithJavascript>();
+		while (!deps.isEmpty()) {
+			for (int i = 0; i < deps.size(); ++i) {
+				boolean extendsOther = false;
+				Class<?> clazz = load(deps.get(i));
+				for (int j = 0; j < deps.size() && !extendsOther; ++j) {
+					extendsOther = i != j
+							&& DependencyCollection.DEPENDENCY_COMPARATOR.compare(clazz, load(deps.get(j))) > 0;
+				}
+				if (!extendsOther) {
+					orderedDeps.add(deps.remove(i));
+					i--;
+				}
+			}
+		}
+		return orderedDeps;
+	}
+
+	private static List<ClassWithJavascript> classes(Class<?>... classes) {
+		return classes(Arrays.asList(classes));
+	}
+
+	static List<ClassWithJavascript> classes(List<Class<?>> classes) {
+		List<ClassWithJavascript> result = new ArrayList<ClassWithJavascript>();
+		for (Class<?> clazz : classes) {
+			result.add(new TestClass(clazz.getName()));
+		}
+		return result;
+	}
+
+	static List<String> classNames(List<ClassWithJavascript> classes) {
+		List<String> names = new ArrayList<String>();
+		for (ClassWithJavascript clazz : classes) {
+			names.add(clazz.getClassName());
+		}
+		return names;
+	}
+
+	static Class<?> load(ClassWithJavascript clazz) {
+		try {
+			return Class.forName(clazz.getClassName());
+		}
+		catch (ClassNotFoundException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static class TestClass implements ClassWithJavascript {
+		private final String className;
+
+		public TestClass(String className) {
+			this.className = className;
+		}
+
+		@Override
+		public String getClassName() {
+			return className;
+		}
+
+		@Override
+		public List<URI> getJavascriptFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<ClassWithJavascript> getDirectDependencies() {
+			return Collections.emptyList();
+		}
+	}
+}
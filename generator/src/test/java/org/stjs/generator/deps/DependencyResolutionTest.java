@@ -0,0 +1,106 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollection;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+
+import com.google.common.io.Files;
+
+public class DependencyResolutionTest {
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = File.createTempFile("stjs-resolution", "");
+		assertTrue(folder.delete() && folder.mkdir());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteRecursively(folder);
+	}
+
+	@Test
+	public void testEachClassResolvedOnce() {
+		Generator generator = new Generator();
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		File generationPath = new File(folder, "js");
+		// the properties files are written in a folder the class loader does not see, so the dependencies have to be
+		// generated on demand
+		ClassWithJavascript resolve1 = generator.generateJavascript(classLoader, Resolve1.class.getName(), new File(
+				"src/test/java"), new GenerationDirectory(generationPath, new File("js"), new File("")), new File(
+				folder, "classes"), new GeneratorConfigurationBuilder().allowedPackage("org.stjs.generator").build());
+
+		List<String> classNames = new ArrayList<String>();
+		for (ClassWithJavascript dep : new DependencyCollection(resolve1).orderAllDependencies(classLoader)) {
+			classNames.add(dep.getClassName());
+		}
+		assertTrue(classNames.indexOf(Resolve3.class.getName()) < classNames.indexOf(Resolve2.class.getName()));
+		assertEquals(2, generator.getGeneratedOnDemandCount());
+
+		// the diamond dependency is shared and nothing is resolved again
+		int resolvedClassCount = generator.getResolvedClassCount();
+		ClassWithJavascript resolve2 = getDependency(resolve1, Resolve2.class);
+		assertSame(getDependency(resolve1, Resolve3.class), getDependency(resolve2, Resolve3.class));
+		new DependencyCollection(resolve1).orderAllDependencies(classLoader);
+		assertEquals(2, generator.getGeneratedOnDemandCount());
+		assertEquals(resolvedClassCount, generator.getResolvedClassCount());
+	}
+
+	@Test
+	public void testDependencyFailureNotThrownByDependent() throws IOException {
+		Generator generator = new Generator();
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		// the source of Resolve6, used by Resolve5, is missing
+		File sourceFolder = new File(folder, "src");
+		copySource(Resolve4.class, sourceFolder);
+		copySource(Resolve5.class, sourceFolder);
+		ClassWithJavascript resolve4 = generator.generateJavascript(classLoader, Resolve4.class.getName(),
+				sourceFolder, new GenerationDirectory(new File(folder, "js"), new File("js"), new File("")), new File(
+						folder, "classes"), new GeneratorConfigurationBuilder().allowedPackage("org.stjs.generator")
+						.build());
+
+		ClassWithJavascript resolve5 = getDependency(resolve4, Resolve5.class);
+		// the failure is not kept, the dependency is resolved again each time
+		for (int i = 0; i < 2; ++i) {
+			try {
+				resolve5.getDirectDependencies();
+				fail("The source of Resolve6 is missing");
+			}
+			catch (RuntimeException e) {
+				// expected
+			}
+		}
+	}
+
+	private static void copySource(Class<?> clazz, File sourceFolder) throws IOException {
+		String path = clazz.getName().replace('.', File.separatorChar) + ".java";
+		File target = new File(sourceFolder, path);
+		Files.createParentDirs(target);
+		Files.copy(new File("src/test/java", path), target);
+	}
+
+	private static ClassWithJavascript getDependency(ClassWithJavascript cjs, Class<?> clazz) {
+		for (ClassWithJavascript dep : cjs.getDirectDependencies()) {
+			if (dep.getClassName().equals(clazz.getName())) {
+				return dep;
+			}
+		}
+		throw new AssertionError(clazz.getName() + " is not a dependency of " + cjs.getClassName());
+	}
+}
@@ -0,0 +1,109 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.type.TypeWrappers;
+import org.stjs.generator.writer.inheritance.Inheritance1;
+import org.stjs.generator.writer.inheritance.Inheritance2;
+import org.stjs.generator.writer.inheritance.Inheritance3;
+import org.stjs.generator.writer.inheritance.Inheritance4;
+import org.stjs.generator.writer.inheritance.Inheritance5;
+import org.stjs.generator.writer.inheritance.Inheritance6;
+import org.stjs.generator.writer.inheritance.Inheritance7;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class ParallelGenerationTest {
+	private static final int THREADS = 4;
+
+	private static final List<Class<?>> CLASSES = Arrays.<Class<?>> asList(Resolve1.class, Resolve2.class,
+			Resolve3.class, Dep1.class, Dep2.class, Dep3.class, Dep4.class, Inheritance1.class, Inheritance2.class,
+			Inheritance3.class, Inheritance4.class, Inheritance5.class, Inheritance6.class, Inheritance7.class);
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = File.createTempFile("stjs-parallel", "");
+		assertTrue(folder.delete() && folder.mkdir());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteRecursively(folder);
+	}
+
+	/**
+	 * generates all the classes with the given number of threads sharing the same generator, starting with empty type
+	 * caches.
+	 * @return the content of the generated files, by file
+	 */
+	private Map<String, String> generate(String name, int threads) throws Exception {
+		TypeWrappers.clearCache();
+		final Generator generator = new Generator();
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		final File generationPath = new File(folder, name);
+		final GenerationDirectory gendir = new GenerationDirectory(generationPath, new File("js"), new File(""));
+		// the class loader does not see this folder, so the dependencies are generated on demand
+		final File targetFolder = new File(folder, name + "-classes");
+		final GeneratorConfiguration configuration = new GeneratorConfigurationBuilder()
+				.allowedPackage("org.stjs.javascript").allowedPackage("org.stjs.generator").build();
+
+		List<Callable<ClassWithJavascript>> tasks = new ArrayList<Callable<ClassWithJavascript>>();
+		for (final Class<?> clazz : CLASSES) {
+			tasks.add(new Callable<ClassWithJavascript>() {
+				@Override
+				public ClassWithJavascript call() {
+					return generator.generateJavascript(classLoader, clazz.getName(), new File("src/test/java"),
+							gendir, targetFolder, configuration);
+				}
+			});
+		}
+
+		Map<String, String> files = new TreeMap<String, String>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<ClassWithJavascript> future : executor.invokeAll(tasks)) {
+				for (URI js : future.get().getJavascriptFiles()) {
+					files.put(js.getPath(), Files.toString(new File(generationPath, js.getPath()), Charsets.UTF_8));
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return files;
+	}
+
+	@Test
+	public void testSameOutputAsSerialGeneration() throws Exception {
+		Map<String, String> serial = generate("serial", 1);
+		assertEquals(CLASSES.size(), serial.size());
+		for (int i = 0; i < 3; ++i) {
+			assertEquals(serial, generate("parallel" + i, THREADS));
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package org.stjs.generator.deps;
+
+public class Resolve1 {
+	public Resolve2 resolve2;
+	public Resolve3 resolve3;
+}
@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Resolve2 {
+	public Resolve3 resolve3;
+}
@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Resolve3 {
+	public int value;
+}
@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Resolve4 {
+	public Resolve5 resolve5;
+}
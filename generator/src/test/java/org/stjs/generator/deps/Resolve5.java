@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Resolve5 {
+	public Resolve6 resolve6;
+}
@@ -0,0 +1,5 @@
+package org.stjs.generator.deps;
+
+public class Resolve6 {
+	public int value;
+}
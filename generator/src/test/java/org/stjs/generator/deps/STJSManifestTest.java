@@ -0,0 +1,94 @@
+package org.stjs.generator.deps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyResolver;
+import org.stjs.generator.GeneratorConstants;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.STJSManifest;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class STJSManifestTest {
+	private static final DependencyResolver NO_RESOLVER = new DependencyResolver() {
+		@Override
+		public ClassWithJavascript resolve(String className) {
+			throw new UnsupportedOperationException();
+		}
+	};
+
+	private File folder;
+	private ClassLoader classLoader;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = File.createTempFile("stjs-manifest", "");
+		assertTrue(folder.delete() && folder.mkdir());
+		classLoader = new URLClassLoader(new URL[] { folder.toURI().toURL() }, null);
+
+		STJSManifest.write(new File(folder, GeneratorConstants.MANIFEST_FILE), Arrays.asList(
+				new STJSManifest.Entry("org.lib.Main", URI.create("/org/lib/Main.js"), Arrays.asList("org.lib.Dep1",
+						"org.lib.Dep2"), false, "abc"), new STJSManifest.Entry("org.lib.Bridge", null, Collections
+						.<String> emptyList(), true, null)));
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		STJSManifest.clearCache(classLoader);
+		Files.deleteRecursively(folder);
+	}
+
+	@Test
+	public void testEntries() {
+		STJSManifest manifest = STJSManifest.forClassLoader(classLoader);
+
+		STJSManifest.Entry main = manifest.getEntry("org.lib.Main");
+		assertEquals(URI.create("/org/lib/Main.js"), main.getJavascriptFile());
+		assertEquals(Arrays.asList("org.lib.Dep1", "org.lib.Dep2"), main.getDependencies());
+		assertFalse(main.isBridge());
+		assertEquals("abc", main.getSignatureHash());
+
+		STJSManifest.Entry bridge = manifest.getEntry("org.lib.Bridge");
+		assertNull(bridge.getJavascriptFile());
+		assertTrue(bridge.getDependencies().isEmpty());
+		assertTrue(bridge.isBridge());
+		assertNull(bridge.getSignatureHash());
+
+		assertNull(manifest.getEntry("org.lib.Other"));
+		assertEquals("org.lib.Main", manifest.getClassNameForJavascriptFile("/org/lib/Main.js"));
+	}
+
+	@Test
+	public void testClassFromManifest() {
+		STJSClass stjsClass = new STJSClass(NO_RESOLVER, classLoader, "org.lib.Main");
+		assertEquals(Collections.singletonList(URI.create("/org/lib/Main.js")), stjsClass.getJavascriptFiles());
+		assertEquals(Arrays.asList("org.lib.Dep1", "org.lib.Dep2"), stjsClass.getDependencies());
+	}
+
+	@Test
+	public void testClassFromPropertiesFile() throws IOException {
+		File propertiesFile = new File(folder, "org/lib/Other.stjs");
+		assertTrue(propertiesFile.getParentFile().mkdirs());
+		Files.write("js=/org/lib/Other.js\ndependencies=[org.lib.Main]\n", propertiesFile, Charsets.UTF_8);
+
+		STJSClass stjsClass = new STJSClass(NO_RESOLVER, classLoader, "org.lib.Other");
+		assertEquals(Collections.singletonList(URI.create("/org/lib/Other.js")), stjsClass.getJavascriptFiles());
+		assertEquals(Collections.singletonList("org.lib.Main"), stjsClass.getDependencies());
+	}
+}
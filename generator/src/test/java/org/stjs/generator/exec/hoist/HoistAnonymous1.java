@@ -0,0 +1,42 @@
+package org.stjs.generator.exec.hoist;
+
+public class HoistAnonymous1 {
+	interface Operation {
+		String apply(String value);
+	}
+
+	abstract static class Prefixed implements Operation {
+		protected String prefix;
+
+		public Prefixed(String prefix) {
+			this.prefix = prefix;
+		}
+	}
+
+	public Operation operation(final int index, final String suffix) {
+		return new Prefixed("<") {
+			@Override
+			public String apply(String value) {
+				Operation inner = new Operation() {
+					@Override
+					public String apply(String v) {
+						return v + index;
+					}
+				};
+				return prefix + inner.apply(value) + suffix;
+			}
+		};
+	}
+
+	public String run(String suffix) {
+		String result = "";
+		for (int i = 0; i < 3; ++i) {
+			result += operation(i, suffix).apply("x");
+		}
+		return result;
+	}
+
+	public static String main(String[] args) {
+		return new HoistAnonymous1().run(">");
+	}
+}
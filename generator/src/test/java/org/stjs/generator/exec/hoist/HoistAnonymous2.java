@@ -0,0 +1,20 @@
+package org.stjs.generator.exec.hoist;
+
+import static org.stjs.javascript.JSObjectAdapter.$js;
+
+public class HoistAnonymous2 {
+	interface Counter {
+		int next();
+	}
+
+	public static int main(String[] args) {
+		final int start = 10;
+		Counter counter = new Counter() {
+			@Override
+			public int next() {
+				return start + (Integer) $js("start");
+			}
+		};
+		return counter.next();
+	}
+}
@@ -0,0 +1,18 @@
+package org.stjs.generator.exec.hoist;
+
+public class HoistAnonymous3 {
+	public interface Named {
+		String name();
+	}
+
+	public static final Named OUTER = new Named() {
+		@Override
+		public String name() {
+			return "outer";
+		}
+	};
+
+	public String outerName() {
+		return OUTER.name();
+	}
+}
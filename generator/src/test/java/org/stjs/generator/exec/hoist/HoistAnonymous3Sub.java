@@ -0,0 +1,17 @@
+package org.stjs.generator.exec.hoist;
+
+public class HoistAnonymous3Sub extends HoistAnonymous3 {
+	public String subName(final String suffix) {
+		return new Named() {
+			@Override
+			public String name() {
+				return "sub" + suffix;
+			}
+		}.name();
+	}
+
+	public static String main(String[] args) {
+		HoistAnonymous3Sub sub = new HoistAnonymous3Sub();
+		return sub.outerName() + "," + sub.subName("!");
+	}
+}
@@ -0,0 +1,50 @@
+package org.stjs.generator.exec.hoist;
+
+import static org.junit.Assert.assertEquals;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeDoesNotContain;
+
+import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.utils.GeneratorTestHelper;
+
+public class HoistAnonymousTest {
+	private static GeneratorConfigurationBuilder hoisting() {
+		return new GeneratorConfigurationBuilder().hoistAnonymousClasses(true);
+	}
+
+	@Test
+	public void testSameResult() {
+		assertEquals("<x0><x1><x2>", GeneratorTestHelper.execute(HoistAnonymous1.class));
+		assertEquals("<x0><x1><x2>", GeneratorTestHelper.execute(HoistAnonymous1.class, hoisting()));
+		assertEquals("<x0><x1><x2>", GeneratorTestHelper.execute(HoistAnonymous1.class, hoisting().minify(true)));
+	}
+
+	@Test
+	public void testDefinedOnce() {
+		String code = GeneratorTestHelper.generate(HoistAnonymous1.class, hoisting());
+		assertCodeContains(code, "new (HoistAnonymous1.$anonymous$1 || (HoistAnonymous1.$anonymous$1 = stjs.extend("
+				+ "function HoistAnonymous1$1(index, suffix){"
+				+ "this.$captured$index = index;this.$captured$suffix = suffix;"
+				+ "HoistAnonymous1.Prefixed.apply(this, Array.prototype.slice.call(arguments, 2));}");
+		assertCodeContains(code, "}, {})))(index, suffix, \"<\")");
+		assertCodeContains(code, "prototype.apply = function(value) {var index = this.$captured$index;"
+				+ "var suffix = this.$captured$suffix;");
+		assertCodeContains(code, "new (HoistAnonymous1.$anonymous$1$1 || (HoistAnonymous1.$anonymous$1$1 = ");
+		assertCodeContains(code, "prototype.apply = function(v) {var index = this.$captured$index;");
+	}
+
+	@Test
+	public void testNotHoistedWithJavascriptCode() {
+		assertEquals(20, ((Number) GeneratorTestHelper.execute(HoistAnonymous2.class, hoisting())).intValue());
+		assertCodeDoesNotContain(GeneratorTestHelper.generate(HoistAnonymous2.class, hoisting()), "$anonymous");
+	}
+
+	@Test
+	public void testNotInheritedBySubclasses() {
+		// the outer class defines its anonymous class before the subclass is created
+		assertEquals("outer,sub!", GeneratorTestHelper.execute(HoistAnonymous3Sub.class, hoisting()));
+		assertCodeContains(GeneratorTestHelper.generate(HoistAnonymous3Sub.class, hoisting()),
+				"new (HoistAnonymous3Sub.$anonymous$1 || (HoistAnonymous3Sub.$anonymous$1 = ");
+	}
+}
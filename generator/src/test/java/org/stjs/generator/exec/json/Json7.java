@@ -0,0 +1,11 @@
+package org.stjs.generator.exec.json;
+
+import static org.stjs.javascript.Global.stjs;
+
+public class Json7 {
+	public static Object main(String[] args) {
+		Class6 c = stjs.parseJSON("{\"a\":1, \"children\":[{\"i\":2}, {\"i\":3}], \"child\":{\"i\":4}}", Class6.class);
+		return c.type + ":" + c.a + ":" + c.children.$get(0).type + c.children.$get(0).i + c.children.$get(1).i + ":"
+				+ c.child.type + c.child.i;
+	}
+}
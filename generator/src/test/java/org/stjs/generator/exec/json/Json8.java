@@ -0,0 +1,12 @@
+package org.stjs.generator.exec.json;
+
+import static org.stjs.javascript.Global.stjs;
+
+public class Json8 {
+	public static Object main(String[] args) {
+		Class4 c4 = stjs.parseJSON("{\"date\":\"2011-12-21 18:56:00\"}", Class4.class);
+		Class5 c5 = stjs.parseJSON("{\"e\":\"b\"}", Class5.class);
+		return c4.type + ":" + c4.date.getUTCMonth() + ":" + c4.date.getUTCHours() + ":" + c5.type + ":" + c5.e.name()
+				+ c5.e.ordinal();
+	}
+}
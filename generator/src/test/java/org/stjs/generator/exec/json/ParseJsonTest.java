@@ -3,14 +3,21 @@ package org.stjs.generator.exec.json;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.fail;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeDoesNotContain;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.utils.GeneratorTestHelper;
 import org.stjs.javascript.Array;
 import org.stjs.javascript.Date;
 import org.stjs.javascript.Map;
 
 public class ParseJsonTest {
+	private static GeneratorConfigurationBuilder withDeserializers() {
+		return new GeneratorConfigurationBuilder().generateJsonDeserializers(true);
+	}
+
 	@SuppressWarnings("unchecked")
 	private Object getProperty(Object obj, String... props) {
 		Object bean = obj;
@@ -86,4 +93,31 @@ public class ParseJsonTest {
 		assertProperty(3.0, result, "child", "i");
 		assertProperty("Inner", result, "child", "type");
 	}
+
+	@Test
+	public void testDeserializer() {
+		String code = GeneratorTestHelper.generate(Class6.class, withDeserializers());
+		// the inherited fields are assigned by the deserializer of the super class
+		assertCodeContains(code, "Class6.$fromJSON = function(json, o) {"
+				+ "o = o || new Class6();var d = Class6.$typeDescription;"
+				+ "if (Class1.$fromJSON) Class1.$fromJSON(json, o);"
+				+ "else stjs.jsonFill(json, o, Class1.$typeDescription);"
+				+ "if (json.child !== undefined) o.child = stjs.jsonConvert(json.child, d.child);"
+				+ "return o;};");
+		assertCodeDoesNotContain(code, "json.children");
+
+		code = GeneratorTestHelper.generate(Class1.class, withDeserializers());
+		assertCodeContains(code, "Class1.$fromJSON = function(json, o) {"
+				+ "o = o || new Class1();var d = Class1.$typeDescription;"
+				+ "if (json.type !== undefined) o.type = json.type;"
+				+ "if (json.children !== undefined) o.children = stjs.jsonConvert(json.children, d.children);"
+				+ "if (json.a !== undefined) o.a = json.a;"
+				+ "return o;};");
+	}
+
+	@Test
+	public void testWithDeserializers() {
+		assertEquals("Class6:1:Inner23:Inner4", GeneratorTestHelper.execute(Json7.class, withDeserializers()));
+		assertEquals("Class4:11:18:Class5:b1", GeneratorTestHelper.execute(Json8.class, withDeserializers()));
+	}
 }
@@ -0,0 +1,28 @@
+package org.stjs.generator.exec.minify;
+
+public class Minify1 {
+	interface Operation {
+		String apply(String value);
+	}
+
+	// this comment is not generated
+	public String concat(String first, final String second) {
+		final String separator = "-";
+		Operation operation = new Operation() {
+			@Override
+			public String apply(String value) {
+				String result = value + separator;
+				return result + second;
+			}
+		};
+		String result = operation.apply(first);
+		for (int i = 0; i < 2; ++i) {
+			result += i;
+		}
+		return result;
+	}
+
+	public static String main(String[] args) {
+		return new Minify1().concat("a", "b");
+	}
+}
@@ -0,0 +1,25 @@
+package org.stjs.generator.exec.minify;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.stjs.generator.utils.GeneratorTestHelper;
+
+public class MinifyTest {
+	@Test
+	public void testSameResult() {
+		assertEquals("a-b01", GeneratorTestHelper.execute(Minify1.class));
+		assertEquals("a-b01", GeneratorTestHelper.executeMinified(Minify1.class));
+	}
+
+	@Test
+	public void testMinifiedCode() {
+		String code = GeneratorTestHelper.generateMinified(Minify1.class);
+		assertFalse(code.contains("comment"));
+		assertFalse(code.contains("separator"));
+		assertFalse(code.contains("    "));
+		assertTrue(code.contains("prototype.concat = function("));
+	}
+}
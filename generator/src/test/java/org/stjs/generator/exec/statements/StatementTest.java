@@ -3,6 +3,7 @@ package org.stjs.generator.exec.statements;
 import static org.junit.Assert.assertEquals;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.utils.GeneratorTestHelper;
 
 public class StatementTest {
@@ -12,4 +13,15 @@ public class StatementTest {
 		assertEquals(0.0, GeneratorTestHelper.execute(Statements1.class));
 	}
 
+	@Test
+	public void testForEachArrayByIndex() {
+		assertEquals("011121:30", GeneratorTestHelper.execute(Statements2.class));
+		assertEquals("011121:30", GeneratorTestHelper.execute(Statements2.class,
+				new GeneratorConfigurationBuilder().iterateArraysByIndex(true)));
+	}
+
+	@Test
+	public void testInstanceof() {
+		assertEquals("1111:1011:0000:0", GeneratorTestHelper.execute(Statements3.class));
+	}
 }
@@ -0,0 +1,24 @@
+package org.stjs.generator.exec.statements;
+
+import static org.stjs.javascript.JSCollections.$array;
+
+import org.stjs.javascript.Array;
+
+public class Statements2 {
+	private static Array<Integer> values() {
+		return $array(1, 2, 3);
+	}
+
+	public static String main(String[] args) {
+		Array<Integer> a = $array(10, 20);
+		int sum = 0;
+		for (String i : a)
+			sum += a.$get(i);
+
+		String keys = "";
+		for (String i : values()) {
+			keys += i + 1;
+		}
+		return keys + ":" + sum;
+	}
+}
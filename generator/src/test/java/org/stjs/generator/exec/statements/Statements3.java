@@ -0,0 +1,25 @@
+package org.stjs.generator.exec.statements;
+
+public class Statements3 {
+	public interface Marker {
+	}
+
+	public interface SubMarker extends Marker {
+	}
+
+	public static class Base implements SubMarker {
+	}
+
+	public static class Derived extends Base {
+	}
+
+	private static String check(Object o) {
+		return "" + (o instanceof Base ? 1 : 0) + (o instanceof Derived ? 1 : 0) + (o instanceof Marker ? 1 : 0)
+				+ (o instanceof SubMarker ? 1 : 0);
+	}
+
+	public static String main(String[] args) {
+		Object nothing = null;
+		return check(new Derived()) + ":" + check(new Base()) + ":" + check("x") + ":" + (nothing instanceof Base ? 1 : 0);
+	}
+}
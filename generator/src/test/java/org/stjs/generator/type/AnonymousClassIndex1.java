@@ -0,0 +1,51 @@
+package org.stjs.generator.type;
+
+public class AnonymousClassIndex1 {
+	private final Runnable field = new Runnable() {
+		@Override
+		public void run() {
+			//
+		}
+	};
+
+	public Object method(int n, String s) {
+		long big = 123456789012L;
+		switch (n) {
+		case 1:
+			big++;
+			break;
+		case 2:
+			big--;
+			break;
+		case 3:
+			big += 2;
+			break;
+		default:
+			break;
+		}
+		switch (n) {
+		case 10:
+			big++;
+			break;
+		case 1000:
+			big--;
+			break;
+		default:
+			break;
+		}
+		if (big > 0) {
+			return new Runnable() {
+				@Override
+				public void run() {
+					//
+				}
+			};
+		}
+		return new Object() {
+			@Override
+			public String toString() {
+				return "x";
+			}
+		};
+	}
+}
@@ -0,0 +1,26 @@
+package org.stjs.generator.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AnonymousClassIndexTest {
+	@Test
+	public void testAnonymousClassesByMethod() throws Exception {
+		AnonymousClassIndex index = TypeWrappers.wrap(AnonymousClassIndex1.class).getAnonymousClassIndex();
+		String name = AnonymousClassIndex1.class.getName();
+		assertEquals(Arrays.asList(name + "$1"), index.getAnonymousClasses("<init>"));
+		assertEquals(Arrays.asList(name + "$2", name + "$3"), index.getAnonymousClasses("method"));
+		assertTrue(index.getAnonymousClasses("toString").isEmpty());
+	}
+
+	@Test
+	public void testIndexBuiltOnce() throws Exception {
+		ClassWrapper wrapper = TypeWrappers.wrap(AnonymousClassIndex1.class);
+		assertSame(wrapper.getAnonymousClassIndex(), wrapper.getAnonymousClassIndex());
+	}
+}
@@ -0,0 +1,46 @@
+package org.stjs.generator.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.stjs.generator.utils.PrefixTrie;
+
+public class ClassLookupCacheTest {
+	@Test
+	public void testCachedMiss() {
+		ClassLookupCache cache = ClassLookupCache.forClassLoader(getClass().getClassLoader());
+		assertTrue(cache.loadClass("org.stjs.generator.type.MissingClass").isEmpty());
+
+		long hits = ClassLookupCache.getStatistics().getHits();
+		assertTrue(cache.loadClass("org.stjs.generator.type.MissingClass").isEmpty());
+		assertEquals(hits + 1, ClassLookupCache.getStatistics().getHits());
+	}
+
+	@Test
+	public void testCachedHit() {
+		ClassLookupCache cache = ClassLookupCache.forClassLoader(getClass().getClassLoader());
+		assertSame(ClassWrapper1.class, cache.loadClass(ClassWrapper1.class.getName()).getOrNull());
+
+		long misses = ClassLookupCache.getStatistics().getMisses();
+		assertSame(ClassWrapper1.class, cache.loadClass(ClassWrapper1.class.getName()).getOrNull());
+		assertEquals(misses, ClassLookupCache.getStatistics().getMisses());
+	}
+
+	@Test
+	public void testPrefixTrie() {
+		PrefixTrie trie = new PrefixTrie(Arrays.asList("org.stjs.javascript", "java.util.Map", "org.stjs.generator.type"));
+		assertTrue(trie.matchesPrefixOf("org.stjs.javascript.Array"));
+		assertTrue(trie.matchesPrefixOf("java.util.Map"));
+		assertTrue(trie.matchesPrefixOf("org.stjs.generator.types"));
+		assertFalse(trie.matchesPrefixOf("org.stjs.java"));
+		assertFalse(trie.matchesPrefixOf("java.util.List"));
+		assertFalse(new PrefixTrie(Collections.<String> emptyList()).matchesPrefixOf("java.util.List"));
+		assertTrue(new PrefixTrie(Arrays.asList("")).matchesPrefixOf("java.util.List"));
+	}
+}
@@ -2,8 +2,12 @@ package org.stjs.generator.type;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.Type;
+import java.util.List;
+
 import org.junit.Test;
 import org.stjs.generator.type.TypeWrapper;
 import org.stjs.generator.type.TypeWrappers;
@@ -70,4 +74,39 @@ public class ClassWrapperTest {
 		assertFalse(wrapper.findMethod("method", TypeWrappers.wrap(int.class), TypeWrappers.wrap(Number.class))
 				.isDefined());
 	}
+
+	@Test
+	public void testSharedWrappers() {
+		ClassWrapper wrapper = TypeWrappers.wrap(ClassWrapper2.InnerType.class);
+		assertSame(wrapper, TypeWrappers.wrap(ClassWrapper2.class).getDeclaredClass("InnerType").getOrThrow());
+		assertSame(TypeWrappers.wrap(ClassWrapper2.class), wrapper.getDeclaringClass().getOrThrow());
+		assertSame(TypeWrappers.wrap(Object.class), wrapper.getSuperclass().getOrThrow());
+		assertEquals(1, wrapper.findMethods("method").size());
+	}
+
+	@Test
+	public void testCachedMethodResolution() {
+		ClassWrapper wrapper = TypeWrappers.wrap(ClassWrapper1.class);
+		TypeWrapper[] args = { TypeWrappers.wrap(int.class), TypeWrappers.wrap(String.class) };
+		MethodWrapper method = wrapper.findMethod("method", args).getOrThrow();
+
+		long hits = MethodSelector.getStatistics().getHits();
+		assertSame(method, wrapper.findMethod("method", args).getOrThrow());
+		assertEquals(hits + 1, MethodSelector.getStatistics().getHits());
+	}
+
+	@Test
+	public void testCachedMethodResolutionWithWildcard() {
+		ClassWrapper wrapper = TypeWrappers.wrap(List.class);
+		// the wildcards are wrapped again each time they're resolved from the source
+		MethodWrapper method = wrapper.findMethod("add", wildcardOf(Number.class)).getOrThrow();
+
+		long hits = MethodSelector.getStatistics().getHits();
+		assertSame(method, wrapper.findMethod("add", wildcardOf(Number.class)).getOrThrow());
+		assertEquals(hits + 1, MethodSelector.getStatistics().getHits());
+	}
+
+	private static TypeWrapper wildcardOf(Type upperBound) {
+		return new WildcardTypeWrapper(new WildcardTypeImpl(new Type[0], new Type[] { upperBound }));
+	}
 }
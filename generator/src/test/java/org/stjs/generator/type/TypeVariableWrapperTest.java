@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.reflect.TypeVariable;
+
 import org.junit.Test;
 import org.stjs.generator.type.TypeWrapper;
 import org.stjs.generator.type.TypeWrappers;
@@ -75,4 +77,16 @@ public class TypeVariableWrapperTest {
 				.isDefined());
 	}
 
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void testEquals() throws SecurityException, NoSuchMethodException {
+		TypeVariable<?> type = (TypeVariable<?>) TypeVariableWrapper1.class.getDeclaredMethod("get")
+				.getGenericReturnType();
+		TypeVariable<?> otherType = (TypeVariable<?>) TypeVariableWrapper2.class.getDeclaredMethod("get")
+				.getGenericReturnType();
+		assertEquals(new TypeVariableWrapper(type), new TypeVariableWrapper(type));
+		assertEquals(new TypeVariableWrapper(type).hashCode(), new TypeVariableWrapper(type).hashCode());
+		assertFalse(new TypeVariableWrapper(type).equals(new TypeVariableWrapper(otherType)));
+	}
 }
@@ -0,0 +1,41 @@
+package org.stjs.generator.type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import org.junit.Test;
+
+public class TypeWrappersTest {
+	@Test
+	public void testCachedWrapper() {
+		TypeWrapper wrapper = TypeWrappers.wrap(ClassWrapper1.class);
+		long hits = TypeWrappers.getStatistics().getHits();
+		assertSame(wrapper, TypeWrappers.wrap(ClassWrapper1.class));
+		assertTrue(TypeWrappers.getStatistics().getHits() > hits);
+	}
+
+	@Test
+	public void testClassLoaderCache() throws Exception {
+		URL[] urls = { new File("target/test-classes").toURI().toURL() };
+		ClassLoader classLoader = new URLClassLoader(urls, null);
+		Class<?> clazz = classLoader.loadClass(ClassWrapper1.class.getName());
+
+		TypeWrapper wrapper = TypeWrappers.wrap(clazz);
+		assertNotSame(TypeWrappers.wrap(ClassWrapper1.class), wrapper);
+		assertSame(wrapper, TypeWrappers.wrap(clazz));
+
+		long evictions = TypeWrappers.getStatistics().getEvictions();
+		TypeWrappers.clearCache(classLoader);
+		assertEquals(evictions + 1, TypeWrappers.getStatistics().getEvictions());
+
+		long misses = TypeWrappers.getStatistics().getMisses();
+		assertNotSame(wrapper, TypeWrappers.wrap(clazz));
+		assertEquals(misses + 1, TypeWrappers.getStatistics().getMisses());
+	}
+}
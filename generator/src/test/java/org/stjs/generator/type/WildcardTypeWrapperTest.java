@@ -5,6 +5,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 
 import org.junit.Test;
 import org.stjs.generator.type.TypeWrapper;
@@ -79,4 +80,14 @@ public class WildcardTypeWrapperTest {
 		assertFalse(wrapper.findMethod("method", TypeWrappers.wrap(int.class), TypeWrappers.wrap(Number.class))
 				.isDefined());
 	}
+
+	@Test
+	public void testEquals() {
+		TypeWrapper wrapper1 = new WildcardTypeWrapper(new WildcardTypeImpl(new Type[0], new Type[] { Number.class }));
+		TypeWrapper wrapper2 = new WildcardTypeWrapper(new WildcardTypeImpl(new Type[0], new Type[] { Number.class }));
+		TypeWrapper wrapper3 = new WildcardTypeWrapper(new WildcardTypeImpl(new Type[0], new Type[] { String.class }));
+		assertEquals(wrapper1, wrapper2);
+		assertEquals(wrapper1.hashCode(), wrapper2.hashCode());
+		assertFalse(wrapper1.equals(wrapper3));
+	}
 }
@@ -42,7 +42,22 @@ public class GeneratorTestHelper {
 	 * @return the javascript code generator from the given class
 	 */
 	public static String generate(Class<?> clazz) {
-		return (String) executeOrGenerate(clazz, false, false);
+		return generate(clazz, new GeneratorConfigurationBuilder());
+	}
+
+	/**
+	 * @return the javascript code generated from the given class with the given configuration
+	 */
+	public static String generate(Class<?> clazz, GeneratorConfigurationBuilder configuration) {
+		return (String) executeOrGenerate(clazz, false, configuration);
+	}
+
+	/**
+	 * @param clazz
+	 * @return the minified javascript code generator from the given class
+	 */
+	public static String generateMinified(Class<?> clazz) {
+		return generate(clazz, new GeneratorConfigurationBuilder().minify(true));
 	}
 
 	/**
@@ -50,7 +65,7 @@ public class GeneratorTestHelper {
 	 * @return the javascript code generator from the given class
 	 */
 	public static String generateWithSourcemap(Class<?> clazz) {
-		return (String) executeOrGenerate(clazz, false, true);
+		return generate(clazz, new GeneratorConfigurationBuilder().generateSourceMap(true));
 	}
 
 	/**
@@ -58,7 +73,21 @@ public class GeneratorTestHelper {
 	 * @return the javascript code generator from the given class
 	 */
 	public static Object execute(Class<?> clazz) {
-		return convert(executeOrGenerate(clazz, true, false));
+		return execute(clazz, new GeneratorConfigurationBuilder());
+	}
+
+	/**
+	 * executes the code generated from the given class with the given configuration
+	 */
+	public static Object execute(Class<?> clazz, GeneratorConfigurationBuilder configuration) {
+		return convert(executeOrGenerate(clazz, true, configuration));
+	}
+
+	/**
+	 * executes the minified code generated from the given class
+	 */
+	public static Object executeMinified(Class<?> clazz) {
+		return execute(clazz, new GeneratorConfigurationBuilder().minify(true));
 	}
 
 	public static Object execute(String preGeneratedJs) {
@@ -131,7 +160,7 @@ public class GeneratorTestHelper {
 	 * @param clazz
 	 * @return the javascript code generator from the given class
 	 */
-	private static Object executeOrGenerate(Class<?> clazz, boolean execute, boolean withSourceMap) {
+	private static Object executeOrGenerate(Class<?> clazz, boolean execute, GeneratorConfigurationBuilder configuration) {
 		Generator gen = new Generator();
 
 		File generationPath = new File("target", TEMP_GENERATION_PATH);
@@ -145,8 +174,7 @@ public class GeneratorTestHelper {
 						new File(sourcePath),
 						generationFolder,
 						new File("target", "test-classes"),
-						new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript")
-								.allowedPackage("org.stjs.generator").generateSourceMap(withSourceMap).build());
+						configuration.allowedPackage("org.stjs.javascript").allowedPackage("org.stjs.generator").build());
 
 		File jsFile = new File(generationPath, stjsClass.getJavascriptFiles().get(0).getPath());
 		try {
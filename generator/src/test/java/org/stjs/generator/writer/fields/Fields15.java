@@ -0,0 +1,11 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields15 extends Fields3 {
+	public int z = 4;
+
+	public String name;
+
+	public Fields15(String name) {
+		this.name = name;
+	}
+}
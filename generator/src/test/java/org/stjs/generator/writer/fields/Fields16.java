@@ -0,0 +1,27 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields16 {
+	static class Base {
+		public int a = 1;
+
+		public int b;
+
+		public Base(int b) {
+			this.b = b;
+		}
+	}
+
+	static class Derived extends Base {
+		public int c = 10;
+
+		public Derived() {
+			super(100);
+			c += a;
+		}
+	}
+
+	public static int main(String[] args) {
+		Derived d = new Derived();
+		return d.a + d.b + d.c;
+	}
+}
@@ -0,0 +1,13 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields17 {
+	public static final int PAGE_SIZE = 20;
+	public static final int PAGE_COUNT = PAGE_SIZE * 5;
+	public static final String PREFIX = "page-";
+	public static final String TITLE = PREFIX + PAGE_SIZE;
+	public static final boolean DEBUG = false;
+	public static final double RATIO = 1.5;
+	public static final char SEPARATOR = '/';
+	public static final long BIG = 1L << 40;
+	public static int counter = 3;
+}
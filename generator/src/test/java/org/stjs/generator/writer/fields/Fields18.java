@@ -0,0 +1,16 @@
+package org.stjs.generator.writer.fields;
+
+public class Fields18 {
+	private static final int HALF = Fields17.PAGE_SIZE / 2;
+
+	public static String main(String[] args) {
+		String s = Fields17.TITLE + Fields17.SEPARATOR + HALF;
+		int cells = Fields17.PAGE_COUNT * Fields17.counter;
+		double r = Fields17.RATIO * 2;
+		if (Fields17.DEBUG) {
+			s += "!";
+		}
+		return s + ":" + cells + ":" + r + ":" + (Fields17.PAGE_SIZE << 2) + ":" + (-Fields17.PAGE_SIZE) + ":"
+				+ Fields17.BIG;
+	}
+}
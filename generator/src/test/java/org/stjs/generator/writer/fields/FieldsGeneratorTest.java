@@ -3,13 +3,23 @@ package org.stjs.generator.writer.fields;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeDoesNotContain;
 import static org.stjs.generator.utils.GeneratorTestHelper.execute;
 import static org.stjs.generator.utils.GeneratorTestHelper.generate;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
 
 public class FieldsGeneratorTest {
+	private static GeneratorConfigurationBuilder fieldsInConstructor() {
+		return new GeneratorConfigurationBuilder().initializeFieldsInConstructor(true);
+	}
+
+	private static GeneratorConfigurationBuilder inlineConstants() {
+		return new GeneratorConfigurationBuilder().inlineConstants(true);
+	}
+
 	@Test
 	public void testInstanceField() {
 		assertCodeContains(Fields1.class, "prototype.x = null;");
@@ -81,4 +91,53 @@ public class FieldsGeneratorTest {
 		assertNotNull(result);
 		assertEquals(2, ((Number) result).intValue());
 	}
+
+	@Test
+	public void testInstanceFieldInConstructor() {
+		String code = generate(Fields1.class, fieldsInConstructor());
+		assertCodeContains(code, "var Fields1 = function(){this.x = null;};");
+		assertCodeDoesNotContain(code, "prototype.x");
+	}
+
+	@Test
+	public void testInstanceFieldsInDeclaredConstructor() {
+		String code = generate(Fields15.class, fieldsInConstructor());
+		assertCodeContains(code, "var Fields15 = function(name) {Fields3.call(this); this.z = 4; this.name = null; "
+				+ "this.name = name;};");
+		assertCodeContains(code, "stjs.extend(Fields15, Fields3, [], null, ");
+	}
+
+	@Test
+	public void testInstanceFieldsInConstructorExecution() {
+		assertEquals(112, ((Number) execute(Fields16.class)).intValue());
+		assertEquals(112, ((Number) execute(Fields16.class, fieldsInConstructor())).intValue());
+	}
+
+	@Test
+	public void testInlineConstants() {
+		String code = generate(Fields18.class, inlineConstants());
+		assertCodeContains(code, "constructor.HALF = 10;");
+		assertCodeContains(code, "var s = \"page-20/10\";");
+		assertCodeContains(code, "var cells = 100 * Fields17.counter;");
+		assertCodeContains(code, "var r = 3.0;");
+		assertCodeContains(code, "if (false)");
+		assertCodeContains(code, "return s + \":\" + cells + \":\" + r + \":\" + 80 + \":\" + (-20) + \":\" "
+				+ "+ 1099511627776;");
+	}
+
+	@Test
+	public void testConstantFieldsStillGenerated() {
+		String code = generate(Fields17.class, inlineConstants());
+		assertCodeContains(code, "constructor.PAGE_COUNT = 100;");
+		assertCodeContains(code, "constructor.TITLE = \"page-20\";");
+		assertCodeContains(code, "constructor.SEPARATOR = \"/\";");
+		assertCodeContains(code, "constructor.counter = 3;");
+	}
+
+	@Test
+	public void testInlineConstantsExecution() {
+		String expected = "page-20/10:300:3:80:-20:1099511627776";
+		assertEquals(expected, execute(Fields18.class));
+		assertEquals(expected, execute(Fields18.class, new GeneratorConfigurationBuilder().inlineConstants(true)));
+	}
 }
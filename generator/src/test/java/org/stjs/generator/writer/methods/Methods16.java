@@ -0,0 +1,59 @@
+package org.stjs.generator.writer.methods;
+
+public class Methods16 {
+	private static int created;
+
+	private int width;
+	private int height;
+
+	public Methods16(int width, int height) {
+		this.width = width;
+		this.height = height;
+		created++;
+	}
+
+	public final int getWidth() {
+		return width;
+	}
+
+	public final void setWidth(int width) {
+		this.width = width;
+	}
+
+	private int getHeight() {
+		return this.height;
+	}
+
+	public int area() {
+		return width * height;
+	}
+
+	public final int perimeter() {
+		return twice(width + height);
+	}
+
+	public final String describe() {
+		return getWidth() + "x" + getHeight();
+	}
+
+	public static int max(int a, int b) {
+		return a > b ? a : b;
+	}
+
+	public static int twice(int a) {
+		return a * 2;
+	}
+
+	private static int getCreated() {
+		return created;
+	}
+
+	public static String main(String[] args) {
+		Methods16 m = new Methods16(2, 3);
+		Methods16 other = new Methods16(4, 5);
+		m.setWidth(other.getWidth());
+		int neg = -1;
+		return m.getWidth() + ":" + m.getHeight() + ":" + max(m.area(), -neg) + ":" + twice(-neg) + ":"
+				+ getCreated() + ":" + m.perimeter() + ":" + m.describe();
+	}
+}
@@ -1,9 +1,13 @@
 package org.stjs.generator.writer.methods;
 
+import static org.junit.Assert.assertEquals;
 import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
+import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeDoesNotContain;
+import static org.stjs.generator.utils.GeneratorTestHelper.execute;
 import static org.stjs.generator.utils.GeneratorTestHelper.generate;
 
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
 
 public class MethodsGeneratorTest {
@@ -96,4 +100,29 @@ public class MethodsGeneratorTest {
 		// the class only contains abstract methods, therefore nothing must be generated
 		assertCodeContains(Methods15.class, "stjs.extend(Methods15, null, [], null, {});");
 	}
+
+	@Test
+	public void testInlineMethods() {
+		String code = generate(Methods16.class, new GeneratorConfigurationBuilder().inlineMethods(true));
+		assertCodeContains(code, "m.width = other.width;");
+		assertCodeContains(code, "return m.width + \":\" + m.height + \":\" + Methods16.max(m.area(), -neg) + \":\" "
+				+ "+ ((-neg) * 2) + \":\" + Methods16.created + \":\" + m.perimeter() + \":\" + m.describe();");
+		assertCodeContains(code, "return this.width + \"x\" + this.height;");
+		// the arguments with side effects are evaluated only once, in the called method
+		assertCodeContains(code, "return Methods16.twice(this.width + this.height);");
+		// the methods are still generated
+		assertCodeContains(code, "prototype.getWidth = function()");
+	}
+
+	@Test
+	public void testMethodsNotInlinedByDefault() {
+		assertCodeDoesNotContain(Methods16.class, "m.width = other.width;");
+	}
+
+	@Test
+	public void testInlineMethodsExecution() {
+		String expected = "4:3:12:2:2:14:4x3";
+		assertEquals(expected, execute(Methods16.class));
+		assertEquals(expected, execute(Methods16.class, new GeneratorConfigurationBuilder().inlineMethods(true)));
+	}
 }
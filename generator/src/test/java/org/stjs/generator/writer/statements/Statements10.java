@@ -1,10 +1,14 @@
 package org.stjs.generator.writer.statements;
 
 public class Statements10 {
+	public interface Marker {
+	}
 
 	public void method(Object arg) {
 		@SuppressWarnings("unused")
 		boolean ok = arg instanceof Statements10;
+		@SuppressWarnings("unused")
+		boolean marked = arg instanceof Marker;
 	}
 
 }
@@ -0,0 +1,20 @@
+package org.stjs.generator.writer.statements;
+
+import static org.stjs.javascript.Global.console;
+import static org.stjs.javascript.JSCollections.$array;
+
+import org.stjs.javascript.Array;
+
+public class Statements17 {
+
+	private Array<Integer> values() {
+		return $array(1, 2);
+	}
+
+	public void method() {
+		for (String i : values()) {
+			console.info(i);
+		}
+	}
+
+}
@@ -0,0 +1,15 @@
+package org.stjs.generator.writer.statements;
+
+public class Statements18 extends Statements18a {
+	public static Statements18 instance = new Statements18();
+
+	static {
+		Statements18a.log += "sub;";
+	}
+
+	public static String main(String[] args) {
+		Statements18a.log += "main;";
+		int value = Statements18b.value;
+		return Statements18a.log + (instance instanceof Statements18a);
+	}
+}
@@ -0,0 +1,9 @@
+package org.stjs.generator.writer.statements;
+
+public class Statements18a {
+	public static String log = "";
+
+	static {
+		log += "base;";
+	}
+}
@@ -0,0 +1,9 @@
+package org.stjs.generator.writer.statements;
+
+public class Statements18b {
+	public static int value = 1;
+
+	static {
+		Statements18a.log += "other;";
+	}
+}
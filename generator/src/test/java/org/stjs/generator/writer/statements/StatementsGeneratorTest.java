@@ -8,9 +8,14 @@ import static org.stjs.generator.utils.GeneratorTestHelper.generate;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
 
 public class StatementsGeneratorTest {
+	private static GeneratorConfigurationBuilder byIndex() {
+		return new GeneratorConfigurationBuilder().iterateArraysByIndex(true);
+	}
+
 	@Test
 	public void testFor() {
 		assertCodeContains(Statements1.class, "for (var i = 0; i < 10; i++) {");
@@ -63,7 +68,8 @@ public class StatementsGeneratorTest {
 
 	@Test
 	public void testInstanceof() {
-		assertCodeContains(Statements10.class, "stjs.isInstanceOf(arg.constructor, Statements10)");
+		assertCodeContains(Statements10.class, "var ok = arg instanceof Statements10;");
+		assertCodeContains(Statements10.class, "stjs.isInstanceOf(arg.constructor, Statements10.Marker)");
 	}
 
 	@Test
@@ -76,6 +82,25 @@ public class StatementsGeneratorTest {
 		assertCodeContains(Statements12.class, "if (!(a).hasOwnProperty(i)) continue;");
 	}
 
+	@Test
+	public void testForEachArrayByIndexOnlyIndex() {
+		String code = generate(Statements11.class, byIndex());
+		assertCodeContains(code, "for (var i = 0, i$length = a.length; i < i$length; ++i) {console.info(a[i]);}");
+		assertCodeDoesNotContain(code, "hasOwnProperty");
+	}
+
+	@Test
+	public void testForEachArrayByIndex() {
+		assertCodeContains(generate(Statements17.class, byIndex()),
+				"for (var i$index = 0, i$array = this.values(), i$length = i$array.length; i$index < i$length; ++i$index) "
+						+ "{var i = \"\" + i$index; console.info(i);}");
+	}
+
+	@Test
+	public void testForEachMapByIndex() {
+		assertCodeContains(generate(Statements13.class, byIndex()), "for (var i in a)");
+	}
+
 	@Test
 	public void testForEachMapBlock() {
 		assertCodeDoesNotContain(Statements13.class, "hasOwnProperty");
@@ -100,4 +125,26 @@ public class StatementsGeneratorTest {
 		// integer 2 when run from eclipse, but return the double 2.0 when run from maven...
 		assertEquals(2, ((Number) execute(Statements16.class)).intValue());
 	}
+
+	@Test
+	public void testLazyClassInitialization() {
+		String code = generate(Statements18.class, new GeneratorConfigurationBuilder().lazyClassInitialization(true));
+		assertCodeContains(code, "stjs.lazy(\"Statements18\", function(){Statements18 = function(){");
+		assertCodeContains(code, "Statements18a.log += \"sub;\";})();});");
+		assertCodeContains(code, "if (!stjs.mainCallDisabled) Statements18.main();");
+	}
+
+	@Test
+	public void testLazyClassInitializationExecution() {
+		// the classes are initialized when they are used, like in Java, and not in the order of the files
+		assertEquals("base;other;sub;main;true", executeStatements18(false));
+		assertEquals("base;sub;main;other;true", executeStatements18(true));
+	}
+
+	private static Object executeStatements18(boolean lazy) {
+		// the dependencies are generated again, as the ones already generated are used whatever their configuration
+		generate(Statements18a.class, new GeneratorConfigurationBuilder().lazyClassInitialization(lazy));
+		generate(Statements18b.class, new GeneratorConfigurationBuilder().lazyClassInitialization(lazy));
+		return execute(Statements18.class, new GeneratorConfigurationBuilder().lazyClassInitialization(lazy));
+	}
 }
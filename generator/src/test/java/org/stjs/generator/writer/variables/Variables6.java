@@ -0,0 +1,9 @@
+package org.stjs.generator.writer.variables;
+
+public class Variables6 {
+	@SuppressWarnings("unused")
+	public void method() {
+		long x = 0xFFL, y = 0xFF, z = 123L;
+		double d = 1.5d;
+	}
+}
@@ -33,4 +33,10 @@ public class VariablesGeneratorTest {
 		assertCodeContains(Variables5.class, "y = this.x;");
 		assertCodeContains(Variables5.class, "k = x;");
 	}
+
+	@Test
+	public void testNumberLiterals() {
+		assertCodeContains(Variables6.class, "var x = 0xFF, y = 0xFF, z = 123;");
+		assertCodeContains(Variables6.class, "var d = 1.5;");
+	}
 }
@@ -0,0 +1,264 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * This is the base of the goals that stay in memory to generate the JavaScript files of the project several times. The
+ * classes of the dependencies and the type information collected by the generator are kept between two generations.
+ * Only the classes of the project are loaded again, when the compiled classes changed, and the type information of the
+ * previous classes is released. The goal must be restarted if the dependencies change.
+ *
+ * @author acraciun
+ */
+abstract public class AbstractResidentSTJSMojo extends MainSTJSMojo {
+	protected static final String CLASS_SUFFIX = ".class";
+	protected static final String JAVA_SUFFIX = ".java";
+
+	private ClassLoader dependenciesClassLoader;
+
+	private ClassLoader builtProjectClassLoader;
+
+	private Map<String, Long> classFiles = Collections.emptyMap();
+
+	private final List<String> errors = new ArrayList<String>();
+
+	/**
+	 * the classes that changed since the last generation, null if they are not known
+	 */
+	private Set<String> changedClassNames;
+
+	private boolean classFilesChanged = true;
+
+	/**
+	 * the packages of the project's sources: they are scanned by the first generation, then only the packages of the
+	 * changed sources are added. The packages whose sources were all removed stay allowed until the goal is restarted.
+	 */
+	private Set<String> sourcePackages;
+
+	/**
+	 * the sources that changed since the last generation, null if they are not known
+	 */
+	private Collection<File> changedSources;
+
+	/**
+	 * generates the JavaScript files that changed since the last generation, scanning all the sources to find them.
+	 *
+	 * @return the errors found during the generation
+	 */
+	protected List<String> generateFiles() {
+		return generateFiles(null);
+	}
+
+	/**
+	 * generates the JavaScript files of the given changed files (sources or compiled classes of the project). If the
+	 * changed files are not known (null), all the sources are scanned.
+	 *
+	 * @return the errors found during the generation
+	 */
+	protected List<String> generateFiles(Collection<File> changedFiles) {
+		errors.clear();
+		changedClassNames = changedFiles == null ? null : getClassNames(changedFiles);
+		changedSources = changedFiles == null ? null : withSuffix(changedFiles, JAVA_SUFFIX);
+		classFilesChanged = changedFiles == null || hasSuffix(changedFiles, CLASS_SUFFIX);
+		try {
+			executeGeneration();
+		} catch (MojoFailureException e) {
+			// the errors were already collected by reportError
+			if (errors.isEmpty()) {
+				errors.add(e.getMessage());
+			}
+		} catch (MojoExecutionException e) {
+			errors.add(e.getMessage());
+		} catch (RuntimeException e) {
+			errors.add(e.toString());
+		} finally {
+			changedClassNames = null;
+			changedSources = null;
+		}
+		return new ArrayList<String>(errors);
+	}
+
+	/**
+	 * runs one generation. The errors are collected by {@link #reportError(File, int, int, String, Exception)}.
+	 */
+	protected void executeGeneration() throws MojoExecutionException, MojoFailureException {
+		super.execute();
+	}
+
+	@Override
+	protected Set<String> getChangedClassNames() {
+		return changedClassNames;
+	}
+
+	@Override
+	protected Collection<String> getSourcePackages() throws MojoExecutionException {
+		if (sourcePackages == null || changedSources == null) {
+			sourcePackages = new HashSet<String>(super.getSourcePackages());
+		} else {
+			for (String className : getClassNames(changedSources)) {
+				int dot = className.lastIndexOf('.');
+				sourcePackages.add(dot < 0 ? "" : className.substring(0, dot));
+			}
+		}
+		return sourcePackages;
+	}
+
+	/**
+	 * @return the names of the top-level classes of the given sources and compiled classes of the project
+	 */
+	Set<String> getClassNames(Collection<File> files) {
+		Set<String> classNames = new LinkedHashSet<String>();
+		for (File file : files) {
+			String path = file.getAbsolutePath();
+			if (path.endsWith(JAVA_SUFFIX)) {
+				for (String sourceRoot : getCompileSourceRoots()) {
+					addClassName(new File(sourceRoot), path, JAVA_SUFFIX, classNames);
+				}
+			} else if (path.endsWith(CLASS_SUFFIX)) {
+				addClassName(getBuildOutputDirectory(), path, CLASS_SUFFIX, classNames);
+			}
+		}
+		return classNames;
+	}
+
+	private static void addClassName(File root, String path, String suffix, Set<String> classNames) {
+		String rootPath = root.getAbsolutePath() + File.separator;
+		if (!path.startsWith(rootPath)) {
+			return;
+		}
+		String className = path.substring(rootPath.length(), path.length() - suffix.length()).replace(
+				File.separatorChar, '.');
+		// the inner classes are generated with their outer class
+		int inner = className.indexOf('$');
+		classNames.add(inner < 0 ? className : className.substring(0, inner));
+	}
+
+	private static Collection<File> withSuffix(Collection<File> files, String suffix) {
+		List<File> result = new ArrayList<File>();
+		for (File file : files) {
+			if (file.getName().endsWith(suffix)) {
+				result.add(file);
+			}
+		}
+		return result;
+	}
+
+	private static boolean hasSuffix(Collection<File> files, String suffix) {
+		for (File file : files) {
+			if (file.getName().endsWith(suffix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * releases the type information kept for the project's classes
+	 */
+	protected void dispose() {
+		if (builtProjectClassLoader != null) {
+			super.releaseBuiltProjectClassLoader(builtProjectClassLoader);
+			builtProjectClassLoader = null;
+		}
+	}
+
+	/**
+	 * the dependencies are loaded once, while the classes of the project are loaded again if any of them changed
+	 * since the last generation.
+	 */
+	@Override
+	protected ClassLoader getBuiltProjectClassLoader() throws MojoExecutionException {
+		if (builtProjectClassLoader != null && !classFilesChanged) {
+			return builtProjectClassLoader;
+		}
+		File outputDirectory = getBuildOutputDirectory();
+		Map<String, Long> currentClassFiles = new HashMap<String, Long>();
+		collectFiles(outputDirectory, CLASS_SUFFIX, currentClassFiles);
+		if (builtProjectClassLoader != null && currentClassFiles.equals(classFiles)) {
+			return builtProjectClassLoader;
+		}
+
+		try {
+			if (dependenciesClassLoader == null) {
+				List<URL> urls = new ArrayList<URL>();
+				for (String element : getClasspathElements()) {
+					File file = new File(element);
+					if (!file.equals(outputDirectory)) {
+						urls.add(file.toURI().toURL());
+					}
+				}
+				dependenciesClassLoader = new URLClassLoader(urls.toArray(new URL[urls.size()]), Thread
+						.currentThread().getContextClassLoader());
+			}
+			if (builtProjectClassLoader != null) {
+				getLog().info("The compiled classes changed, reloading them");
+				// the type wrappers, the class lookups and the STJS manifests of the previous classes
+				super.releaseBuiltProjectClassLoader(builtProjectClassLoader);
+			}
+			builtProjectClassLoader = new URLClassLoader(new URL[] { outputDirectory.toURI().toURL() },
+					dependenciesClassLoader);
+			classFiles = currentClassFiles;
+			return builtProjectClassLoader;
+		} catch (Exception ex) {
+			throw new MojoExecutionException("Cannot get builtProjectClassLoader " + ex, ex);
+		}
+	}
+
+	/**
+	 * puts in the given map the last modification time of all the files with the given suffix found in the folder.
+	 */
+	protected void collectFiles(File dir, String suffix, Map<String, Long> files) {
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File child : children) {
+			if (child.isDirectory()) {
+				collectFiles(child, suffix, files);
+			} else if (child.getName().endsWith(suffix)) {
+				files.put(child.getPath(), child.lastModified());
+			}
+		}
+	}
+
+	@Override
+	protected void releaseBuiltProjectClassLoader(ClassLoader classLoader) {
+		// the class loader is kept for the next generation, it's released when it's replaced (see
+		// getBuiltProjectClassLoader) or when the goal stops (see dispose)
+	}
+
+	@Override
+	protected void reportError(File inputFile, int line, int column, String message, Exception cause) {
+		super.reportError(inputFile, line, column, message, cause);
+		errors.add(inputFile + ":" + line + ":" + column + ": " + message);
+	}
+}
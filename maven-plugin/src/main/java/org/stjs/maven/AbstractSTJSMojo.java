@@ -18,18 +18,29 @@ package org.stjs.maven;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
@@ -41,19 +52,30 @@ import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
 import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
 import org.codehaus.plexus.util.DirectoryScanner;
+import org.codehaus.plexus.util.SelectorUtils;
 import org.jgrapht.DirectedGraph;
 import org.jgrapht.alg.CycleDetector;
 import org.jgrapht.graph.DefaultDirectedGraph;
 import org.jgrapht.graph.DefaultEdge;
 import org.jgrapht.traverse.TopologicalOrderIterator;
 import org.sonatype.plexus.build.incremental.BuildContext;
+import org.stjs.generator.BridgeClass;
 import org.stjs.generator.ClassWithJavascript;
 import org.stjs.generator.GenerationDirectory;
 import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
 import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.GeneratorConstants;
 import org.stjs.generator.JavascriptFileGenerationException;
 import org.stjs.generator.STJSClass;
+import org.stjs.generator.STJSManifest;
+import org.stjs.generator.closure.ClosureOptimizer;
+import org.stjs.generator.closure.ExternsGenerator;
+import org.stjs.generator.type.ClassLookupCache;
+import org.stjs.generator.type.MethodSelector;
 import org.stjs.generator.type.TypeWrappers;
+import org.stjs.generator.utils.ClassUtils;
+import org.stjs.generator.utils.NodeUtils;
 
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
@@ -126,6 +148,72 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected boolean generateSourceMap;
 
+	/**
+	 * If true, the generated JavaScript has no indentation and no comments and the local variables and the parameters
+	 * get short names. The names of the types and of their fields and methods do not change.
+	 * 
+	 * @parameter expression="${minify}" default-value="false"
+	 */
+	protected boolean minify;
+
+	/**
+	 * If true, each anonymous class is defined only the first time its creation expression is evaluated, instead of
+	 * every time. The final local variables used by the anonymous class are then passed to its constructor.
+	 * 
+	 * @parameter expression="${hoistAnonymousClasses}" default-value="false"
+	 */
+	protected boolean hoistAnonymousClasses;
+
+	/**
+	 * If true, the for-each loops on arrays are generated as loops on the indexes of the array instead of for-in loops,
+	 * which are much slower. The missing elements of a sparse array are then visited too.
+	 * 
+	 * @parameter expression="${iterateArraysByIndex}" default-value="false"
+	 */
+	protected boolean iterateArraysByIndex;
+
+	/**
+	 * If true, the instance fields are initialized in the constructor instead of the prototype, so all the instances of
+	 * a class have the same properties, added in the same order.
+	 * 
+	 * @parameter expression="${initializeFieldsInConstructor}" default-value="false"
+	 */
+	protected boolean initializeFieldsInConstructor;
+
+	/**
+	 * If true, a deserializer is generated for each class, so stjs.parseJSON can use the browser's JSON.parse and
+	 * assign directly the fields of the built objects. The JSON properties that are not fields of the class are then
+	 * ignored.
+	 * 
+	 * @parameter expression="${generateJsonDeserializers}" default-value="false"
+	 */
+	protected boolean generateJsonDeserializers;
+
+	/**
+	 * If true, the constant fields (final static fields of a primitive type or String initialized with a compile-time
+	 * constant expression) are replaced by their value where they are used, and the constant expressions using them are
+	 * computed at generation time. The fields are still generated.
+	 * 
+	 * @parameter expression="${inlineConstants}" default-value="false"
+	 */
+	protected boolean inlineConstants;
+
+	/**
+	 * If true, the calls of the trivial methods that cannot be overridden (getters, setters and static helpers
+	 * returning a simple expression) are replaced by the body of the method. The methods are still generated.
+	 * 
+	 * @parameter expression="${inlineMethods}" default-value="false"
+	 */
+	protected boolean inlineMethods;
+
+	/**
+	 * If true, the top-level classes are defined the first time they are used and not when the scripts are loaded, and
+	 * their static initializers run at that point, like in Java. This makes the pages using many classes start faster.
+	 * 
+	 * @parameter expression="${lazyClassInitialization}" default-value="false"
+	 */
+	protected boolean lazyClassInitialization;
+
 	/**
 	 * If true, it packs all the generated Javascript file (using the correct dependency order) into a single file named
 	 * ${project.artifactName}.js
@@ -134,11 +222,84 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	protected boolean pack;
 
+	/**
+	 * If true, the pack file contains only the classes reachable from the entry classes (following the dependencies of
+	 * the generated classes) instead of all the classes of the project.
+	 * 
+	 * @parameter expression="${treeShaking}" default-value="false"
+	 */
+	protected boolean treeShaking;
+
+	/**
+	 * The classes from which the tree shaking starts. If none is given, the classes having a main method are used.
+	 * 
+	 * @parameter
+	 */
+	protected List<String> entryClasses;
+
+	/**
+	 * If true, the pack file is also optimized with the Closure Compiler in ADVANCED mode, into the file named
+	 * ${project.artifactName}.min.js. The names of the bridges used by the packed classes, the names of the packed
+	 * classes and the names of their instance fields (so a JSON string can still be parsed) are kept, but their static
+	 * fields and their methods are renamed, so they cannot be accessed by their name from outside the pack (by
+	 * hand-written Javascript code). When the source maps are generated, the source map of the optimized file points
+	 * to the Java sources.
+	 * 
+	 * @parameter expression="${optimizePack}" default-value="false"
+	 */
+	protected boolean optimizePack;
+
+	/**
+	 * If true, the externs of the bridges used by the classes of the project are written in the file named
+	 * ${project.artifactName}-externs.js, so the generated code can be given to an external Javascript optimizer (like
+	 * the Closure Compiler) without having the members of the bridges renamed.
+	 * 
+	 * @parameter expression="${generateExterns}" default-value="false"
+	 */
+	protected boolean generateExterns;
+
+	/**
+	 * If true, the JavaScript files are generated in parallel.
+	 * 
+	 * @parameter expression="${parallel}" default-value="false"
+	 */
+	protected boolean parallel;
+
+	/**
+	 * The number of threads used to generate the JavaScript files when the parallel generation is enabled. If it's not
+	 * a positive number, the number of the available processors is used.
+	 * 
+	 * @parameter expression="${generatorThreads}" default-value="0"
+	 */
+	protected int generatorThreads;
+
+	/**
+	 * If true, an index is kept in the build directory with the hash of each source, the hash of its API and its
+	 * dependencies. Only the classes whose source changed and the classes depending on a class whose API changed are
+	 * generated again. Otherwise (the default) the timestamps of the generated files are compared to the ones of the
+	 * compiled classes.
+	 * 
+	 * @parameter expression="${incremental}" default-value="false"
+	 */
+	protected boolean incremental;
+
 	/**
 	 * @parameter expression="${sourceEncoding}" default-value="${project.build.sourceEncoding}"
 	 */
 	private String sourceEncoding;
 
+	/**
+	 * the classes already packed by this mojo. It's useful when the same mojo packs the files several times (i.e. the
+	 * watch mode), as only the files that were generated again since have to be read.
+	 */
+	private final Map<String, PackedClass> packedClasses = new HashMap<String, PackedClass>();
+
+	/**
+	 * the hashes of the files read by this mojo with the timestamp of the file when the hash was computed
+	 */
+	private final Map<File, String> contentHashes = new HashMap<File, String>();
+	private final Map<File, Long> contentTimestamps = new HashMap<File, Long>();
+
 	abstract protected List<String> getCompileSourceRoots();
 
 	abstract protected GenerationDirectory getGeneratedSourcesDirectory();
@@ -147,7 +308,27 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 	abstract protected List<String> getClasspathElements() throws DependencyResolutionRequiredException;
 
-	private ClassLoader getBuiltProjectClassLoader() throws MojoExecutionException {
+	/**
+	 * @return the names of the classes whose source or compiled class changed since the last generation, or null if
+	 *         they are not known, in which case all the sources are scanned to find the stale ones
+	 */
+	protected Set<String> getChangedClassNames() {
+		return null;
+	}
+
+	/**
+	 * @return the packages of the sources of the project, that the generated classes are allowed to use. All the
+	 *         source folders are scanned to find them.
+	 */
+	protected Collection<String> getSourcePackages() throws MojoExecutionException {
+		Set<String> packages = new HashSet<String>();
+		for (String sourceRoot : getCompileSourceRoots()) {
+			packages.addAll(accumulatePackages(new File(sourceRoot)));
+		}
+		return packages;
+	}
+
+	protected ClassLoader getBuiltProjectClassLoader() throws MojoExecutionException {
 		try {
 			List<String> runtimeClasspathElements = getClasspathElements();
 			URL[] runtimeUrls = new URL[runtimeClasspathElements.size()];
@@ -168,15 +349,20 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 		getLog().info("Generating JavaScript files to " + gendir.getAbsolutePath());
 
-		// clear cache before each execution
-		TypeWrappers.clearCache();
-
 		ClassLoader builtProjectClassLoader = getBuiltProjectClassLoader();
 		Generator generator = new Generator();
 
 		GeneratorConfigurationBuilder configBuilder = new GeneratorConfigurationBuilder();
 		configBuilder.generateArrayHasOwnProperty(generateArrayHasOwnProperty);
 		configBuilder.generateSourceMap(generateSourceMap);
+		configBuilder.minify(minify);
+		configBuilder.hoistAnonymousClasses(hoistAnonymousClasses);
+		configBuilder.iterateArraysByIndex(iterateArraysByIndex);
+		configBuilder.initializeFieldsInConstructor(initializeFieldsInConstructor);
+		configBuilder.generateJsonDeserializers(generateJsonDeserializers);
+		configBuilder.inlineConstants(inlineConstants);
+		configBuilder.inlineMethods(inlineMethods);
+		configBuilder.lazyClassInitialization(lazyClassInitialization);
 		if (sourceEncoding != null) {
 			configBuilder.sourceEncoding(sourceEncoding);
 		}
@@ -188,23 +374,27 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 			configBuilder.allowedPackages(allowedPackages);
 		}
 
-		// scan all the packages
-		for (String sourceRoot : getCompileSourceRoots()) {
-			File sourceDir = new File(sourceRoot);
-			Collection<String> packages = accumulatePackages(sourceDir);
-			configBuilder.allowedPackages(packages);
-		}
+		configBuilder.allowedPackages(getSourcePackages());
 
-		int generatedFiles = 0;
-		boolean hasFailures = false;
+		GeneratorConfiguration configuration = configBuilder.build();
+		BuildIndex index = incremental ? loadBuildIndex(configuration) : null;
+		Set<String> changedClassNames = getChangedClassNames();
+		List<GenerationTask> tasks = new ArrayList<GenerationTask>();
 		// scan the modified sources
 		for (String sourceRoot : getCompileSourceRoots()) {
 			File sourceDir = new File(sourceRoot);
-			List<File> sources = new ArrayList<File>();
+			List<File> sources;
 			SourceMapping mapping = new SuffixMapping(".java", ".js");
 			SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
 
-			sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, staleMillis);
+			if (index == null && changedClassNames != null) {
+				// the caller already knows which files changed, there is no need to scan all the sources
+				sources = getChangedSources(sourceDir, changedClassNames);
+			} else {
+				// with the build index all the files are taken and the index decides which ones are stale
+				sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, index == null ? staleMillis
+						: Integer.MIN_VALUE);
+			}
 			for (File source : sources) {
 				if (source.getName().equals(PACKAGE_INFO_JAVA)) {
 					getLog().debug("Skipping " + source);
@@ -214,46 +404,338 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 				try {
 					File absoluteTarget = (File) mapping.getTargetFiles(gendir.getAbsolutePath(), source.getPath())
 							.iterator().next();
-					if (getLog().isDebugEnabled()) {
-						getLog().debug("Generating " + absoluteTarget);
-					}
-					buildContext.removeMessages(absoluteSource);
-
-					if (!absoluteTarget.getParentFile().exists() && !absoluteTarget.getParentFile().mkdirs()) {
-						getLog().error("Cannot create output directory:" + absoluteTarget.getParentFile());
-						continue;
-					}
 					String className = getClassNameForSource(source.getPath());
-					generator.generateJavascript(builtProjectClassLoader, className, sourceDir, gendir,
-							getBuildOutputDirectory(), configBuilder.build());
-					++generatedFiles;
-
+					tasks.add(new GenerationTask(generator, builtProjectClassLoader, className, sourceDir,
+							absoluteSource, absoluteTarget, gendir, configuration));
 				} catch (InclusionScanException e) {
 					throw new MojoExecutionException("Cannot scan the source directory:" + e, e);
-				} catch (JavascriptFileGenerationException e) {
-					buildContext.addMessage(e.getInputFile(), e.getSourcePosition().getLine(), e.getSourcePosition()
-							.getColumn(), e.getMessage(), BuildContext.SEVERITY_ERROR, null);
-					hasFailures = true;
-					// continue with the next file
-				} catch (Exception e) {
-					// TODO - maybe should filter more here
-					buildContext.addMessage(absoluteSource, 1, 1, e.toString(), BuildContext.SEVERITY_ERROR, e);
-					hasFailures = true;
-					// throw new MojoExecutionException("Error generating javascript:" + e, e);
 				}
 			}
 		}
 
+		if (index != null) {
+			tasks = selectStaleTasks(index, tasks, builtProjectClassLoader);
+		}
+		for (Iterator<GenerationTask> it = tasks.iterator(); it.hasNext();) {
+			GenerationTask task = it.next();
+			File absoluteTarget = task.getAbsoluteTarget();
+			if (getLog().isDebugEnabled()) {
+				getLog().debug("Generating " + absoluteTarget);
+			}
+			buildContext.removeMessages(task.getAbsoluteSource());
+
+			if (!absoluteTarget.getParentFile().mkdirs() && !absoluteTarget.getParentFile().isDirectory()) {
+				getLog().error("Cannot create output directory:" + absoluteTarget.getParentFile());
+				it.remove();
+			}
+		}
+
+		File manifestFile = getManifestFile();
+		boolean writeManifest = !tasks.isEmpty() || !manifestFile.exists();
+		if (writeManifest) {
+			// the manifest of the previous build would hide the classes that are generated again
+			deleteManifest(manifestFile, builtProjectClassLoader);
+		}
+
+		if (parallel && tasks.size() > 1) {
+			runInParallel(tasks);
+		} else {
+			for (GenerationTask task : tasks) {
+				task.call();
+			}
+		}
+		if (writeManifest) {
+			writeManifest(manifestFile, generator, builtProjectClassLoader, gendir, tasks, index);
+		}
+		releaseBuiltProjectClassLoader(builtProjectClassLoader);
+		if (getLog().isDebugEnabled()) {
+			getLog().debug("Type cache:" + TypeWrappers.getStatistics());
+			getLog().debug("Method resolution cache:" + MethodSelector.getStatistics());
+			getLog().debug("Class lookup cache:" + ClassLookupCache.getStatistics());
+		}
+
+		// the errors are reported in the order of the sources, whatever the way the files were generated
+		int generatedFiles = 0;
+		boolean hasFailures = false;
+		for (GenerationTask task : tasks) {
+			Exception e = task.getError();
+			if (index != null) {
+				updateBuildIndex(index, task);
+			}
+			if (e == null) {
+				++generatedFiles;
+			} else if (e instanceof JavascriptFileGenerationException) {
+				JavascriptFileGenerationException ge = (JavascriptFileGenerationException) e;
+				reportError(ge.getInputFile(), ge.getSourcePosition().getLine(), ge.getSourcePosition().getColumn(),
+						ge.getMessage(), null);
+				hasFailures = true;
+			} else {
+				// TODO - maybe should filter more here
+				reportError(task.getAbsoluteSource(), 1, 1, e.toString(), e);
+				hasFailures = true;
+			}
+		}
+
+		if (index != null) {
+			try {
+				index.store();
+			} catch (IOException e) {
+				throw new MojoExecutionException("Cannot write the build index " + index.getFile() + ":" + e, e);
+			}
+		}
+
 		getLog().info("Generated " + generatedFiles + " JavaScript files");
 		if (generatedFiles > 0) {
 			filesGenerated(generator, gendir);
 		}
+		if (getLog().isDebugEnabled()) {
+			getLog().debug(
+					"Dependency resolution: " + generator.getResolvedClassCount() + " classes resolved, "
+							+ generator.getGeneratedOnDemandCount() + " generated on demand");
+		}
 
 		if (hasFailures) {
 			throw new MojoFailureException("Errors generating JavaScript");
 		}
 	}
 
+	/**
+	 * called once the generation is finished with the class loader returned by {@link #getBuiltProjectClassLoader()}
+	 */
+	protected void releaseBuiltProjectClassLoader(ClassLoader builtProjectClassLoader) {
+		// the class loader is built for each execution, so its types will never be used again. This forgets the class
+		// lookups and the STJS manifests of the class loader as well
+		TypeWrappers.clearCache(builtProjectClassLoader);
+	}
+
+	protected void reportError(File inputFile, int line, int column, String message, Exception cause) {
+		buildContext.addMessage(inputFile, line, column, message, BuildContext.SEVERITY_ERROR, cause);
+	}
+
+	private File getBuildIndexFile() {
+		// one index for each output directory, as the main and the test classes are generated separately
+		return new File(project.getBuild().getDirectory(), "stjs-" + getBuildOutputDirectory().getName() + ".index");
+	}
+
+	private BuildIndex loadBuildIndex(GeneratorConfiguration configuration) throws MojoExecutionException {
+		File indexFile = getBuildIndexFile();
+		try {
+			BuildIndex index = new BuildIndex(indexFile);
+			// the files generated with other options have to be generated again
+			index.setOptions("generateArrayHasOwnProperty=" + configuration.isGenerateArrayHasOwnProperty()
+					+ ",generateSourceMap=" + configuration.isGenerateSourceMap() + ",minify="
+					+ configuration.isMinify() + ",hoistAnonymousClasses=" + configuration.isHoistAnonymousClasses()
+					+ ",iterateArraysByIndex=" + configuration.isIterateArraysByIndex()
+					+ ",initializeFieldsInConstructor=" + configuration.isInitializeFieldsInConstructor()
+					+ ",generateJsonDeserializers="
+					+ configuration.isGenerateJsonDeserializers() + ",inlineConstants="
+					+ configuration.isInlineConstants() + ",inlineMethods=" + configuration.isInlineMethods()
+					+ ",lazyClassInitialization=" + configuration.isLazyClassInitialization());
+			return index;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot read the build index " + indexFile + ":" + e, e);
+		}
+	}
+
+	/**
+	 * @return the tasks that have to be generated according to the build index: the classes whose source changed (or
+	 *         whose generated files are missing) and the classes depending on a class whose API changed or that was
+	 *         removed.
+	 */
+	private List<GenerationTask> selectStaleTasks(BuildIndex index, List<GenerationTask> candidates,
+			final ClassLoader builtProjectClassLoader) throws MojoExecutionException {
+		final Map<String, GenerationTask> tasksByClass = new LinkedHashMap<String, GenerationTask>();
+		for (GenerationTask task : candidates) {
+			tasksByClass.put(task.getClassName(), task);
+		}
+
+		StaleClassSelector selector = new StaleClassSelector(index) {
+			@Override
+			protected String computeSourceHash(String className) throws IOException {
+				// the compiled class is part of the hash, as the generator uses both. This way a source generated
+				// before being compiled is generated again once the class is compiled
+				return getContentHash(tasksByClass.get(className).getAbsoluteSource())
+						+ getContentHash(getClassFile(className));
+			}
+
+			@Override
+			protected String computeApiHash(String className) {
+				return AbstractSTJSMojo.this.getApiHash(builtProjectClassLoader, className);
+			}
+
+			@Override
+			protected boolean isOutputMissing(String className) {
+				return !tasksByClass.get(className).getAbsoluteTarget().exists() || !getStjsFile(className).exists();
+			}
+		};
+
+		Set<String> stale;
+		try {
+			stale = selector.select(tasksByClass.keySet());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot read the sources:" + e, e);
+		}
+
+		List<GenerationTask> tasks = new ArrayList<GenerationTask>(stale.size());
+		for (GenerationTask task : candidates) {
+			task.setSourceHash(selector.getSourceHash(task.getClassName()));
+			task.setApiHash(selector.getApiHash(task.getClassName()));
+			if (stale.contains(task.getClassName())) {
+				tasks.add(task);
+			}
+		}
+		getLog().info(
+				"Build index: " + tasks.size() + " out of " + candidates.size() + " classes have to be generated ("
+						+ selector.getApiChanged().size() + " API changes)");
+		return tasks;
+	}
+
+	/**
+	 * the hash of a file is computed again only if the file changed since the last time this mojo read it
+	 */
+	private String getContentHash(File file) throws IOException {
+		if (!file.exists()) {
+			return "";
+		}
+		long lastModified = file.lastModified();
+		Long knownLastModified = contentTimestamps.get(file);
+		if (knownLastModified == null || knownLastModified != lastModified) {
+			contentHashes.put(file, BuildIndex.contentHash(file));
+			contentTimestamps.put(file, lastModified);
+		}
+		return contentHashes.get(file);
+	}
+
+	private String getApiHash(ClassLoader builtProjectClassLoader, String className) {
+		try {
+			return BuildIndex.apiHash(builtProjectClassLoader.loadClass(className));
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			return null;
+		}
+	}
+
+	private File getClassFile(String className) {
+		return new File(getBuildOutputDirectory(), className.replace('.', File.separatorChar) + ".class");
+	}
+
+	private File getStjsFile(String className) {
+		return new File(getBuildOutputDirectory(), className.replace('.', File.separatorChar) + ".stjs");
+	}
+
+	private File getManifestFile() {
+		return new File(getBuildOutputDirectory(), GeneratorConstants.MANIFEST_FILE);
+	}
+
+	private void deleteManifest(File manifestFile, ClassLoader builtProjectClassLoader) throws MojoExecutionException {
+		if (manifestFile.exists() && !manifestFile.delete()) {
+			throw new MojoExecutionException("Cannot delete the STJS manifest " + manifestFile);
+		}
+		STJSManifest.clearCache(builtProjectClassLoader);
+	}
+
+	/**
+	 * writes the manifest with all the classes of the project that were generated, so the modules using this project
+	 * do not have to read the properties file of each class. The API hash of the classes that were not generated now
+	 * is taken from the build index, if there is one.
+	 */
+	private void writeManifest(File manifestFile, Generator generator, ClassLoader builtProjectClassLoader,
+			GenerationDirectory gendir, List<GenerationTask> tasks, BuildIndex index) throws MojoExecutionException {
+		Map<String, String> knownApiHashes = new HashMap<String, String>();
+		for (GenerationTask task : tasks) {
+			if (task.getApiHash() != null) {
+				knownApiHashes.put(task.getClassName(), task.getApiHash());
+			}
+		}
+
+		List<STJSManifest.Entry> entries = new ArrayList<STJSManifest.Entry>();
+		for (String className : getProjectClassNames(gendir)) {
+			Class<?> clazz;
+			try {
+				clazz = builtProjectClassLoader.loadClass(className);
+			} catch (ClassNotFoundException e) {
+				// not compiled yet
+				continue;
+			}
+			String apiHash = knownApiHashes.get(className);
+			if (apiHash == null && index != null) {
+				apiHash = index.getApiHash(className);
+			}
+			if (ClassUtils.isBridge(clazz)) {
+				entries.add(new STJSManifest.Entry(className, null, Collections.<String> emptyList(), true, apiHash));
+			} else if (getStjsFile(className).exists()) {
+				STJSClass stjsClass = (STJSClass) generator.getExistingStjsClass(builtProjectClassLoader, clazz);
+				URI javascriptFile = stjsClass.getJavascriptFiles().isEmpty() ? null : stjsClass.getJavascriptFiles()
+						.get(0);
+				entries.add(new STJSManifest.Entry(className, javascriptFile, stjsClass.getDependencies(), false,
+						apiHash));
+			}
+		}
+
+		try {
+			STJSManifest.write(manifestFile, entries);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot write the STJS manifest " + manifestFile + ":" + e, e);
+		}
+		// the manifest is read again with the new classes
+		STJSManifest.clearCache(builtProjectClassLoader);
+		getLog().debug("STJS manifest written with " + entries.size() + " classes");
+	}
+
+	/**
+	 * @return the names of the classes of all the sources of the project
+	 */
+	private List<String> getProjectClassNames(GenerationDirectory gendir) throws MojoExecutionException {
+		List<String> classNames = new ArrayList<String>();
+		for (String sourceRoot : getCompileSourceRoots()) {
+			SourceMapping mapping = new SuffixMapping(".java", ".js");
+			SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
+			for (File source : accumulateSources(gendir, new File(sourceRoot), mapping, stjsMapping,
+					Integer.MIN_VALUE)) {
+				if (!source.getName().equals(PACKAGE_INFO_JAVA)) {
+					classNames.add(getClassNameForSource(source.getPath()));
+				}
+			}
+		}
+		return classNames;
+	}
+
+	private void updateBuildIndex(BuildIndex index, GenerationTask task) {
+		if (task.getError() == null) {
+			index.update(task.getClassName(), task.getSourceHash(), task.getApiHash(), task.getResult());
+		} else {
+			// so it's generated again next time
+			index.remove(task.getClassName());
+		}
+	}
+
+	private int getGeneratorThreads() {
+		return generatorThreads > 0 ? generatorThreads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * generates the files of the given tasks using a pool of threads. Each task keeps its own error (if any), so the
+	 * caller can report them afterwards.
+	 */
+	private void runInParallel(List<GenerationTask> tasks) throws MojoExecutionException {
+		int threads = Math.min(getGeneratorThreads(), tasks.size());
+		getLog().info("Generating " + tasks.size() + " JavaScript files using " + threads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while generating the JavaScript files", e);
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("Error generating javascript:" + e.getCause(), e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
 	/**
 	 * packs all the files in a single file
 	 * 
@@ -293,14 +775,12 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 					String className = getClassNameForSource(source.getPath());
 					// add this file to the hashmap to know that this class is part of the project
 					currentProjectsFiles.put(className, absoluteTarget);
-					ClassWithJavascript cjs = generator.getExistingStjsClass(builtProjectClassLoader,
-							builtProjectClassLoader.loadClass(className));
+					PackedClass packedClass = getPackedClass(generator, builtProjectClassLoader, className,
+							absoluteTarget);
 					dependencyGraph.addVertex(className);
-					for (ClassWithJavascript dep : cjs.getDirectDependencies()) {
-						if (dep instanceof STJSClass) {
-							dependencyGraph.addVertex(dep.getClassName());
-							dependencyGraph.addEdge(dep.getClassName(), className);
-						}
+					for (String dep : packedClass.getDependencies()) {
+						dependencyGraph.addVertex(dep);
+						dependencyGraph.addEdge(dep, className);
 					}
 
 				}
@@ -313,17 +793,29 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 						+ cycles.toString().replace(',', '\n')
 						+ "\n Please fix the problem before continuing or disable the packing");
 			}
+			Set<String> packedClassNames = currentProjectsFiles.keySet();
+			if (treeShaking) {
+				packedClassNames = getReachableClasses(builtProjectClassLoader, currentProjectsFiles.keySet());
+			}
 			// dump all the files in the dependency order in the pack file
+			List<String> orderedClassNames = new ArrayList<String>();
 			Iterator<String> it = new TopologicalOrderIterator<String, DefaultEdge>(dependencyGraph);
 			while (it.hasNext()) {
-				File targetFile = currentProjectsFiles.get(it.next());
-				if (targetFile != null) {
+				String className = it.next();
+				if (packedClassNames.contains(className)) {
 					// for this project's files
-					Files.copy(targetFile, allSourcesFile);
+					allSourcesFile.write(packedClasses.get(className).getContent());
 					allSourcesFile.write('\n');
 					allSourcesFile.flush();
+					orderedClassNames.add(className);
 				}
 			}
+			// forget the classes that were removed
+			packedClasses.keySet().retainAll(currentProjectsFiles.keySet());
+
+			if (optimizePack) {
+				optimizePackedClasses(generator, gendir, builtProjectClassLoader, orderedClassNames);
+			}
 
 		} catch (Exception ex) {
 			throw new MojoFailureException("Error when packing files:" + ex.getMessage(), ex);
@@ -333,6 +825,163 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 	}
 
+	/**
+	 * optimizes the packed classes (given in the order they are packed) with the Closure Compiler
+	 */
+	private void optimizePackedClasses(Generator generator, GenerationDirectory gendir,
+			ClassLoader builtProjectClassLoader, List<String> classNames) throws ClassNotFoundException, IOException {
+		ExternsGenerator externs = new ExternsGenerator();
+		for (String className : classNames) {
+			externs.addGeneratedType(builtProjectClassLoader.loadClass(className));
+			for (String bridge : packedClasses.get(className).getBridges()) {
+				externs.addBridge(builtProjectClassLoader.loadClass(bridge));
+			}
+		}
+		StringBuilder externsCode = new StringBuilder();
+		externs.write(externsCode);
+
+		Charset charset = sourceEncoding != null ? Charset.forName(sourceEncoding) : Charset.defaultCharset();
+		ClosureOptimizer optimizer = new ClosureOptimizer(externsCode.toString());
+		int packSize = 0;
+		for (String className : classNames) {
+			byte[] content = packedClasses.get(className).getContent();
+			packSize += content.length;
+			File sourceMapFile = generator.getSourceMapFile(gendir.getAbsolutePath(), className);
+			String sourceMap = null;
+			if (generateSourceMap && sourceMapFile.exists()) {
+				sourceMap = Files.toString(sourceMapFile, charset);
+			}
+			optimizer.addInput(className.replace('.', '/') + ".js", new String(content, charset), sourceMap);
+		}
+
+		String optimizedName = project.getArtifactId() + ".min.js";
+		String sourceMapName = project.getArtifactId() + ".min.map";
+		StringBuilder sourceMap = generateSourceMap ? new StringBuilder() : null;
+		String code = optimizer.optimize(optimizedName, sourceMap);
+		for (String warning : optimizer.getWarnings()) {
+			getLog().warn(warning);
+		}
+		if (sourceMap != null) {
+			code += "\n//@ sourceMappingURL=" + sourceMapName;
+			Files.write(sourceMap, new File(gendir.getAbsolutePath(), sourceMapName), charset);
+		}
+		Files.write(code, new File(gendir.getAbsolutePath(), optimizedName), charset);
+		getLog().info("Closure Compiler: " + packSize + " bytes packed, " + code.length() + " characters optimized");
+	}
+
+	/**
+	 * @return the classes of the project that can be reached from the entry classes. If there is no entry class, all
+	 *         the classes are returned.
+	 */
+	private Set<String> getReachableClasses(ClassLoader builtProjectClassLoader, Set<String> projectClasses)
+			throws ClassNotFoundException {
+		if (entryClasses != null) {
+			for (String entryClass : entryClasses) {
+				if (!projectClasses.contains(entryClass)) {
+					getLog().warn("The entry class " + entryClass + " is not a generated class of the project");
+				}
+			}
+		}
+		List<String> roots = getTreeShakingRoots(entryClasses, projectClasses, builtProjectClassLoader);
+		if (roots.isEmpty()) {
+			getLog().warn("No entry class was found for the tree shaking. All the classes are packed");
+			return projectClasses;
+		}
+
+		Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+		for (String className : projectClasses) {
+			dependencies.put(className, packedClasses.get(className).getDependencies());
+		}
+		Set<String> reachable = getReachableClasses(roots, dependencies);
+
+		long savedBytes = 0;
+		for (String className : projectClasses) {
+			if (!reachable.contains(className)) {
+				savedBytes += packedClasses.get(className).getContent().length;
+			}
+		}
+		getLog().info(
+				"Tree shaking: " + reachable.size() + " of " + projectClasses.size() + " classes packed, "
+						+ savedBytes + " bytes saved");
+		return reachable;
+	}
+
+	/**
+	 * @return the classes the tree shaking starts from: the given entry classes of the project if any, otherwise the
+	 *         classes of the project having a main method, as their generated file calls it when it's loaded
+	 */
+	static List<String> getTreeShakingRoots(List<String> entryClasses, Set<String> projectClasses,
+			ClassLoader builtProjectClassLoader) throws ClassNotFoundException {
+		List<String> roots = new ArrayList<String>();
+		if (entryClasses != null && !entryClasses.isEmpty()) {
+			for (String entryClass : entryClasses) {
+				if (projectClasses.contains(entryClass)) {
+					roots.add(entryClass);
+				}
+			}
+		} else {
+			for (String className : projectClasses) {
+				if (hasMainMethod(builtProjectClassLoader.loadClass(className))) {
+					roots.add(className);
+				}
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * @return the given roots and the classes they depend on, directly or not. Only the classes that are keys of the
+	 *         dependency map are kept.
+	 */
+	static Set<String> getReachableClasses(Collection<String> roots, Map<String, List<String>> dependencies) {
+		Set<String> reachable = new HashSet<String>(roots);
+		List<String> toVisit = new ArrayList<String>(roots);
+		while (!toVisit.isEmpty()) {
+			String className = toVisit.remove(toVisit.size() - 1);
+			for (String dep : dependencies.get(className)) {
+				if (dependencies.containsKey(dep) && reachable.add(dep)) {
+					toVisit.add(dep);
+				}
+			}
+		}
+		return reachable;
+	}
+
+	private static boolean hasMainMethod(Class<?> clazz) {
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (NodeUtils.isMainMethod(method)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the content and the dependencies of the given class. They are read again only if the generated file
+	 *         changed since the last time the class was packed by this mojo.
+	 */
+	private PackedClass getPackedClass(Generator generator, ClassLoader builtProjectClassLoader, String className,
+			File targetFile) throws ClassNotFoundException, IOException {
+		PackedClass packedClass = packedClasses.get(className);
+		if (packedClass != null && packedClass.getLastModified() == targetFile.lastModified()) {
+			return packedClass;
+		}
+		ClassWithJavascript cjs = generator.getExistingStjsClass(builtProjectClassLoader,
+				builtProjectClassLoader.loadClass(className));
+		List<String> dependencies = new ArrayList<String>();
+		List<String> bridges = new ArrayList<String>();
+		for (ClassWithJavascript dep : cjs.getDirectDependencies()) {
+			if (dep instanceof STJSClass) {
+				dependencies.add(dep.getClassName());
+			} else if (dep instanceof BridgeClass) {
+				bridges.add(dep.getClassName());
+			}
+		}
+		packedClass = new PackedClass(targetFile.lastModified(), Files.toByteArray(targetFile), dependencies, bridges);
+		packedClasses.put(className, packedClass);
+		return packedClass;
+	}
+
 	protected void filesGenerated(Generator generator, GenerationDirectory gendir) throws MojoFailureException,
 			MojoExecutionException {
 		// copy the javascript support
@@ -344,6 +993,19 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 		packFiles(generator, gendir);
 
+		if (generateExterns) {
+			writeExterns(generator, gendir);
+		}
+	}
+
+	private void writeExterns(Generator generator, GenerationDirectory gendir) throws MojoFailureException {
+		File externsFile = new File(gendir.getAbsolutePath(), project.getArtifactId() + "-externs.js");
+		String encoding = sourceEncoding != null ? sourceEncoding : Charset.defaultCharset().name();
+		try {
+			generator.writeExterns(getBuiltProjectClassLoader(), getProjectClassNames(gendir), externsFile, encoding);
+		} catch (Exception ex) {
+			throw new MojoFailureException("Error when writing the externs:" + ex.getMessage(), ex);
+		}
 	}
 
 	/**
@@ -381,6 +1043,38 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		return sourcePath.substring(0, sourcePath.length() - 5).replace(File.separatorChar, '.');
 	}
 
+	/**
+	 * @return the existing sources of the given classes that are included in the generation. The returned files are
+	 *         relative to the given source directory.
+	 */
+	private List<File> getChangedSources(File sourceDir, Set<String> classNames) {
+		List<File> result = new ArrayList<File>();
+		for (String className : classNames) {
+			String path = className.replace('.', File.separatorChar) + ".java";
+			if (isIncluded(path) && new File(sourceDir, path).isFile()) {
+				result.add(new File(path));
+			}
+		}
+		return result;
+	}
+
+	private boolean isIncluded(String path) {
+		for (String exclude : excludes) {
+			if (SelectorUtils.matchPath(exclude, path)) {
+				return false;
+			}
+		}
+		if (includes.isEmpty()) {
+			return true;
+		}
+		for (String include : includes) {
+			if (SelectorUtils.matchPath(include, path)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * @return the list of Java source files to processed (those which are older than the corresponding Javascript
 	 *         file). The returned files are relative to the given source directory.
@@ -438,4 +1132,119 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		return scanner;
 	}
 
+
+	/**
+	 * the generation of one single class. The exception thrown by the generator is kept to be reported later.
+	 */
+	private final class GenerationTask implements Callable<Void> {
+		private final Generator generator;
+		private final ClassLoader builtProjectClassLoader;
+		private final String className;
+		private final File sourceDir;
+		private final File absoluteSource;
+		private final File absoluteTarget;
+		private final GenerationDirectory gendir;
+		private final GeneratorConfiguration configuration;
+
+		// only used with the build index
+		private String sourceHash;
+		private String apiHash;
+
+		private ClassWithJavascript result;
+		private Exception error;
+
+		public GenerationTask(Generator generator, ClassLoader builtProjectClassLoader, String className,
+				File sourceDir, File absoluteSource, File absoluteTarget, GenerationDirectory gendir,
+				GeneratorConfiguration configuration) {
+			this.generator = generator;
+			this.builtProjectClassLoader = builtProjectClassLoader;
+			this.className = className;
+			this.sourceDir = sourceDir;
+			this.absoluteSource = absoluteSource;
+			this.absoluteTarget = absoluteTarget;
+			this.gendir = gendir;
+			this.configuration = configuration;
+		}
+
+		@Override
+		public Void call() {
+			try {
+				result = generator.generateJavascript(builtProjectClassLoader, className, sourceDir, gendir,
+						getBuildOutputDirectory(), configuration);
+			} catch (Exception e) {
+				// continue with the next file
+				error = e;
+			}
+			return null;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public ClassWithJavascript getResult() {
+			return result;
+		}
+
+		public Exception getError() {
+			return error;
+		}
+
+		public File getAbsoluteSource() {
+			return absoluteSource;
+		}
+
+		public File getAbsoluteTarget() {
+			return absoluteTarget;
+		}
+
+		public String getSourceHash() {
+			return sourceHash;
+		}
+
+		public void setSourceHash(String sourceHash) {
+			this.sourceHash = sourceHash;
+		}
+
+		public String getApiHash() {
+			return apiHash;
+		}
+
+		public void setApiHash(String apiHash) {
+			this.apiHash = apiHash;
+		}
+	}
+
+	/**
+	 * a generated file as it's written in the packed file
+	 */
+	private static final class PackedClass {
+		private final long lastModified;
+		private final byte[] content;
+		private final List<String> dependencies;
+		private final List<String> bridges;
+
+		public PackedClass(long lastModified, byte[] content, List<String> dependencies, List<String> bridges) {
+			this.lastModified = lastModified;
+			this.content = content;
+			this.dependencies = dependencies;
+			this.bridges = bridges;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+
+		public List<String> getDependencies() {
+			return dependencies;
+		}
+
+		public List<String> getBridges() {
+			return bridges;
+		}
+	}
 }
@@ -0,0 +1,310 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.type.ClassWrapper;
+import org.stjs.generator.type.TypeWrappers;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This is the index kept between two builds to know which classes have to be generated again. For each generated class
+ * it stores the hash of its source (and compiled class) file, the hash of its API (as seen by the classes using it) and
+ * the classes it depends on. A class is generated again if its source changed or if the API of one of its dependencies
+ * changed.
+ *
+ * @author acraciun
+ */
+public class BuildIndex {
+	private static final String SOURCE_HASH_PROP = ".source";
+	private static final String API_HASH_PROP = ".api";
+	private static final String DEPENDENCIES_PROP = ".dependencies";
+	private static final String OPTIONS_PROP = "stjs.options";
+
+	private static final String HASH_ALGORITHM = "MD5";
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final File file;
+	private final Properties properties = new Properties();
+
+	public BuildIndex(File file) throws IOException {
+		this.file = file;
+		if (file.exists()) {
+			InputStream in = Files.newInputStreamSupplier(file).getInput();
+			try {
+				properties.load(in);
+			} finally {
+				Closeables.closeQuietly(in);
+			}
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the generator options used for the classes of the index
+	 */
+	public synchronized String getOptions() {
+		return properties.getProperty(OPTIONS_PROP);
+	}
+
+	/**
+	 * sets the generator options. If they are different from the stored ones, the classes are removed from the index,
+	 * as they have to be generated again.
+	 */
+	public synchronized void setOptions(String options) {
+		if (!options.equals(getOptions())) {
+			properties.clear();
+			properties.setProperty(OPTIONS_PROP, options);
+		}
+	}
+
+	public synchronized boolean contains(String className) {
+		return properties.containsKey(className + SOURCE_HASH_PROP);
+	}
+
+	public synchronized String getSourceHash(String className) {
+		return properties.getProperty(className + SOURCE_HASH_PROP);
+	}
+
+	public synchronized String getApiHash(String className) {
+		return properties.getProperty(className + API_HASH_PROP);
+	}
+
+	/**
+	 * @return true if a Javascript file was generated for the given class (i.e. it's not a bridge)
+	 */
+	public synchronized boolean isGenerated(String className) {
+		return properties.containsKey(className + DEPENDENCIES_PROP);
+	}
+
+	public synchronized Set<String> getDependencies(String className) {
+		String deps = properties.getProperty(className + DEPENDENCIES_PROP);
+		if (deps == null) {
+			return Collections.emptySet();
+		}
+		Set<String> dependencies = new LinkedHashSet<String>();
+		for (String dep : Splitter.on(',').omitEmptyStrings().split(deps)) {
+			dependencies.add(dep);
+		}
+		return dependencies;
+	}
+
+	/**
+	 * @return all the classes stored in the index
+	 */
+	public synchronized Set<String> getClassNames() {
+		Set<String> classNames = new LinkedHashSet<String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.endsWith(SOURCE_HASH_PROP)) {
+				classNames.add(key.substring(0, key.length() - SOURCE_HASH_PROP.length()));
+			}
+		}
+		return classNames;
+	}
+
+	/**
+	 * @return the classes of the index that depend directly on at least one of the given classes
+	 */
+	public synchronized Set<String> getDependents(Collection<String> classNames) {
+		Set<String> dependents = new LinkedHashSet<String>();
+		if (classNames.isEmpty()) {
+			return dependents;
+		}
+		Set<String> lookup = new HashSet<String>(classNames);
+		for (String className : getClassNames()) {
+			for (String dep : getDependencies(className)) {
+				if (lookup.contains(dep)) {
+					dependents.add(className);
+					break;
+				}
+			}
+		}
+		return dependents;
+	}
+
+	/**
+	 * stores the information about a class that was just generated
+	 */
+	public synchronized void update(String className, String sourceHash, String apiHash,
+			ClassWithJavascript generated) {
+		remove(className);
+		properties.setProperty(className + SOURCE_HASH_PROP, sourceHash);
+		if (apiHash != null) {
+			properties.setProperty(className + API_HASH_PROP, apiHash);
+		}
+		if (generated instanceof STJSClass) {
+			properties.setProperty(className + DEPENDENCIES_PROP,
+					Joiner.on(',').join(((STJSClass) generated).getDependencies()));
+		}
+	}
+
+	public synchronized void remove(String className) {
+		properties.remove(className + SOURCE_HASH_PROP);
+		properties.remove(className + API_HASH_PROP);
+		properties.remove(className + DEPENDENCIES_PROP);
+	}
+
+	public synchronized void store() throws IOException {
+		if (!file.getParentFile().mkdirs() && !file.getParentFile().isDirectory()) {
+			throw new IOException("Unable to create parent folder for the build index:" + file);
+		}
+		OutputStream out = Files.newOutputStreamSupplier(file).getOutput();
+		try {
+			properties.store(out, "Generated by STJS ");
+		} finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * @return the hash of the content of the given file
+	 */
+	public static String contentHash(File file) throws IOException {
+		return toHex(Files.getDigest(file, newDigest()));
+	}
+
+	/**
+	 * @return the hash of everything the other classes can see from the given class: the hierarchy, the annotations and
+	 *         the non-private members, including the inner classes and the members inherited from the project's
+	 *         super classes. The values of the constant fields are part of the API, as they may be inlined in the
+	 *         classes using them. It returns null if the class cannot be fully loaded, in which case the API is
+	 *         considered as changed.
+	 */
+	public static String apiHash(Class<?> clazz) {
+		List<String> signature = new ArrayList<String>();
+		try {
+			// the classes of the JDK are not expected to change
+			for (Class<?> c = clazz; c != null && c.getClassLoader() != null; c = c.getSuperclass()) {
+				addSignature(c, signature);
+			}
+		} catch (LinkageError e) {
+			return null;
+		}
+		MessageDigest digest = newDigest();
+		for (String s : signature) {
+			digest.update(s.getBytes(Charsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+		return toHex(digest.digest());
+	}
+
+	private static void addSignature(Class<?> clazz, List<String> signature) {
+		List<String> members = new ArrayList<String>();
+		ClassWrapper classWrapper = TypeWrappers.wrap(clazz);
+		for (Field field : clazz.getDeclaredFields()) {
+			if (isVisible(field)) {
+				Object constantValue = classWrapper.findField(field.getName()).getOrThrow().getConstantValue();
+				members.add(annotations(field.getAnnotations()) + field.toGenericString()
+						+ (constantValue == null ? "" : " = " + constantValue));
+			}
+		}
+		for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+			if (isVisible(constructor)) {
+				members.add(annotations(constructor.getAnnotations()) + constructor.toGenericString());
+			}
+		}
+		for (Method method : clazz.getDeclaredMethods()) {
+			if (isVisible(method)) {
+				members.add(annotations(method.getAnnotations()) + method.toGenericString());
+			}
+		}
+		// the order of the members returned by reflection is not specified
+		Collections.sort(members);
+
+		signature.add(annotations(clazz.getAnnotations()) + Modifier.toString(clazz.getModifiers()) + " "
+				+ clazz.getName() + " extends " + clazz.getGenericSuperclass() + " implements "
+				+ Arrays.toString(clazz.getGenericInterfaces()));
+		signature.addAll(members);
+
+		Class<?>[] declaredClasses = clazz.getDeclaredClasses();
+		Arrays.sort(declaredClasses, new Comparator<Class<?>>() {
+			@Override
+			public int compare(Class<?> c1, Class<?> c2) {
+				return c1.getName().compareTo(c2.getName());
+			}
+		});
+		for (Class<?> declaredClass : declaredClasses) {
+			if (!Modifier.isPrivate(declaredClass.getModifiers())) {
+				addSignature(declaredClass, signature);
+			}
+		}
+	}
+
+	private static boolean isVisible(Member member) {
+		return !member.isSynthetic() && !Modifier.isPrivate(member.getModifiers());
+	}
+
+	private static String annotations(Annotation[] annotations) {
+		if (annotations.length == 0) {
+			return "";
+		}
+		List<String> names = new ArrayList<String>(annotations.length);
+		for (Annotation a : annotations) {
+			names.add(a.toString());
+		}
+		Collections.sort(names);
+		return names.toString() + " ";
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(HASH_ALGORITHM + " is not supported", e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+}
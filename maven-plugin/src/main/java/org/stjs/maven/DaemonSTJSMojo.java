@@ -0,0 +1,166 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * This goal starts a generator that stays in memory and generates the JavaScript files of the project each time the
+ * client asks it to (see {@link RemoteSTJSMojo} and {@link GeneratorClient}). The daemon only listens on the loopback
+ * interface and, when it starts, writes a random token in a file of the build directory: a request is accepted only
+ * if it comes with this token, i.e. if the client can read the file.
+ *
+ * @goal daemon
+ * @requiresDependencyResolution compile
+ * @author acraciun
+ */
+public class DaemonSTJSMojo extends AbstractResidentSTJSMojo {
+	private static final int READ_TIMEOUT_MILLIS = 10000;
+
+	/**
+	 * The local port on which the generator waits for requests.
+	 *
+	 * @parameter expression="${daemonPort}" default-value="7373"
+	 */
+	private int daemonPort;
+
+	/**
+	 * The file in which the daemon writes the token the clients have to send with each request.
+	 *
+	 * @parameter expression="${daemonTokenFile}" default-value="${project.build.directory}/stjs-daemon.token"
+	 */
+	private File daemonTokenFile;
+
+	private String token;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		ServerSocket serverSocket;
+		try {
+			serverSocket = new ServerSocket(daemonPort, 0, InetAddress.getByName(null));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot listen on port " + daemonPort + ":" + e, e);
+		}
+		try {
+			token = GeneratorClient.newToken();
+			GeneratorClient.writeToken(daemonTokenFile, token);
+		} catch (IOException e) {
+			close(serverSocket);
+			throw new MojoExecutionException("Cannot write the daemon token " + daemonTokenFile + ":" + e, e);
+		}
+		getLog().info("The generator is waiting for requests on port " + daemonPort);
+		try {
+			boolean running = true;
+			while (running) {
+				Socket socket = serverSocket.accept();
+				try {
+					running = handleRequest(socket);
+				} catch (IOException e) {
+					getLog().warn("Cannot answer the client:" + e);
+				} finally {
+					close(socket);
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Error waiting for requests:" + e, e);
+		} finally {
+			close(serverSocket);
+			if (!daemonTokenFile.delete()) {
+				getLog().warn("Cannot delete the daemon token " + daemonTokenFile);
+			}
+			dispose();
+		}
+	}
+
+	/**
+	 * @return false if the daemon has to stop
+	 */
+	private boolean handleRequest(Socket socket) throws IOException {
+		socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+		BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+
+		// COMMAND token
+		String request = in.readLine();
+		String[] parts = request == null ? new String[0] : request.split(" ", 2);
+		if (parts.length != 2 || !GeneratorClient.isSameToken(token, parts[1])) {
+			getLog().warn("A request without the right token was refused");
+			writeLine(out, GeneratorClient.ERROR + " Wrong daemon token, check " + daemonTokenFile);
+			writeLine(out, GeneratorClient.DONE + " 1 0");
+			return true;
+		}
+
+		String command = parts[0];
+		if (GeneratorClient.STOP.equals(command)) {
+			getLog().info("The generator is stopped");
+			writeLine(out, GeneratorClient.DONE);
+			return false;
+		}
+
+		long start = System.currentTimeMillis();
+		List<String> errors;
+		if (GeneratorClient.GENERATE.equals(command)) {
+			errors = generateFiles();
+		} else {
+			errors = Collections.singletonList("Unknown command:" + command);
+		}
+
+		long duration = System.currentTimeMillis() - start;
+		for (String error : errors) {
+			writeLine(out, GeneratorClient.ERROR + " " + error);
+		}
+		writeLine(out, GeneratorClient.DONE + " " + errors.size() + " " + duration);
+		getLog().info("Request handled in " + duration + " ms");
+		return true;
+	}
+
+	private void writeLine(Writer out, String line) throws IOException {
+		out.write(line);
+		out.write('\n');
+		out.flush();
+	}
+
+	private void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			getLog().warn("Cannot close the connection:" + e);
+		}
+	}
+
+	private void close(ServerSocket serverSocket) {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			getLog().warn("Cannot close the server socket:" + e);
+		}
+	}
+}
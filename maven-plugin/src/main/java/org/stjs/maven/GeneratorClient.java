@@ -0,0 +1,155 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * This is the client of the generator started with the daemon goal (see {@link DaemonSTJSMojo}). The protocol is made
+ * of text lines: the client sends one command followed by the token the daemon wrote in its token file, the daemon
+ * answers with one {@link #ERROR} line for each problem followed by a {@link #DONE} line. It can be used from the
+ * command line as well:<br>
+ * java -cp ... org.stjs.maven.GeneratorClient [port] [generate|stop] [token file]
+ *
+ * @author acraciun
+ */
+public class GeneratorClient {
+	public static final int DEFAULT_PORT = 7373;
+	public static final String DEFAULT_TOKEN_FILE = "target/stjs-daemon.token";
+
+	static final String GENERATE = "GENERATE";
+	static final String STOP = "STOP";
+	static final String ERROR = "ERROR";
+	static final String DONE = "DONE";
+
+	private static final int TOKEN_BYTES = 16;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final int port;
+	private final String token;
+
+	public GeneratorClient(int port, String token) {
+		this.port = port;
+		this.token = token;
+	}
+
+	/**
+	 * sends the command to the daemon and waits for its answer.
+	 *
+	 * @return the lines of the answer, the last one being the {@link #DONE} line
+	 */
+	public List<String> send(String command) throws IOException {
+		Socket socket = new Socket(InetAddress.getByName(null), port);
+		try {
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+			out.write(command);
+			out.write(' ');
+			out.write(token);
+			out.write('\n');
+			out.flush();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), Charsets.UTF_8));
+			List<String> answer = new ArrayList<String>();
+			String line;
+			while ((line = in.readLine()) != null) {
+				answer.add(line);
+				if (line.startsWith(DONE)) {
+					return answer;
+				}
+			}
+			throw new IOException("The generator daemon closed the connection before answering");
+		} finally {
+			socket.close();
+		}
+	}
+
+	public static boolean isError(String line) {
+		return line.startsWith(ERROR);
+	}
+
+	/**
+	 * @return a new random token
+	 */
+	static String newToken() {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(bytes);
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * writes the token in a file that only the current user can read (when the file system supports it)
+	 */
+	static void writeToken(File file, String token) throws IOException {
+		if (!file.getParentFile().mkdirs() && !file.getParentFile().isDirectory()) {
+			throw new IOException("Unable to create parent folder for the token:" + file);
+		}
+		Files.write("", file, Charsets.UTF_8);
+		file.setReadable(false, false);
+		file.setReadable(true, true);
+		file.setWritable(false, false);
+		file.setWritable(true, true);
+		Files.write(token, file, Charsets.UTF_8);
+	}
+
+	public static String readToken(File file) throws IOException {
+		return Files.toString(file, Charsets.UTF_8).trim();
+	}
+
+	/**
+	 * compares the tokens in a time that does not depend on where they differ
+	 */
+	static boolean isSameToken(String expected, String actual) {
+		return MessageDigest.isEqual(expected.getBytes(Charsets.UTF_8), actual.getBytes(Charsets.UTF_8));
+	}
+
+	@SuppressWarnings({ "PMD.SystemPrintln", "PMD.DoNotCallSystemExit" })
+	public static void main(String[] args) {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		String command = args.length > 1 ? args[1].toUpperCase() : GENERATE;
+		File tokenFile = new File(args.length > 2 ? args[2] : DEFAULT_TOKEN_FILE);
+		try {
+			boolean hasErrors = false;
+			for (String line : new GeneratorClient(port, readToken(tokenFile)).send(command)) {
+				System.out.println(line);
+				hasErrors |= isError(line);
+			}
+			System.exit(hasErrors ? 1 : 0);
+		} catch (IOException e) {
+			System.err.println("Cannot reach the generator daemon on port " + port + " with the token " + tokenFile
+					+ ":" + e);
+			System.exit(2);
+		}
+	}
+}
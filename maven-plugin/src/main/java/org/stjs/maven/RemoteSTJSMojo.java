@@ -0,0 +1,90 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * This goal asks the generator started with the daemon goal to generate the JavaScript files of the project. It does
+ * not need the dependencies of the project, the daemon already has them.
+ *
+ * @goal remote
+ * @author acraciun
+ */
+public class RemoteSTJSMojo extends AbstractMojo {
+	/**
+	 * The local port on which the generator waits for requests.
+	 *
+	 * @parameter expression="${daemonPort}" default-value="7373"
+	 */
+	private int daemonPort;
+
+	/**
+	 * The file in which the daemon wrote the token to send with each request.
+	 *
+	 * @parameter expression="${daemonTokenFile}" default-value="${project.build.directory}/stjs-daemon.token"
+	 */
+	private File daemonTokenFile;
+
+	/**
+	 * If true, the daemon is stopped instead of generating the files.
+	 *
+	 * @parameter expression="${stop}" default-value="false"
+	 */
+	private boolean stop;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		String token;
+		try {
+			token = GeneratorClient.readToken(daemonTokenFile);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot read the daemon token " + daemonTokenFile
+					+ ", is the daemon started?", e);
+		}
+
+		List<String> answer;
+		try {
+			answer = new GeneratorClient(daemonPort, token).send(stop ? GeneratorClient.STOP
+					: GeneratorClient.GENERATE);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot reach the generator daemon on port " + daemonPort + ":" + e, e);
+		}
+
+		boolean hasErrors = false;
+		for (String line : answer) {
+			if (GeneratorClient.isError(line)) {
+				getLog().error(line.substring(GeneratorClient.ERROR.length()).trim());
+				hasErrors = true;
+			} else {
+				// DONE [errors] [millis]
+				String[] parts = line.split(" ");
+				if (parts.length == 3) {
+					getLog().info("The generator daemon answered in " + parts[2] + " ms");
+				}
+			}
+		}
+		if (hasErrors) {
+			throw new MojoFailureException("Errors generating JavaScript");
+		}
+	}
+}
@@ -0,0 +1,147 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class decides, using the {@link BuildIndex} of the previous build, which classes have to be generated again: the
+ * classes whose source changed, the classes whose generated files were removed and the classes depending (directly or
+ * not) on a class whose API changed or that was removed. The API of a class that is generated again is computed again
+ * as well, so a change propagates through the classes whose API depends on the API of another class (i.e. a sub
+ * class or a constant initialized with the constant of another class).
+ *
+ * @author acraciun
+ */
+abstract class StaleClassSelector {
+	private final BuildIndex index;
+	private final Map<String, String> sourceHashes = new HashMap<String, String>();
+	private final Map<String, String> apiHashes = new HashMap<String, String>();
+	private final Set<String> apiChanged = new LinkedHashSet<String>();
+
+	StaleClassSelector(BuildIndex index) {
+		this.index = index;
+	}
+
+	/**
+	 * @return the hash of the files the given class is generated from
+	 */
+	protected abstract String computeSourceHash(String className) throws IOException;
+
+	/**
+	 * @return the hash of the API of the given class, or null if it cannot be computed
+	 */
+	protected abstract String computeApiHash(String className);
+
+	/**
+	 * @return true if one of the files generated for the given class is missing
+	 */
+	protected abstract boolean isOutputMissing(String className);
+
+	/**
+	 * @return the classes, among the given ones, that have to be generated again, in the given order. The classes of
+	 *         the index that are not in the given ones are removed from the index.
+	 */
+	public Set<String> select(Collection<String> classNames) throws IOException {
+		Set<String> candidates = new LinkedHashSet<String>(classNames);
+		Set<String> stale = new LinkedHashSet<String>();
+		// the classes whose API was computed again
+		Set<String> checked = new HashSet<String>();
+		List<String> changed = new ArrayList<String>();
+
+		for (String className : candidates) {
+			String sourceHash = computeSourceHash(className);
+			sourceHashes.put(className, sourceHash);
+			if (!sourceHash.equals(index.getSourceHash(className))) {
+				markStale(className, stale, checked, changed);
+			} else {
+				apiHashes.put(className, index.getApiHash(className));
+				if (index.isGenerated(className) && isOutputMissing(className)) {
+					// the source did not change, but the generated files were removed
+					stale.add(className);
+				}
+			}
+		}
+
+		// the classes that were removed since the last build
+		for (String className : index.getClassNames()) {
+			if (!candidates.contains(className)) {
+				index.remove(className);
+				apiChanged.add(className);
+				changed.add(className);
+			}
+		}
+
+		while (!changed.isEmpty()) {
+			Set<String> dependents = index.getDependents(changed);
+			changed = new ArrayList<String>();
+			for (String dependent : dependents) {
+				if (candidates.contains(dependent) && !checked.contains(dependent)) {
+					markStale(dependent, stale, checked, changed);
+				}
+			}
+		}
+
+		Set<String> selected = new LinkedHashSet<String>();
+		for (String className : candidates) {
+			if (stale.contains(className)) {
+				selected.add(className);
+			}
+		}
+		return selected;
+	}
+
+	private void markStale(String className, Set<String> stale, Set<String> checked, List<String> changed) {
+		stale.add(className);
+		checked.add(className);
+		String apiHash = computeApiHash(className);
+		apiHashes.put(className, apiHash);
+		if (apiHash == null || !apiHash.equals(index.getApiHash(className))) {
+			apiChanged.add(className);
+			changed.add(className);
+		}
+	}
+
+	/**
+	 * @return the hash of the source of the given class, as computed by the last call of {@link #select(Collection)}
+	 */
+	public String getSourceHash(String className) {
+		return sourceHashes.get(className);
+	}
+
+	/**
+	 * @return the hash of the API of the given class: computed again for the stale classes, taken from the index for
+	 *         the others
+	 */
+	public String getApiHash(String className) {
+		return apiHashes.get(className);
+	}
+
+	/**
+	 * @return the classes whose API changed or that were removed since the last build
+	 */
+	public Set<String> getApiChanged() {
+		return apiChanged;
+	}
+}
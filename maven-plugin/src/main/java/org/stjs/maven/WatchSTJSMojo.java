@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * This goal watches the sources and the compiled classes of the project and generates the JavaScript files again each
+ * time they change, until the build is stopped. The folders are polled (the project targets Java 6, that has no file
+ * system notifications), and the generation starts only after a quiet period without any change, so that a burst of
+ * changes (e.g. the IDE compiling several classes) is generated once. Only the classes of the changed files are
+ * generated, and the packages of the sources are updated from the changed files instead of being scanned again.
+ * <p>
+ * The polling itself lists the whole source folders and the whole output folder at each check (see
+ * <code>watchInterval</code>), so its cost grows with the size of the project: increase the interval for large
+ * projects.
+ *
+ * @goal watch
+ * @requiresDependencyResolution compile
+ * @author acraciun
+ */
+public class WatchSTJSMojo extends AbstractResidentSTJSMojo {
+	/**
+	 * The interval in milliseconds between two checks of the watched folders.
+	 *
+	 * @parameter expression="${watchInterval}" default-value="500"
+	 */
+	private long watchInterval;
+
+	/**
+	 * The time in milliseconds without any change to wait before generating the files.
+	 *
+	 * @parameter expression="${watchQuietPeriod}" default-value="300"
+	 */
+	private long watchQuietPeriod;
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		try {
+			Map<String, Long> files = snapshot();
+			generate(null);
+			getLog().info("Watching " + getCompileSourceRoots() + " and " + getBuildOutputDirectory());
+			while (true) {
+				Thread.sleep(watchInterval);
+				Map<String, Long> currentFiles = snapshot();
+				if (currentFiles.equals(files)) {
+					continue;
+				}
+				// wait until the changes stop
+				Set<File> changedFiles = new HashSet<File>();
+				do {
+					addChangedFiles(files, currentFiles, changedFiles);
+					files = currentFiles;
+					Thread.sleep(watchQuietPeriod);
+					currentFiles = snapshot();
+				} while (!currentFiles.equals(files));
+				generate(changedFiles);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			getLog().info("The watch was interrupted");
+		} finally {
+			dispose();
+		}
+	}
+
+	private void generate(Set<File> changedFiles) {
+		long start = System.currentTimeMillis();
+		for (String error : generateFiles(changedFiles)) {
+			getLog().error(error);
+		}
+		getLog().info("Generation cycle done in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * @return the last modification time of all the watched files
+	 */
+	private Map<String, Long> snapshot() {
+		Map<String, Long> files = new HashMap<String, Long>();
+		for (String sourceRoot : getCompileSourceRoots()) {
+			collectFiles(new File(sourceRoot), JAVA_SUFFIX, files);
+		}
+		collectFiles(getBuildOutputDirectory(), CLASS_SUFFIX, files);
+		return files;
+	}
+
+	/**
+	 * adds the files that were added, modified or removed between the two snapshots
+	 */
+	static void addChangedFiles(Map<String, Long> before, Map<String, Long> after, Set<File> changedFiles) {
+		for (Map.Entry<String, Long> entry : after.entrySet()) {
+			if (!entry.getValue().equals(before.get(entry.getKey()))) {
+				changedFiles.add(new File(entry.getKey()));
+			}
+		}
+		for (String path : before.keySet()) {
+			if (!after.containsKey(path)) {
+				changedFiles.add(new File(path));
+			}
+		}
+	}
+}
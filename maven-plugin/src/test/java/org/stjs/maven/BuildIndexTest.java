@@ -0,0 +1,151 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyResolver;
+import org.stjs.generator.STJSClass;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class BuildIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private STJSClass generated(String className, String... dependencies) throws Exception {
+		STJSClass stjsClass = new STJSClass(new DependencyResolver() {
+			@Override
+			public ClassWithJavascript resolve(String name) {
+				throw new UnsupportedOperationException();
+			}
+		}, folder.getRoot(), className);
+		stjsClass.setDependencies(Arrays.asList(dependencies));
+		stjsClass.setGeneratedJavascriptFile(new URI("/" + className.replace('.', '/') + ".js"));
+		return stjsClass;
+	}
+
+	@Test
+	public void testUpdate() throws Exception {
+		BuildIndex index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		index.update("a.A", "src1", "api1", generated("a.A", "a.B", "a.C"));
+
+		assertTrue(index.contains("a.A"));
+		assertEquals("src1", index.getSourceHash("a.A"));
+		assertEquals("api1", index.getApiHash("a.A"));
+		assertTrue(index.isGenerated("a.A"));
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("a.B", "a.C")), index.getDependencies("a.A"));
+	}
+
+	@Test
+	public void testBridgeIsNotGenerated() throws Exception {
+		BuildIndex index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		index.update("a.Bridge", "src1", null, null);
+
+		assertTrue(index.contains("a.Bridge"));
+		assertFalse(index.isGenerated("a.Bridge"));
+		assertNull(index.getApiHash("a.Bridge"));
+		assertTrue(index.getDependencies("a.Bridge").isEmpty());
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		BuildIndex index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		index.update("a.A", "src1", "api1", generated("a.A", "a.B"));
+		index.remove("a.A");
+
+		assertFalse(index.contains("a.A"));
+		assertNull(index.getSourceHash("a.A"));
+		assertNull(index.getApiHash("a.A"));
+		assertTrue(index.getClassNames().isEmpty());
+	}
+
+	@Test
+	public void testDirectDependents() throws Exception {
+		BuildIndex index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		index.update("a.A", "src", "api", generated("a.A", "a.B"));
+		index.update("a.B", "src", "api", generated("a.B", "a.C"));
+		index.update("a.C", "src", "api", generated("a.C"));
+		index.update("a.D", "src", "api", generated("a.D", "a.C"));
+
+		assertEquals(new LinkedHashSet<String>(Arrays.asList("a.B", "a.D")),
+				new LinkedHashSet<String>(index.getDependents(Collections.singleton("a.C"))));
+		assertTrue(index.getDependents(Collections.singleton("a.A")).isEmpty());
+		assertTrue(index.getDependents(Collections.<String> emptySet()).isEmpty());
+	}
+
+	@Test
+	public void testStoreAndLoad() throws Exception {
+		File file = new File(folder.getRoot(), "target/test.index");
+		BuildIndex index = new BuildIndex(file);
+		index.setOptions("minify=false");
+		index.update("a.A", "src1", "api1", generated("a.A", "a.B"));
+		index.store();
+
+		BuildIndex loaded = new BuildIndex(file);
+		assertEquals("minify=false", loaded.getOptions());
+		assertEquals(Collections.singleton("a.A"), loaded.getClassNames());
+		assertEquals("src1", loaded.getSourceHash("a.A"));
+		assertEquals("api1", loaded.getApiHash("a.A"));
+		assertEquals(Collections.singleton("a.B"), loaded.getDependencies("a.A"));
+	}
+
+	@Test
+	public void testOtherOptionsClearTheIndex() throws Exception {
+		BuildIndex index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		index.setOptions("minify=false");
+		index.update("a.A", "src1", "api1", generated("a.A"));
+
+		index.setOptions("minify=false");
+		assertTrue(index.contains("a.A"));
+
+		index.setOptions("minify=true");
+		assertFalse(index.contains("a.A"));
+		assertEquals("minify=true", index.getOptions());
+	}
+
+	@Test
+	public void testContentHash() throws IOException {
+		File file = folder.newFile("A.java");
+		Files.write("class A {}", file, Charsets.UTF_8);
+		String hash = BuildIndex.contentHash(file);
+		assertEquals(hash, BuildIndex.contentHash(file));
+
+		Files.write("class A { int x; }", file, Charsets.UTF_8);
+		assertFalse(hash.equals(BuildIndex.contentHash(file)));
+	}
+
+	@Test
+	public void testApiHash() {
+		String hash = BuildIndex.apiHash(ApiV1.class);
+		assertNotNull(hash);
+		assertEquals(hash, BuildIndex.apiHash(ApiV1.class));
+		assertFalse(hash.equals(BuildIndex.apiHash(ApiV2.class)));
+	}
+
+	public static class ApiV1 {
+		public int x;
+	}
+
+	public static class ApiV2 {
+		public int x;
+
+		public void method() {
+			//
+		}
+	}
+}
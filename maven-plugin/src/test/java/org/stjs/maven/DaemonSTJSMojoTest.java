@@ -0,0 +1,142 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * starts a daemon whose generation is simulated and sends it requests with the remote goal
+ */
+public class DaemonSTJSMojoTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestDaemonMojo daemon;
+	private Thread daemonThread;
+	private int port;
+	private File tokenFile;
+
+	private static class TestDaemonMojo extends DaemonSTJSMojo {
+		private final AtomicInteger generations = new AtomicInteger();
+		private volatile String error;
+
+		@Override
+		protected void executeGeneration() throws MojoExecutionException {
+			generations.incrementAndGet();
+			if (error != null) {
+				throw new MojoExecutionException(error);
+			}
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		ServerSocket socket = new ServerSocket(0, 0, InetAddress.getByName(null));
+		port = socket.getLocalPort();
+		socket.close();
+		tokenFile = new File(folder.getRoot(), "target/stjs-daemon.token");
+
+		daemon = new TestDaemonMojo();
+		MojoTestHelper.setParameter(daemon, "daemonPort", port);
+		MojoTestHelper.setParameter(daemon, "daemonTokenFile", tokenFile);
+		daemonThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					daemon.execute();
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		daemonThread.start();
+		for (int i = 0; i < 100 && !tokenFile.exists(); ++i) {
+			Thread.sleep(100);
+		}
+		assertTrue("The daemon did not start", tokenFile.exists());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (daemonThread.isAlive()) {
+			remote(true).execute();
+			daemonThread.join(10000);
+		}
+	}
+
+	private RemoteSTJSMojo remote(boolean stop) throws Exception {
+		RemoteSTJSMojo remote = new RemoteSTJSMojo();
+		MojoTestHelper.setParameter(remote, "daemonPort", port);
+		MojoTestHelper.setParameter(remote, "daemonTokenFile", tokenFile);
+		MojoTestHelper.setParameter(remote, "stop", stop);
+		return remote;
+	}
+
+	@Test
+	public void testGenerate() throws Exception {
+		remote(false).execute();
+		remote(false).execute();
+		assertEquals(2, daemon.generations.get());
+	}
+
+	@Test
+	public void testGenerateWithErrors() throws Exception {
+		daemon.error = "problem";
+		try {
+			remote(false).execute();
+			fail("The errors should fail the remote goal");
+		}
+		catch (MojoFailureException e) {
+			// expected
+		}
+
+		List<String> answer = new GeneratorClient(port, GeneratorClient.readToken(tokenFile))
+				.send(GeneratorClient.GENERATE);
+		assertEquals(2, answer.size());
+		assertEquals("ERROR problem", answer.get(0));
+		assertTrue(answer.get(1).startsWith("DONE 1 "));
+	}
+
+	@Test
+	public void testWrongToken() throws Exception {
+		List<String> answer = new GeneratorClient(port, "wrong").send(GeneratorClient.STOP);
+		assertTrue(GeneratorClient.isError(answer.get(0)));
+		answer = new GeneratorClient(port, "wrong").send(GeneratorClient.GENERATE);
+		assertTrue(GeneratorClient.isError(answer.get(0)));
+
+		// the daemon neither stopped nor generated anything
+		assertTrue(daemonThread.isAlive());
+		assertEquals(0, daemon.generations.get());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		remote(true).execute();
+		daemonThread.join(10000);
+		assertFalse(daemonThread.isAlive());
+		assertFalse(tokenFile.exists());
+	}
+
+	@Test(expected = MojoExecutionException.class)
+	public void testRemoteWithoutToken() throws Exception {
+		RemoteSTJSMojo remote = remote(false);
+		MojoTestHelper.setParameter(remote, "daemonTokenFile", new File(folder.getRoot(), "missing.token"));
+		remote.execute();
+	}
+}
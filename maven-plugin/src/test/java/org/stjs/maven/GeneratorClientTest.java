@@ -0,0 +1,86 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+
+public class GeneratorClientTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testNewTokens() {
+		String token = GeneratorClient.newToken();
+		assertEquals(32, token.length());
+		assertFalse(token.equals(GeneratorClient.newToken()));
+	}
+
+	@Test
+	public void testSameToken() {
+		assertTrue(GeneratorClient.isSameToken("0123abcd", "0123abcd"));
+		assertFalse(GeneratorClient.isSameToken("0123abcd", "0123abce"));
+		assertFalse(GeneratorClient.isSameToken("0123abcd", "0123abc"));
+	}
+
+	@Test
+	public void testWriteAndReadToken() throws Exception {
+		File file = new File(folder.getRoot(), "target/stjs-daemon.token");
+		String token = GeneratorClient.newToken();
+		GeneratorClient.writeToken(file, token);
+		assertEquals(token, GeneratorClient.readToken(file));
+		assertTrue(file.canRead());
+	}
+
+	@Test
+	public void testSendCommandWithToken() throws Exception {
+		final ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName(null));
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> request = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					Socket socket = serverSocket.accept();
+					try {
+						String line = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+								Charsets.UTF_8)).readLine();
+						Writer out = new OutputStreamWriter(socket.getOutputStream(), Charsets.UTF_8);
+						out.write(GeneratorClient.ERROR + " problem\n" + GeneratorClient.DONE + " 1 10\n");
+						out.flush();
+						return line;
+					}
+					finally {
+						socket.close();
+					}
+				}
+			});
+
+			GeneratorClient client = new GeneratorClient(serverSocket.getLocalPort(), "secret");
+			assertEquals(Arrays.asList("ERROR problem", "DONE 1 10"), client.send(GeneratorClient.GENERATE));
+			assertEquals("GENERATE secret", request.get());
+		}
+		finally {
+			executor.shutdownNow();
+			serverSocket.close();
+		}
+	}
+}
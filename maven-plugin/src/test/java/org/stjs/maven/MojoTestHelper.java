@@ -0,0 +1,27 @@
+package org.stjs.maven;
+
+import java.lang.reflect.Field;
+
+/**
+ * sets the parameters of the mojos, as Maven does
+ */
+final class MojoTestHelper {
+	private MojoTestHelper() {
+		//
+	}
+
+	static void setParameter(Object mojo, String name, Object value) throws Exception {
+		for (Class<?> c = mojo.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				Field field = c.getDeclaredField(name);
+				field.setAccessible(true);
+				field.set(mojo, value);
+				return;
+			}
+			catch (NoSuchFieldException e) {
+				// look in the super class
+			}
+		}
+		throw new IllegalArgumentException("No parameter " + name + " in " + mojo.getClass());
+	}
+}
@@ -0,0 +1,162 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyResolver;
+import org.stjs.generator.STJSClass;
+
+/**
+ * The project used by these tests: C extends B, B uses A and D is independent. Initially, all the classes are
+ * generated and up to date.
+ */
+public class StaleClassSelectorTest {
+	private static final List<String> CLASSES = Arrays.asList("p.A", "p.B", "p.C", "p.D");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private BuildIndex index;
+
+	private final Map<String, String> sources = new HashMap<String, String>();
+	private final Map<String, String> apis = new HashMap<String, String>();
+	private final Set<String> missingOutputs = new HashSet<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		index = new BuildIndex(new File(folder.getRoot(), "test.index"));
+		addClass("p.A");
+		addClass("p.B", "p.A");
+		addClass("p.C", "p.B");
+		addClass("p.D");
+	}
+
+	private void addClass(String className, String... dependencies) {
+		sources.put(className, "src-" + className);
+		apis.put(className, "api-" + className);
+		STJSClass stjsClass = new STJSClass(new DependencyResolver() {
+			@Override
+			public ClassWithJavascript resolve(String name) {
+				throw new UnsupportedOperationException();
+			}
+		}, folder.getRoot(), className);
+		stjsClass.setDependencies(Arrays.asList(dependencies));
+		index.update(className, sources.get(className), apis.get(className), stjsClass);
+	}
+
+	private StaleClassSelector newSelector() {
+		return new StaleClassSelector(index) {
+			@Override
+			protected String computeSourceHash(String className) {
+				return sources.get(className);
+			}
+
+			@Override
+			protected String computeApiHash(String className) {
+				return apis.get(className);
+			}
+
+			@Override
+			protected boolean isOutputMissing(String className) {
+				return missingOutputs.contains(className);
+			}
+		};
+	}
+
+	private static Set<String> classes(String... classNames) {
+		return new LinkedHashSet<String>(Arrays.asList(classNames));
+	}
+
+	@Test
+	public void testNothingChanged() throws IOException {
+		StaleClassSelector selector = newSelector();
+		assertTrue(selector.select(CLASSES).isEmpty());
+		assertTrue(selector.getApiChanged().isEmpty());
+		assertEquals("src-p.B", selector.getSourceHash("p.B"));
+		assertEquals("api-p.B", selector.getApiHash("p.B"));
+	}
+
+	@Test
+	public void testEditedClass() throws IOException {
+		// the body of a method changed, but not the API
+		sources.put("p.A", "src-p.A-edited");
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.A"), selector.select(CLASSES));
+		assertTrue(selector.getApiChanged().isEmpty());
+		assertEquals("src-p.A-edited", selector.getSourceHash("p.A"));
+	}
+
+	@Test
+	public void testChangedApi() throws IOException {
+		sources.put("p.A", "src-p.A-edited");
+		apis.put("p.A", "api-p.A-edited");
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.A", "p.B"), selector.select(CLASSES));
+		assertEquals(classes("p.A"), selector.getApiChanged());
+		assertEquals("api-p.A-edited", selector.getApiHash("p.A"));
+	}
+
+	@Test
+	public void testChangedApiPropagatesThroughTheApiOfTheDependents() throws IOException {
+		// the API of B changes with the API of A (i.e. B inherits from A), so C is generated again, too
+		sources.put("p.A", "src-p.A-edited");
+		apis.put("p.A", "api-p.A-edited");
+		apis.put("p.B", "api-p.B-edited");
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.A", "p.B", "p.C"), selector.select(CLASSES));
+		assertEquals(classes("p.A", "p.B"), selector.getApiChanged());
+		assertEquals("api-p.B-edited", selector.getApiHash("p.B"));
+	}
+
+	@Test
+	public void testRemovedClass() throws IOException {
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.B"), selector.select(Arrays.asList("p.B", "p.C", "p.D")));
+		assertEquals(classes("p.A"), selector.getApiChanged());
+		assertFalse(index.contains("p.A"));
+	}
+
+	@Test
+	public void testDeletedOutput() throws IOException {
+		missingOutputs.add("p.D");
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.D"), selector.select(CLASSES));
+		assertTrue(selector.getApiChanged().isEmpty());
+	}
+
+	@Test
+	public void testNewClass() throws IOException {
+		sources.put("p.E", "src-p.E");
+		apis.put("p.E", "api-p.E");
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.E"), selector.select(Arrays.asList("p.A", "p.B", "p.C", "p.D", "p.E")));
+		assertEquals(classes("p.E"), selector.getApiChanged());
+	}
+
+	@Test
+	public void testUnknownApi() throws IOException {
+		// the API cannot be computed (i.e. the class does not load): it's considered as changed
+		sources.put("p.A", "src-p.A-edited");
+		apis.put("p.A", null);
+		StaleClassSelector selector = newSelector();
+		assertEquals(classes("p.A", "p.B"), selector.select(CLASSES));
+		assertEquals(Collections.singleton("p.A"), selector.getApiChanged());
+	}
+}
@@ -0,0 +1,74 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TreeShakingTest {
+	private static final String APP = App.class.getName();
+	private static final String USED = Used.class.getName();
+	private static final String UNREACHABLE = Unreachable.class.getName();
+	private static final String VARARGS_MAIN = VarargsMain.class.getName();
+
+	private static final Set<String> PROJECT_CLASSES = new HashSet<String>(Arrays.asList(APP, USED, UNREACHABLE,
+			VARARGS_MAIN));
+
+	public static class App {
+		public static void main(String[] args) {
+			new Used();
+		}
+	}
+
+	public static class Used {
+		//
+	}
+
+	public static class Unreachable {
+		public Used used;
+	}
+
+	public static class VarargsMain {
+		public static void main(String... args) {
+			//
+		}
+	}
+
+	private static Map<String, List<String>> dependencies() {
+		Map<String, List<String>> dependencies = new HashMap<String, List<String>>();
+		dependencies.put(APP, Arrays.asList(USED, "org.stjs.javascript.Global"));
+		dependencies.put(USED, Collections.<String> emptyList());
+		dependencies.put(UNREACHABLE, Arrays.asList(USED));
+		dependencies.put(VARARGS_MAIN, Collections.<String> emptyList());
+		return dependencies;
+	}
+
+	private static Set<String> classes(String... classNames) {
+		return new HashSet<String>(Arrays.asList(classNames));
+	}
+
+	@Test
+	public void testUnreachableClassIsDropped() throws Exception {
+		// the same definition of the main method as the generator, so String... args is not a main method
+		List<String> roots = AbstractSTJSMojo.getTreeShakingRoots(null, PROJECT_CLASSES, getClass().getClassLoader());
+		assertEquals(Arrays.asList(APP), roots);
+
+		assertEquals(classes(APP, USED), AbstractSTJSMojo.getReachableClasses(roots, dependencies()));
+	}
+
+	@Test
+	public void testEntryClassWithoutMainMethodIsKept() throws Exception {
+		List<String> roots = AbstractSTJSMojo.getTreeShakingRoots(Arrays.asList(UNREACHABLE, "org.Unknown"),
+				PROJECT_CLASSES, getClass().getClassLoader());
+		assertEquals(Arrays.asList(UNREACHABLE), roots);
+
+		assertEquals(classes(UNREACHABLE, USED), AbstractSTJSMojo.getReachableClasses(roots, dependencies()));
+	}
+}
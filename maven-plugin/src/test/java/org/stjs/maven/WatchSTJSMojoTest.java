@@ -0,0 +1,186 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class WatchSTJSMojoTest {
+	private static final Set<String> ALL_CLASSES = Collections.singleton("*");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * records the classes it is asked to generate instead of generating them
+	 */
+	private static class TestWatchMojo extends WatchSTJSMojo {
+		private final List<String> sourceRoots;
+		private final File outputDirectory;
+		private final BlockingQueue<Set<String>> generations = new LinkedBlockingQueue<Set<String>>();
+		private final BlockingQueue<Set<String>> packages = new LinkedBlockingQueue<Set<String>>();
+
+		TestWatchMojo(File sourceRoot, File outputDirectory) {
+			this.sourceRoots = Collections.singletonList(sourceRoot.getAbsolutePath());
+			this.outputDirectory = outputDirectory;
+		}
+
+		@Override
+		public List<String> getCompileSourceRoots() {
+			return sourceRoots;
+		}
+
+		@Override
+		protected File getBuildOutputDirectory() {
+			return outputDirectory;
+		}
+
+		@Override
+		protected void executeGeneration() throws MojoExecutionException {
+			Set<String> changed = getChangedClassNames();
+			packages.add(new HashSet<String>(getSourcePackages()));
+			generations.add(changed == null ? ALL_CLASSES : new HashSet<String>(changed));
+		}
+
+		Set<String> nextGeneration() throws InterruptedException {
+			return generations.poll(10, TimeUnit.SECONDS);
+		}
+	}
+
+	private static File write(File root, String path) throws Exception {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		Files.write(path, file, Charsets.UTF_8);
+		return file;
+	}
+
+	private static Set<String> classes(String... classNames) {
+		return new HashSet<String>(Arrays.asList(classNames));
+	}
+
+	@Test
+	public void testChangedFiles() {
+		Map<String, Long> before = new HashMap<String, Long>();
+		before.put("a", 1L);
+		before.put("b", 1L);
+		before.put("c", 1L);
+		Map<String, Long> after = new HashMap<String, Long>();
+		after.put("a", 1L);
+		after.put("b", 2L);
+		after.put("d", 1L);
+
+		Set<File> changed = new HashSet<File>();
+		WatchSTJSMojo.addChangedFiles(before, after, changed);
+		assertEquals(new HashSet<File>(Arrays.asList(new File("b"), new File("c"), new File("d"))), changed);
+	}
+
+	@Test
+	public void testClassNames() throws Exception {
+		File src = folder.newFolder("src");
+		File classes = folder.newFolder("classes");
+		TestWatchMojo mojo = new TestWatchMojo(src, classes);
+
+		assertEquals(classes("p.A", "p.q.B", "C"), mojo.getClassNames(Arrays.asList(new File(src, "p/A.java"),
+				new File(classes, "p/q/B$1.class"), new File(classes, "C.class"), new File(classes, "p/A.class"),
+				new File(src, "p/readme.txt"), new File(folder.getRoot(), "D.java"))));
+	}
+
+	@Test
+	public void testGenerateTheChangedClasses() throws Exception {
+		File src = folder.newFolder("src");
+		File classes = folder.newFolder("classes");
+		File sourceA = write(src, "p/A.java");
+		write(classes, "p/A.class");
+
+		TestWatchMojo mojo = new TestWatchMojo(src, classes);
+		MojoTestHelper.setParameter(mojo, "watchInterval", 10L);
+		MojoTestHelper.setParameter(mojo, "watchQuietPeriod", 50L);
+		Thread watch = startWatch(mojo);
+		try {
+			// the first generation scans all the sources
+			assertEquals(ALL_CLASSES, mojo.nextGeneration());
+
+			write(src, "p/B.java");
+			assertEquals(classes("p.B"), mojo.nextGeneration());
+
+			// an inner class is generated with its outer class
+			write(classes, "p/A$Inner.class");
+			assertEquals(classes("p.A"), mojo.nextGeneration());
+
+			assertTrue(sourceA.setLastModified(sourceA.lastModified() - 10000));
+			assertEquals(classes("p.A"), mojo.nextGeneration());
+
+			// nothing changed, nothing is generated
+			assertNull(mojo.generations.poll(200, TimeUnit.MILLISECONDS));
+		}
+		finally {
+			watch.interrupt();
+			watch.join(10000);
+		}
+		assertFalse(watch.isAlive());
+	}
+
+	@Test
+	public void testPackagesUpdatedFromTheChangedSources() throws Exception {
+		File src = folder.newFolder("src");
+		File classes = folder.newFolder("classes");
+		File sourceA = write(src, "p/A.java");
+
+		TestWatchMojo mojo = new TestWatchMojo(src, classes);
+		MojoTestHelper.setParameter(mojo, "watchInterval", 10L);
+		MojoTestHelper.setParameter(mojo, "watchQuietPeriod", 50L);
+		Thread watch = startWatch(mojo);
+		try {
+			// the first generation scans all the sources
+			mojo.nextGeneration();
+			assertEquals(classes("p"), mojo.packages.poll());
+
+			// the sources are not scanned again: the package of the removed source stays
+			assertTrue(sourceA.delete());
+			write(src, "q/B.java");
+			mojo.nextGeneration();
+			assertEquals(classes("p", "q"), mojo.packages.poll());
+		}
+		finally {
+			watch.interrupt();
+			watch.join(10000);
+		}
+		assertFalse(watch.isAlive());
+	}
+
+	private static Thread startWatch(final WatchSTJSMojo mojo) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mojo.execute();
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		thread.start();
+		return thread;
+	}
+}